@@ -0,0 +1,43 @@
+// Import the management API for per-thread allocation counters
+import java.lang.management.ManagementFactory;  // Access to the JVM's ThreadMXBean
+
+
+// Debug counter for bytes allocated by the current thread between begin() and end()
+// Turn it on with -Dpacman.allocations=true; every REPORT_EVERY samples it prints a Histogram
+// summary, so an allocation that creeps into the tick or frame path shows up straight away.
+// When disabled, begin() and end() are a single static-final check the JIT folds away.
+public class AllocationCounter {
+    static final boolean ENABLED = Boolean.getBoolean("pacman.allocations");
+    static final int REPORT_EVERY = 200;  // Samples per printed summary (10 seconds of ticks at 20/s)
+
+    // HotSpot's extension of ThreadMXBean; getCurrentThreadAllocatedBytes() itself does not allocate
+    private static final com.sun.management.ThreadMXBean THREADS = ENABLED
+            ? (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()
+            : null;
+
+    final String name;                             // "tick", "frame", ... for the report
+    private final Histogram bytes = new Histogram(); // Bytes allocated per sample
+    private long start;                            // Thread's allocated bytes at begin()
+
+    AllocationCounter(String name) {
+        this.name = name;
+    }
+
+    // Start a sample (call on the thread doing the work)
+    void begin() {
+        if (ENABLED) {
+            start = THREADS.getCurrentThreadAllocatedBytes();
+        }
+    }
+
+    // End the sample; prints and resets the histogram every REPORT_EVERY samples
+    void end() {
+        if (ENABLED) {
+            bytes.record(THREADS.getCurrentThreadAllocatedBytes() - start);
+            if (bytes.count() == REPORT_EVERY) {
+                System.out.println("bytes/" + name + " : " + bytes.summary());
+                bytes.reset();
+            }
+        }
+    }
+}
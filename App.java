@@ -1,25 +1,89 @@
+import java.lang.management.ManagementFactory;  // JVM start time, for the first-frame report
+import java.nio.file.Path;
+import java.util.SplittableRandom;
 import javax.swing.JFrame;
 
+// Usage: java App                                   Swing timer loop (default)
+//        java App fixed [refreshRate] [tickRate]    fixed-timestep simulation thread + active rendering
+//        java App replay <file> [tick]              watch a recorded game, starting at a tick
+// Add -Dpacman.record=<file> to record the game being played (see Replay)
+// Add -Dpacman.scores=<file> to keep every finished game in a results log (see ScoreStore)
+// Add -Dpacman.map=<file> to play on a map file instead of the built-in map (see TileMap)
+// The window takes its size from the panel, which takes it from the map (see PacMan's camera)
+// Startup work that does not need the window (sprite decoding, JFR setup) runs in the background,
+// and the time to the first frame on screen is printed once
 public class App {
+    private static long startedAt = 0;            // System.nanoTime() when main() began (0 = not via App)
+    private static volatile boolean firstFrameShown = false;
+
     public static void main(String[] args) throws Exception {
-        int rowCount = 21;
-        int columnCount = 19;
-        int tileSize = 32;
-        int boardWidth = columnCount * tileSize;
-        int boardHeight = rowCount * tileSize;
+        startedAt = System.nanoTime();
+        SpriteAtlas.preload();   // Decodes while the map, window and engine are built
+        GameEvents.preload();
+        TileMap map = TileMap.fromProperty();
 
         JFrame frame = new JFrame("Pac Man");
-        // frame.setVisible(true);
-        frame.setSize(boardWidth, boardHeight);
-        frame.setLocationRelativeTo(null);
         frame.setResizable(false);
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
-        PacMan pacmanGame = new PacMan();
+        if (args.length > 1 && args[0].equals("replay")) {
+            Replay.Player player = Replay.open(Path.of(args[1]), map).seek(args.length > 2 ? Long.parseLong(args[2]) : 0);
+            PacMan viewer = new PacMan(player.game);
+            frame.add(viewer);
+            frame.pack();
+            frame.setLocationRelativeTo(null);
+            viewer.requestFocus();
+            frame.setVisible(true);
+            viewer.watch(player);
+            return;
+        }
+
+        GameEngine game = new GameEngine(map, new SplittableRandom().nextLong());
+        Replay.Writer recorder = null;
+        String recordPath = System.getProperty("pacman.record");
+        if (recordPath != null) {
+            recorder = new Replay.Writer(Path.of(recordPath), game);
+            Runtime.getRuntime().addShutdownHook(new Thread(recorder::close));  // Closing the window exits
+        }
+
+        ScoreStore scores = ScoreStore.fromProperty();
+
+        if (args.length > 0 && args[0].equals("fixed")) {
+            int refreshRate = args.length > 1 ? Integer.parseInt(args[1]) : FixedStepLoop.DEFAULT_REFRESH_RATE;
+            int tickRate = args.length > 2 ? Integer.parseInt(args[2]) : FixedStepLoop.DEFAULT_TICK_RATE;
+
+            FixedStepLoop loop = new FixedStepLoop(game, tickRate, refreshRate);
+            loop.recorder = recorder;
+            loop.scores = scores;
+            frame.setIgnoreRepaint(true);  // The render thread draws every frame itself
+            frame.add(loop.canvas);
+            frame.pack();
+            frame.setLocationRelativeTo(null);
+            frame.setVisible(true);        // The canvas needs a peer before it can flip buffers
+            loop.canvas.requestFocus();
+            loop.start();
+            return;
+        }
+
+        PacMan pacmanGame = new PacMan(game);
+        pacmanGame.recorder = recorder;
+        pacmanGame.scores = scores;
         frame.add(pacmanGame);
         frame.pack();
+        frame.setLocationRelativeTo(null);
         pacmanGame.requestFocus();
         frame.setVisible(true);
 
     }
-}
+
+    // Called after every frame reaches the screen; reports the first one
+    static void firstFrame() {
+        if (firstFrameShown || startedAt == 0) {
+            return;
+        }
+        firstFrameShown = true;
+        long sinceMain = (System.nanoTime() - startedAt) / 1_000_000;
+        System.out.printf("First frame %d ms after main, %d ms after JVM start%n",
+                sinceMain, ManagementFactory.getRuntimeMXBean().getUptime());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,245 @@
+// Import the management API for the allocation check in main()
+import java.lang.management.ManagementFactory;
+
+
+// Monte-Carlo tree search autopilot for pacman
+// Every DECISION_TICKS ticks (the time pacman takes to cross a tile) it searches a tree of
+// direction choices from the current state and steers with the most visited one, through
+// GameEngine.input() like a key press. Each node holds a GameState; expanding a node restores
+// it into a scratch game, presses one of the four directions, plays DECISION_TICKS ticks and
+// captures the result. Leaves are scored by a random playout (hold the direction, turn now and
+// then) of ROLLOUT_DECISIONS more choices: score gained, minus DEATH_PENALTY per life lost.
+// The ghosts' random generator is part of the state, so the search sees the real future.
+//
+// The tree is a struct of arrays over a fixed pool of nodes whose GameStates are made once, so a
+// search allocates nothing. The pool holds capacity nodes: MAX_NODES, capped at
+// NODE_MEMORY / stateBytes, so that on a map whose states are large the pool still fits.
+// A search stops after an iteration budget (headless runs, repeatable) or a time budget (while
+// playing, to stay inside a tick).
+//
+// Usage: java Autopilot [games] [iterations] [seed]     (plays headless games, compares with random turns)
+public class Autopilot {
+    // ===================== SETTINGS =====================
+    static final int DECISION_TICKS = 4;         // 4 ticks of 8 px = one tile
+    static final int MAX_NODES = 4096;
+    static final long NODE_MEMORY = 64L << 20;   // Large maps get fewer nodes: states hold every pellet
+    static final int ROLLOUT_DECISIONS = 10;     // Playout length after the tree (2 seconds)
+    static final double REWARD_SCALE = 50;       // Score worth one unit of reward (a power pellet)
+    static final double DEATH_PENALTY = 20;      // Reward units lost per life
+    static final double EXPLORATION = 2.0;       // UCB1 exploration constant, in reward units
+    static final int DEFAULT_ITERATIONS = 2000;
+    static final long DEFAULT_SEARCH_NANOS = 20_000_000L;  // While playing: under half a 50 ms tick
+    private static final int NONE = -1;
+
+    final char[] directions = {'U', 'D', 'L', 'R'};
+    final GameEngine sim;                        // Scratch game the search plays in
+    final GameRandom random;                     // Playout choices (the game's own generator is game state)
+    int maxIterations = DEFAULT_ITERATIONS;
+    long searchNanos = DEFAULT_SEARCH_NANOS;
+    int ticksToDecision = 0;
+
+    // ===================== TREE =====================
+    // Node n's children are firstChild[n] .. firstChild[n] + 3, one per direction
+    final GameState[] states = new GameState[MAX_NODES];
+    final int[] parent = new int[MAX_NODES];
+    final int[] firstChild = new int[MAX_NODES];
+    final int[] visits = new int[MAX_NODES];
+    final double[] totalReward = new double[MAX_NODES];
+    final boolean[] terminal = new boolean[MAX_NODES];  // Pacman died getting here: nothing to search below
+    final int capacity;                          // Nodes with a state (MAX_NODES unless the map is huge)
+    int nodeCount;
+    int rootScore;
+    int rootLives;
+
+    // Statistics for the last search
+    int lastIterations;
+    long lastTicks;                              // Game ticks simulated
+
+    Autopilot(GameEngine game, long seed) {
+        this.sim = new GameEngine(game.map, game.seed);
+        this.random = new GameRandom(seed);
+        long stateBytes = 16L * game.pellets.length + 30L * (game.ghosts.size() + 1) + 200;
+        this.capacity = (int) Math.max(16, Math.min(MAX_NODES, NODE_MEMORY / stateBytes));
+        for (int i = 0; i < capacity; i++) {
+            states[i] = new GameState(game);
+        }
+    }
+
+    // ===================== PLAYING =====================
+    // Input for this tick: a fresh choice every DECISION_TICKS ticks, otherwise GameEngine.NO_INPUT
+    char nextInput(GameEngine game) {
+        if (ticksToDecision-- > 0) {
+            return GameEngine.NO_INPUT;
+        }
+        ticksToDecision = DECISION_TICKS - 1;
+        return choose(game);
+    }
+
+    // Search from the game's current state and return the direction to press
+    char choose(GameEngine game) {
+        states[0].capture(game);
+        rootScore = game.score;
+        rootLives = game.lives;
+        nodeCount = 1;
+        reset(0, NONE);
+        lastTicks = 0;
+
+        long deadline = System.nanoTime() + searchNanos;
+        int iteration = 0;
+        while (iteration < maxIterations && System.nanoTime() < deadline) {
+            iteration++;
+            int node = 0;
+            while (firstChild[node] != NONE) {  // Selection
+                node = bestChild(node);
+            }
+            if (!terminal[node] && visits[node] > 0 && nodeCount + 4 <= capacity) {  // Expansion
+                expand(node);
+                node = firstChild[node] + random.nextInt(4);
+            }
+            double reward = playout(node);      // Simulation
+            for (int n = node; n != NONE; n = parent[n]) {  // Backpropagation
+                visits[n]++;
+                totalReward[n] += reward;
+            }
+        }
+        lastIterations = iteration;
+
+        if (firstChild[0] == NONE) {
+            return GameEngine.NO_INPUT;  // No time to look at all
+        }
+        int best = 0;
+        for (int d = 1; d < 4; d++) {
+            if (visits[firstChild[0] + d] > visits[firstChild[0] + best]) {
+                best = d;
+            }
+        }
+        return directions[best];
+    }
+
+    // ===================== SEARCH =====================
+    private void reset(int node, int parentNode) {
+        parent[node] = parentNode;
+        firstChild[node] = NONE;
+        visits[node] = 0;
+        totalReward[node] = 0;
+        terminal[node] = false;
+    }
+
+    // Child with the highest UCB1 score; unvisited children first
+    private int bestChild(int node) {
+        int best = NONE;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        double logVisits = Math.log(visits[node]);
+        for (int child = firstChild[node]; child < firstChild[node] + 4; child++) {
+            if (visits[child] == 0) {
+                return child;
+            }
+            double score = totalReward[child] / visits[child] + EXPLORATION * Math.sqrt(logVisits / visits[child]);
+            if (score > bestScore) {
+                bestScore = score;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    // Create the four children of a node: its state after pressing each direction
+    private void expand(int node) {
+        firstChild[node] = nodeCount;
+        for (int d = 0; d < 4; d++) {
+            int child = nodeCount++;
+            reset(child, node);
+            states[node].restore(sim);
+            sim.input(directions[d]);  // Same path as the keyboard
+            int lives = sim.lives;
+            play(DECISION_TICKS, lives);
+            states[child].capture(sim);
+            terminal[child] = sim.gameOver || sim.lives < lives;
+        }
+    }
+
+    // Score a node by playing on from it with random turns
+    private double playout(int node) {
+        states[node].restore(sim);
+        if (!terminal[node]) {
+            for (int i = 0; i < ROLLOUT_DECISIONS && !sim.gameOver && sim.lives == states[node].lives; i++) {
+                if (random.nextInt(4) == 0) {  // Mostly hold the direction
+                    sim.input(directions[random.nextInt(4)]);
+                }
+                play(DECISION_TICKS, sim.lives);
+            }
+        }
+        return (sim.score - rootScore) / REWARD_SCALE - (rootLives - sim.lives) * DEATH_PENALTY;
+    }
+
+    // Step the scratch game, stopping early if pacman dies
+    private void play(int ticks, int lives) {
+        for (int t = 0; t < ticks && !sim.gameOver && sim.lives == lives; t++) {
+            sim.step(GameEngine.NO_INPUT);
+            lastTicks++;
+        }
+    }
+
+    // ===================== ENTRY POINT =====================
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42L;
+        int maxTicks = 20 * 60 * 2;  // Two minutes of play per game
+
+        // Cloning: how fast copyInto() is, and that it allocates nothing
+        GameEngine game = new GameEngine(seed);
+        GameState a = new GameState(game);
+        GameState b = new GameState(game);
+        a.capture(game);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < 1_000_000; i++) {  // Warm up
+            a.copyInto(b);
+            b.copyInto(a);
+        }
+        long bytes = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < 5_000_000; i++) {
+            a.copyInto(b);
+            b.copyInto(a);
+        }
+        long nanos = System.nanoTime() - start;
+        bytes = threads.getCurrentThreadAllocatedBytes() - bytes;
+        System.out.printf("copyInto: %.1f ns, %.0f million/s, %d bytes allocated in 10 million%n",
+                nanos / 1e7, 1e7 / nanos * 1e3, bytes);
+
+        // Playing: the autopilot against BatchRunner's random turns on the same seeds
+        Histogram autoScore = new Histogram();
+        Histogram autoTicks = new Histogram();
+        Histogram searchMicros = new Histogram();
+        long simulatedTicks = 0;
+        for (int g = 0; g < games; g++) {
+            game = new GameEngine(BatchRunner.gameSeed(seed, g));
+            Autopilot autopilot = new Autopilot(game, seed + g);
+            autopilot.maxIterations = iterations;
+            autopilot.searchNanos = Long.MAX_VALUE / 4;
+            int ticks = 0;
+            while (!game.gameOver && ticks < maxTicks) {
+                long t0 = System.nanoTime();
+                char input = autopilot.nextInput(game);
+                if (input != GameEngine.NO_INPUT) {
+                    searchMicros.record((System.nanoTime() - t0) / 1000);
+                    simulatedTicks += autopilot.lastTicks;
+                    game.input(input);
+                }
+                game.step(GameEngine.NO_INPUT);
+                ticks++;
+            }
+            autoScore.record(game.score);
+            autoTicks.record(ticks);
+        }
+        BatchRunner.Stats random = new BatchRunner(games, seed, maxTicks, BatchRunner.RANDOM_TURNS).run(1);
+        System.out.printf("%d games, %d iterations per decision, at most %d ticks%n", games, iterations, maxTicks);
+        System.out.println("autopilot score    : " + autoScore.summary());
+        System.out.println("autopilot survival : " + autoTicks.summary());
+        System.out.println("random score       : " + random.score.summary());
+        System.out.println("random survival    : " + random.survivalTicks.summary());
+        System.out.println("search us          : " + searchMicros.summary());
+        System.out.printf("simulated ticks/s  : %.0f%n", simulatedTicks / (searchMicros.mean() * searchMicros.count() / 1e6));
+    }
+}
@@ -0,0 +1,147 @@
+// Import concurrency and random utilities for the batch runner
+import java.util.SplittableRandom;           // Per-game random numbers for the pac-man policy
+import java.util.concurrent.ForkJoinPool;    // Work-stealing pool that uses every core
+import java.util.concurrent.RecursiveTask;   // Divide-and-conquer task for fork-join
+
+
+// Monte-Carlo batch runner for ghost-AI balance testing
+// Plays many independent headless games in parallel and reports streaming histograms of
+// survival time, score, lives lost and pellets eaten. Game i always uses the seed
+// gameSeed(masterSeed, i), and histograms merge by addition, so the report is identical
+// for a given seed whatever the thread count.
+//
+// Usage: java BatchRunner [games] [seed] [threads] [maxTicks]
+public class BatchRunner {
+    // ===================== POLICIES =====================
+    // OOPS: ABSTRACTION
+    // A pac-man policy picks this tick's input (U/D/L/R or GameEngine.NO_INPUT)
+    interface Policy {
+        char nextInput(GameEngine game, SplittableRandom random);
+    }
+
+    // Random policy: hold the current direction, and turn at random about once every 8 ticks
+    static final Policy RANDOM_TURNS = (game, random) -> {
+        if (random.nextInt(8) != 0) {
+            return GameEngine.NO_INPUT;  // Keep going
+        }
+        return game.directions[random.nextInt(4)];  // Try a random turn
+    };
+
+    // ===================== SETTINGS =====================
+    final int games;        // Number of games to play
+    final long masterSeed;  // Seed that every game seed is derived from
+    final int maxTicks;     // Stop a game after this many ticks even if pacman is still alive
+    final Policy policy;    // How pac-man is steered
+    static final int GAMES_PER_TASK = 16;  // Games played sequentially by one leaf task
+
+    BatchRunner(int games, long masterSeed, int maxTicks, Policy policy) {
+        this.games = games;
+        this.masterSeed = masterSeed;
+        this.maxTicks = maxTicks;
+        this.policy = policy;
+    }
+
+    // ===================== RESULTS =====================
+    // Aggregated statistics; only histograms are kept, never per-game state
+    static class Stats {
+        final Histogram survivalTicks = new Histogram();  // Ticks until game over (or maxTicks)
+        final Histogram score = new Histogram();          // Final score
+        final Histogram livesLost = new Histogram();      // Lives lost during the game
+        final Histogram pelletsEaten = new Histogram();   // Food pellets eaten
+
+        // Fold another worker's statistics into this one
+        Stats add(Stats other) {
+            survivalTicks.add(other.survivalTicks);
+            score.add(other.score);
+            livesLost.add(other.livesLost);
+            pelletsEaten.add(other.pelletsEaten);
+            return this;
+        }
+    }
+
+    // ===================== SIMULATION =====================
+    // Derive game i's seed from the master seed (SplitMix64 finaliser over a Weyl sequence)
+    static long gameSeed(long masterSeed, int index) {
+        long z = masterSeed + (index + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // Play one full game and record it into the statistics
+    void playGame(int index, Stats stats) {
+        long seed = gameSeed(masterSeed, index);
+        GameEngine game = new GameEngine(seed);                            // Ghost movement is seeded by the game seed
+        SplittableRandom policyRandom = new SplittableRandom(~seed);       // Pac-man's choices get an independent stream
+
+        int ticks = 0;
+        while (!game.gameOver && ticks < maxTicks) {
+            game.step(policy.nextInput(game, policyRandom));
+            ticks++;
+        }
+
+        stats.survivalTicks.record(ticks);
+        stats.score.record(game.score);
+        stats.livesLost.record(GameEngine.STARTING_LIVES - game.lives);
+        stats.pelletsEaten.record(game.pelletsEaten);
+    }
+
+    // Fork-join task covering games [from, to)
+    class GameRange extends RecursiveTask<Stats> {
+        private static final long serialVersionUID = 1L;  // Fork-join tasks are Serializable; never serialized here
+        final int from;
+        final int to;
+
+        GameRange(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Stats compute() {
+            if (to - from <= GAMES_PER_TASK) {  // Small enough: play these games here
+                Stats stats = new Stats();
+                for (int i = from; i < to; i++) {
+                    playGame(i, stats);
+                }
+                return stats;
+            }
+            int middle = (from + to) >>> 1;           // Otherwise split the range in half
+            GameRange left = new GameRange(from, middle);
+            left.fork();                              // Let another worker steal the left half
+            Stats right = new GameRange(middle, to).compute();
+            return left.join().add(right);
+        }
+    }
+
+    // Run every game on a pool with the given number of threads
+    Stats run(int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invoke(new GameRange(0, games));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // ===================== ENTRY POINT =====================
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42L;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int maxTicks = args.length > 3 ? Integer.parseInt(args[3]) : 20 * 60 * 10;  // 10 minutes at 20 ticks/s
+
+        BatchRunner runner = new BatchRunner(games, seed, maxTicks, RANDOM_TURNS);
+        long start = System.nanoTime();
+        Stats stats = runner.run(threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("games=%d seed=%d threads=%d maxTicks=%d time=%.2fs (%.0f games/s, %.0f ticks/s)%n",
+                games, seed, threads, maxTicks, seconds, games / seconds,
+                stats.survivalTicks.mean() * games / seconds);
+        System.out.println("survival ticks : " + stats.survivalTicks.summary());
+        System.out.println("score          : " + stats.score.summary());
+        System.out.println("lives lost     : " + stats.livesLost.summary());
+        System.out.println("pellets eaten  : " + stats.pelletsEaten.summary());
+    }
+}
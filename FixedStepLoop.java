@@ -0,0 +1,337 @@
+// Import AWT for the active-rendering canvas and concurrency tools for the thread handoffs
+import java.awt.Canvas;                              // Heavyweight surface that supports page flipping
+import java.awt.Dimension;                           // Canvas size
+import java.awt.Graphics;                            // Drawing surface of the back buffer
+import java.awt.Toolkit;                             // sync() flushes the frame to the display
+import java.awt.event.KeyAdapter;                    // Keyboard input
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferStrategy;                // Page-flipped back buffers
+import java.util.concurrent.atomic.AtomicInteger;    // Lock-free key queue indices
+import java.util.concurrent.atomic.AtomicReference;  // Lock-free snapshot handoff
+import java.util.concurrent.locks.LockSupport;       // Precise sleeping
+
+
+// Game loop with a fixed-timestep simulation thread and an active-rendering thread
+// The simulation thread steps the engine at a fixed tick rate using an accumulator, so game
+// speed no longer depends on timer jitter or on how long painting takes. After every tick it
+// publishes the previous and new RenderState through a triple buffer. The render thread runs
+// at its own refresh rate (60/120/144 Hz...), interpolates actors between the two states and
+// page-flips a BufferStrategy. Keys go from the EDT to the simulation through a lock-free queue.
+//
+// Frame pacing is measured: both threads record into Histograms (microseconds) and print a
+// summary every REPORT_SECONDS.
+public class FixedStepLoop {
+    // ===================== SETTINGS =====================
+    public static final int DEFAULT_TICK_RATE = 20;     // Ticks per second (the Timer's 50ms)
+    public static final int DEFAULT_REFRESH_RATE = 60;  // Frames per second
+    static final int MAX_CATCH_UP_TICKS = 5;            // Ticks run back to back after a stall before time is dropped
+    static final long SPIN_NANOS = 1_000_000;           // Busy-wait this close to a deadline instead of sleeping
+    static final int REPORT_SECONDS = 10;               // How often pacing statistics are printed
+
+    final GameEngine game;       // Engine, touched only by the simulation thread once started
+    final PacMan renderer;       // Draws snapshots (never added to a window in this mode)
+    final Canvas canvas;         // Surface the render thread flips
+    final long tickNanos;        // Simulation time step
+    final long frameNanos;       // Target time between frames
+    Replay.Writer recorder;      // Records the game being played (null = not recording)
+    ScoreStore scores;           // Records every finished game (null = not recording results)
+    Autopilot autopilot;         // Steers pacman while on (F2 toggles; simulation thread only)
+
+    private volatile boolean running = false;
+    private Thread simulationThread;
+    private Thread renderThread;
+    private int inputCount = 0;     // Movement keys applied (simulation thread)
+    private long inputAt = 0;       // Release time of the newest of them
+
+    // ===================== KEY HANDOFF =====================
+    // Single-producer single-consumer ring: the EDT offers keys, the simulation polls them
+    static final char ANY_KEY = '*';  // A non-movement key (only restarts after game over)
+    static final char AUTOPILOT_KEY = '@';  // F2: turn the autopilot on or off
+
+    static class KeyQueue {
+        private final char[] keys = new char[16];            // Power of two, so index & mask wraps
+        private final long[] times = new long[16];           // System.nanoTime() each key was released
+        private long polledAt;                               // Release time of the key poll() returned last
+        private final AtomicInteger head = new AtomicInteger(); // Next slot to read (consumer)
+        private final AtomicInteger tail = new AtomicInteger(); // Next slot to write (producer)
+
+        // Add a key; returns false and drops it if the simulation is 16 keys behind
+        boolean offer(char key) {
+            int t = tail.get();
+            if (t - head.get() == keys.length) {
+                return false;
+            }
+            keys[t & (keys.length - 1)] = key;
+            times[t & (keys.length - 1)] = System.nanoTime();
+            tail.lazySet(t + 1);  // Publishes the slot write to the consumer
+            return true;
+        }
+
+        // Take the oldest key, or GameEngine.NO_INPUT if there is none
+        char poll() {
+            int h = head.get();
+            if (h == tail.get()) {
+                return GameEngine.NO_INPUT;
+            }
+            char key = keys[h & (keys.length - 1)];
+            polledAt = times[h & (keys.length - 1)];
+            head.lazySet(h + 1);  // Frees the slot for the producer
+            return key;
+        }
+
+        // When the key last returned by poll() was released (consumer only)
+        long polledAt() {
+            return polledAt;
+        }
+    }
+
+    final KeyQueue keys = new KeyQueue();
+
+    // ===================== STATE HANDOFF =====================
+    // Two consecutive ticks plus the time the newer one was published
+    static class Frame {
+        final RenderState previous = new RenderState();
+        final RenderState next = new RenderState();
+        long tick;         // Tick number of next (0 = nothing published yet)
+        long publishedAt;  // System.nanoTime() when next was published
+    }
+
+    // Triple buffer: the simulation fills its own Frame and swaps it into ready;
+    // the render thread swaps its Frame with ready whenever ready holds a newer tick
+    private final AtomicReference<Frame> ready = new AtomicReference<>(new Frame());
+
+    // ===================== CONSTRUCTOR =====================
+    FixedStepLoop(GameEngine game, int tickRate, int refreshRate) {
+        this.game = game;
+        this.renderer = new PacMan(game);
+        this.tickNanos = 1_000_000_000L / tickRate;
+        this.frameNanos = 1_000_000_000L / refreshRate;
+
+        canvas = new Canvas();
+        canvas.setPreferredSize(new Dimension(renderer.viewWidth, renderer.viewHeight));
+        canvas.setIgnoreRepaint(true);  // The render thread paints; AWT must not
+        canvas.setFocusable(true);
+        canvas.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyReleased(KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_F3) {  // Profiling overlay, read by the render thread
+                    renderer.profiler.toggle();
+                    return;
+                }
+                if (e.getKeyCode() == KeyEvent.VK_F2) {  // Autopilot, toggled on the simulation thread
+                    keys.offer(AUTOPILOT_KEY);
+                    return;
+                }
+                char direction = PacMan.directionForKey(e.getKeyCode());
+                keys.offer(direction != GameEngine.NO_INPUT ? direction : ANY_KEY);
+            }
+        });
+    }
+
+    // ===================== LIFECYCLE =====================
+    // Start both threads (the canvas must already be displayable)
+    public void start() {
+        canvas.createBufferStrategy(2);  // Page flipping when the platform supports it, blitting otherwise
+        running = true;
+        simulationThread = new Thread(this::simulate, "pacman-simulation");
+        renderThread = new Thread(this::render, "pacman-render");
+        simulationThread.setDaemon(true);
+        renderThread.setDaemon(true);
+        simulationThread.start();
+        renderThread.start();
+    }
+
+    // Stop both threads and wait for them to finish
+    public void stop() throws InterruptedException {
+        running = false;
+        simulationThread.join();
+        renderThread.join();
+    }
+
+    // ===================== SIMULATION THREAD =====================
+    private void simulate() {
+        boolean started = false;                 // Start screen until the first movement key
+        RenderState last = new RenderState();    // State published by the previous tick
+        Frame back = new Frame();                // Frame this thread is filling
+        long tick = 0;
+        Histogram tickTimes = new Histogram();   // Time spent in one tick, in microseconds
+        AllocationCounter tickAllocations = new AllocationCounter("tick");
+        long reportAt = System.nanoTime() + REPORT_SECONDS * 1_000_000_000L;
+
+        last.capture(game, started);
+        long previousTime = System.nanoTime();
+        long accumulator = 0;
+
+        while (running) {
+            long now = System.nanoTime();
+            accumulator += now - previousTime;
+            previousTime = now;
+            if (accumulator > MAX_CATCH_UP_TICKS * tickNanos) {
+                accumulator = MAX_CATCH_UP_TICKS * tickNanos;  // Long stall: slow down rather than spiral
+            }
+
+            // Run as many fixed ticks as the elapsed time pays for
+            while (accumulator >= tickNanos) {
+                GameEvents.Tick event = new GameEvents.Tick();
+                event.begin();
+                long tickStart = System.nanoTime();
+                tickAllocations.begin();
+                started = tick(started);
+                tickAllocations.end();
+                if (renderer.profiler.enabled) {
+                    renderer.profiler.tick.record(System.nanoTime() - tickStart, System.nanoTime());
+                }
+                tick++;
+
+                back.previous.copyFrom(last);
+                back.next.capture(game, started);
+                back.next.inputCount = inputCount;
+                back.next.inputAt = inputAt;
+                last.copyFrom(back.next);
+                back.tick = tick;
+                back.publishedAt = System.nanoTime();
+                back = ready.getAndSet(back);  // Hand the finished frame over, take the old one back
+
+                tickTimes.record((System.nanoTime() - tickStart) / 1000);
+                accumulator -= tickNanos;
+                event.commit();
+            }
+
+            if (now >= reportAt) {
+                System.out.println("tick time us  : " + tickTimes.summary());
+                tickTimes.reset();
+                reportAt = now + REPORT_SECONDS * 1_000_000_000L;
+            }
+            waitUntil(now + (tickNanos - accumulator));
+        }
+    }
+
+    // Apply queued keys and advance one tick; returns whether the game is past the start screen
+    private boolean tick(boolean started) {
+        char key;
+        while ((key = keys.poll()) != GameEngine.NO_INPUT) {
+            if (key == AUTOPILOT_KEY) {    // Hand pacman to the search and back; it starts the game too
+                autopilot = autopilot == null ? new Autopilot(game, game.seed) : null;
+                started |= autopilot != null && !game.gameOver;
+            }
+            else if (game.gameOver) {      // Any key restarts the game
+                game.restart();
+                started = false;
+                if (recorder != null) {
+                    recorder.restart();
+                }
+            }
+            else if (key != ANY_KEY) {     // Movement key: start the game and turn pacman
+                started = true;
+                game.input(key);
+                if (recorder != null) {
+                    recorder.input(key);
+                }
+                inputCount++;
+                inputAt = keys.polledAt();
+            }
+        }
+        if (started && autopilot != null && !game.gameOver) {
+            char direction = autopilot.nextInput(game);  // Searches every few ticks
+            if (direction != GameEngine.NO_INPUT) {
+                game.input(direction);
+                if (recorder != null) {
+                    recorder.input(direction);
+                }
+            }
+        }
+        if (started) {
+            boolean wasOver = game.gameOver;
+            game.step(GameEngine.NO_INPUT);  // Input was applied above, like keyReleased() does between ticks
+            if (recorder != null) {
+                recorder.tick();
+            }
+            if (scores != null && game.gameOver && !wasOver) {
+                scores.record(ScoreStore.defaultPlayer(), game);
+            }
+        }
+        return started;
+    }
+
+    // ===================== RENDER THREAD =====================
+    private void render() {
+        BufferStrategy strategy = canvas.getBufferStrategy();
+        Frame front = new Frame();                // Frame this thread is drawing from
+        Histogram frameIntervals = new Histogram(); // Time between frames, in microseconds
+        Histogram frameLate = new Histogram();      // How far past its deadline each frame was shown
+        AllocationCounter frameAllocations = new AllocationCounter("frame");
+        long reportAt = System.nanoTime() + REPORT_SECONDS * 1_000_000_000L;
+        long deadline = System.nanoTime();
+        long lastShown = 0;
+        int inputsShown = 0;                        // inputCount of the last frame shown
+
+        while (running) {
+            // Take the newest published frame, if there is one
+            if (ready.get().tick > front.tick) {
+                front = ready.getAndSet(front);
+            }
+
+            if (front.tick > 0) {
+                // alpha goes 0 -> 1 over the tick after a state is published, so the screen
+                // trails the simulation by one tick and never has to extrapolate
+                float alpha = Math.min(1f, (System.nanoTime() - front.publishedAt) / (float) tickNanos);
+                long frameStart = System.nanoTime();
+                do {
+                    do {
+                        Graphics g = strategy.getDrawGraphics();
+                        frameAllocations.begin();
+                        renderer.draw(g, front.previous, front.next, alpha);
+                        frameAllocations.end();
+                        g.dispose();
+                    } while (strategy.contentsRestored());
+                    strategy.show();
+                } while (strategy.contentsLost());
+                Toolkit.getDefaultToolkit().sync();  // Flush to the display now (matters on X11)
+                if (renderer.profiler.enabled) {
+                    renderer.profiler.frame.record(System.nanoTime() - frameStart, System.nanoTime());
+                }
+                App.firstFrame();
+
+                long shown = System.nanoTime();
+                if (lastShown != 0) {
+                    frameIntervals.record((shown - lastShown) / 1000);
+                }
+                frameLate.record((shown - deadline) / 1000);
+                lastShown = shown;
+                if (front.next.inputCount != inputsShown) {  // First frame showing a new key press
+                    PacMan.recordInputLatency(renderer.profiler, shown - front.next.inputAt);
+                    inputsShown = front.next.inputCount;
+                }
+
+                if (shown >= reportAt) {
+                    System.out.println("frame us      : " + frameIntervals.summary());
+                    System.out.println("frame late us : " + frameLate.summary());
+                    frameIntervals.reset();
+                    frameLate.reset();
+                    reportAt = shown + REPORT_SECONDS * 1_000_000_000L;
+                }
+            }
+
+            deadline += frameNanos;
+            long now = System.nanoTime();
+            if (now - deadline > frameNanos) {
+                deadline = now;  // Fell more than a frame behind: skip ahead instead of bursting
+            }
+            waitUntil(deadline);
+        }
+    }
+
+    // ===================== TIMING =====================
+    // Sleep until shortly before the deadline, then spin for the rest (sleep alone is too coarse)
+    static void waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            }
+            else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
@@ -0,0 +1,280 @@
+// Import headless imaging, threads and file output for the exporter
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;     // Captured frames waiting for a render worker
+import java.util.concurrent.atomic.AtomicReference;
+import javax.imageio.ImageIO;
+
+
+// Headless frame export: renders a replay to raw RGB video or PNG files on every core
+// The simulation thread plays the replay and captures the two RenderStates each output frame
+// is drawn between into a slot. Render workers, each with its own PacMan renderer, draw slots
+// into the slot's image with draw(Graphics, previous, next, alpha) and encode them. The
+// writer (the calling thread) writes the frames out in order. Frame f always uses slot
+// f % window, so the slots are the reorder buffer too: a frame finished early waits in its
+// slot until the frames before it are written, and the simulation waits for a free slot.
+// At most window frames are in flight, so memory is fixed by the window and the frame size,
+// however long the clip is.
+//
+// Raw output is rgb24 (stdout with "-"), for example for ffmpeg:
+//   java FrameExporter game.replay clip.rgb rgb 60
+//   ffmpeg -f rawvideo -pix_fmt rgb24 -s 608x672 -r 60 -i clip.rgb clip.mp4
+// PNG output is frame-000000.png, frame-000001.png ... in a directory (one frame for a thumbnail):
+//   java FrameExporter game.replay thumbnails png 1 600 601
+//
+// Usage: java FrameExporter <replay> <output> [rgb|png] [fps] [fromTick] [toTick] [workers] [window]
+public class FrameExporter {
+    // ===================== SETTINGS =====================
+    static final int WINDOW_PER_WORKER = 4;      // Default frames in flight for each worker
+    private static final int FREE = 0;           // Slot states: FREE -> CAPTURED (simulation)
+    private static final int CAPTURED = 1;       // -> RENDERED (worker) -> FREE (writer)
+    private static final int RENDERED = 2;
+
+    final Replay replay;
+    final boolean png;              // PNG files instead of raw rgb24
+    final int fps;
+    final long fromTick;
+    final long toTick;
+    final int frames;               // Frames in the clip
+    final int workers;
+    final int width;                // Frame size: the renderer's view
+    final int height;
+
+    private final Slot[] slots;
+    private final ArrayBlockingQueue<Slot> captured;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final ArrayList<Thread> threads = new ArrayList<>();
+
+    // ===================== SLOTS =====================
+    // One frame in flight: what to draw, the image it is drawn into and the encoded bytes
+    private static final class Slot {
+        final RenderState previous = new RenderState();
+        final RenderState next = new RenderState();
+        float alpha;
+        final BufferedImage image;
+        final Graphics2D graphics;                   // Made once; the renderer sets everything it uses
+        final byte[] rgb;                            // Raw output
+        final ByteArrayOutputStream png = new ByteArrayOutputStream();  // PNG output (grows to the largest frame)
+        private int state = FREE;
+
+        Slot(int width, int height, boolean png) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            graphics = image.createGraphics();
+            rgb = png ? null : new byte[width * height * 3];
+        }
+
+        synchronized void await(int wanted) throws InterruptedException {
+            while (state != wanted) {
+                wait();
+            }
+        }
+
+        synchronized void set(int newState) {
+            state = newState;
+            notifyAll();
+        }
+    }
+
+    // Export ticks [fromTick, toTick) of a replay at fps frames per second (the clip runs at real speed)
+    FrameExporter(Replay replay, boolean png, int fps, long fromTick, long toTick, int workers, int window) {
+        this.replay = replay;
+        this.png = png;
+        this.fps = fps;
+        this.fromTick = Math.max(0, Math.min(fromTick, replay.ticks));
+        this.toTick = Math.max(this.fromTick, Math.min(toTick, replay.ticks));
+        long clipFrames = ((this.toTick - this.fromTick) * fps + FixedStepLoop.DEFAULT_TICK_RATE - 1)
+                / FixedStepLoop.DEFAULT_TICK_RATE;
+        this.frames = (int) Math.min(clipFrames, Integer.MAX_VALUE);
+        this.workers = workers;
+
+        GameEngine sizing = new GameEngine(replay.map, replay.seed);
+        PacMan view = new PacMan(sizing);
+        this.width = view.viewWidth;
+        this.height = view.viewHeight;
+        slots = new Slot[window];
+        for (int i = 0; i < window; i++) {
+            slots[i] = new Slot(width, height, png);
+        }
+        captured = new ArrayBlockingQueue<>(window);  // Never full: only window frames are in flight
+    }
+
+    // Bytes held by the slots (the memory ceiling, apart from each worker's board layer)
+    long bufferBytes() {
+        long perSlot = 4L * width * height + (png ? 0 : 3L * width * height);
+        return perSlot * slots.length;
+    }
+
+    // ===================== PIPELINE =====================
+    // Write every frame of the clip to out (rgb) or into the directory dir (png), in order
+    void export(OutputStream out, Path dir) throws IOException {
+        threads.add(Thread.currentThread());
+        Thread simulation = new Thread(this::simulate, "export-simulation");
+        threads.add(simulation);
+        for (int w = 0; w < workers; w++) {
+            // Every worker draws with its own renderer (board layer, text and sprites are per instance)
+            PacMan renderer = new PacMan(new GameEngine(replay.map, replay.seed));
+            threads.add(new Thread(() -> render(renderer), "export-render-" + w));
+        }
+        for (Thread thread : threads.subList(1, threads.size())) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        try {
+            for (int f = 0; f < frames; f++) {
+                Slot slot = slots[f % slots.length];
+                slot.await(RENDERED);  // Reorder: wait for this frame, whatever finished after it
+                if (png) {
+                    try (OutputStream file = Files.newOutputStream(dir.resolve(String.format("frame-%06d.png", f)))) {
+                        slot.png.writeTo(file);
+                    }
+                }
+                else {
+                    out.write(slot.rgb);
+                }
+                slot.set(FREE);
+            }
+            out.flush();
+        }
+        catch (InterruptedException | IOException e) {
+            fail(e);  // Unless another thread failed first (and interrupted this one)
+            Throwable cause = failure.get();
+            throw cause instanceof IOException io ? io : new IOException("Export failed", cause);
+        }
+        finally {
+            for (Thread thread : threads.subList(1, threads.size())) {
+                thread.interrupt();  // Workers wait for frames that will never come
+            }
+        }
+    }
+
+    // Simulation thread: step the replay and capture each frame's pair of states into its slot
+    // Frame f shows the game tick f * tickRate / fps after fromTick: between tick next - 1 and
+    // tick next, alpha of the way (alpha 1 on a tick, like the fixed-step loop's renderer)
+    private void simulate() {
+        try {
+            Replay.Player player = replay.seek(fromTick);
+            RenderState previous = new RenderState();
+            RenderState next = new RenderState();
+            next.capture(player.game, true);
+            previous.copyFrom(next);
+            int rate = FixedStepLoop.DEFAULT_TICK_RATE;
+            for (int f = 0; f < frames; f++) {
+                long position = (long) f * rate;                 // In ticks, times fps
+                long nextTick = fromTick + (position + fps - 1) / fps;
+                float alpha = 1f - (float) ((nextTick - fromTick) * fps - position) / fps;
+                while (player.tick < nextTick) {
+                    previous.copyFrom(next);
+                    player.step();
+                    next.capture(player.game, true);
+                }
+
+                Slot slot = slots[f % slots.length];
+                slot.await(FREE);
+                slot.previous.copyFrom(previous);
+                slot.next.copyFrom(next);
+                slot.alpha = alpha;
+                slot.set(CAPTURED);
+                captured.put(slot);
+            }
+        }
+        catch (InterruptedException e) {
+            // Stopped by a failure elsewhere
+        }
+        catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    // Render worker: draw and encode captured frames until interrupted
+    private void render(PacMan renderer) {
+        try {
+            while (true) {
+                Slot slot = captured.take();
+                slot.graphics.setColor(Color.BLACK);
+                slot.graphics.fillRect(0, 0, width, height);
+                renderer.draw(slot.graphics, slot.previous, slot.next, slot.alpha);
+                if (png) {
+                    slot.png.reset();
+                    ImageIO.write(slot.image, "png", slot.png);
+                }
+                else {
+                    toRgb(((DataBufferInt) slot.image.getRaster().getDataBuffer()).getData(), slot.rgb);
+                }
+                slot.set(RENDERED);
+            }
+        }
+        catch (InterruptedException e) {
+            // Export finished (or failed)
+        }
+        catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    // Packed 0xRRGGBB pixels to rgb24 bytes
+    private static void toRgb(int[] pixels, byte[] rgb) {
+        for (int i = 0, j = 0; i < pixels.length; i++, j += 3) {
+            int p = pixels[i];
+            rgb[j] = (byte) (p >> 16);
+            rgb[j + 1] = (byte) (p >> 8);
+            rgb[j + 2] = (byte) p;
+        }
+    }
+
+    // Remember the first failure and stop every thread (the writer then reports it)
+    private void fail(Throwable e) {
+        if (failure.compareAndSet(null, e)) {
+            for (Thread thread : threads) {
+                if (thread != Thread.currentThread()) {
+                    thread.interrupt();
+                }
+            }
+        }
+    }
+
+    // ===================== ENTRY POINT =====================
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");  // Never needs a display
+        ImageIO.setUseCache(false);                        // Encode PNGs in memory, not through temp files
+        SpriteAtlas.preload();
+        Replay replay = Replay.open(Path.of(args[0]), TileMap.fromProperty());
+        String output = args[1];
+        boolean png = args.length > 2 && args[2].equals("png");
+        int fps = args.length > 3 ? Integer.parseInt(args[3]) : FixedStepLoop.DEFAULT_REFRESH_RATE;
+        long from = args.length > 4 ? Long.parseLong(args[4]) : 0;
+        long to = args.length > 5 ? Long.parseLong(args[5]) : replay.ticks;
+        int workers = args.length > 6 ? Integer.parseInt(args[6]) : Runtime.getRuntime().availableProcessors();
+        int window = args.length > 7 ? Integer.parseInt(args[7]) : WINDOW_PER_WORKER * workers;
+
+        FrameExporter exporter = new FrameExporter(replay, png, fps, from, to, workers, window);
+        long start = System.nanoTime();
+        if (png) {
+            Path dir = Path.of(output);
+            Files.createDirectories(dir);
+            exporter.export(OutputStream.nullOutputStream(), dir);
+        }
+        else if (output.equals("-")) {
+            exporter.export(new BufferedOutputStream(System.out, 1 << 20), null);
+        }
+        else {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(Path.of(output)), 1 << 20)) {
+                exporter.export(out, null);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("%d frames of %dx%d (ticks %d-%d at %d fps) in %.2f s: %.0f frames/s,"
+                        + " %d workers, window %d (%.1f MB of frame buffers)%n",
+                exporter.frames, exporter.width, exporter.height, exporter.fromTick, exporter.toTick, fps,
+                seconds, exporter.frames / seconds, workers, window, exporter.bufferBytes() / 1e6);
+    }
+}
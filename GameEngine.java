@@ -0,0 +1,1186 @@
+// Import only core Java libraries - the engine must run without AWT/Swing
+import java.util.ArrayList;     // Ordered list (ghosts must update in a stable order)
+import java.nio.ByteBuffer;     // Binary game state for replay keyframes
+import java.util.SplittableRandom; // Picks a seed for unseeded games
+
+
+// Headless game engine: holds all game state and rules, with no AWT or Swing classes
+// PacMan (the JPanel) renders it and feeds it keyboard input; batch tools step it directly
+public class GameEngine {
+    // ===================== INNER CLASS =====================
+    // OOPS: ENCAPSULATION
+    // Inner class to represent all game objects (walls, ghosts, pacman, food)
+    class Block {
+        int x;              // X position on screen
+        int y;              // Y position on screen
+        int width;          // Width of the block
+        int height;         // Height of the block
+        char type;          // Map character this block came from (X, b, o, p, r, P or ' ')
+        int startX;         // Starting X position (for reset)
+        int startY;         // Starting Y position (for reset)
+        char direction = 'U'; // Current direction: U=Up, D=Down, L=Left, R=Right
+        int velocityX = 0;  // Horizontal speed (pixels per frame)
+        int velocityY = 0;  // Vertical speed (pixels per frame)
+
+        // Constructor to create a new block with its map type and position
+        Block(char type, int x, int y, int width, int height) {
+            this.type = type;        // Store the map type (the renderer picks the sprite from it)
+            this.x = x;              // Set X position
+            this.y = y;              // Set Y position
+            this.width = width;      // Set width
+            this.height = height;    // Set height
+            this.startX = x;         // Remember starting X for reset
+            this.startY = y;         // Remember starting Y for reset
+        }
+
+        // Method to change the direction of a block (used for pacman and ghosts)
+        void updateDirection(char direction) {
+            char prevDirection = this.direction;  // Save current direction in case we need to revert
+            this.direction = direction;            // Update to new direction
+            updateVelocity();                      // Calculate new velocity based on direction
+            this.x += this.velocityX;              // Try moving in new direction
+            this.y += this.velocityY;              // Try moving in new direction
+
+            // Check if the new position collides with any wall (only the tiles it overlaps)
+            if (collidesWithWall(this)) {
+                this.x -= this.velocityX;      // Undo the X movement
+                this.y -= this.velocityY;      // Undo the Y movement
+                this.direction = prevDirection; // Revert to previous direction
+                updateVelocity();               // Recalculate velocity for old direction
+            }
+        }
+
+        // Calculate velocity based on current direction
+        void updateVelocity() {
+            if (this.direction == 'U') {          // Moving Up
+                this.velocityX = 0;                // No horizontal movement
+                this.velocityY = -tileSize/4;      // Move up (negative Y)
+            }
+            else if (this.direction == 'D') {     // Moving Down
+                this.velocityX = 0;                // No horizontal movement
+                this.velocityY = tileSize/4;       // Move down (positive Y)
+            }
+            else if (this.direction == 'L') {     // Moving Left
+                this.velocityX = -tileSize/4;      // Move left (negative X)
+                this.velocityY = 0;                // No vertical movement
+            }
+            else if (this.direction == 'R') {     // Moving Right
+                this.velocityX = tileSize/4;       // Move right (positive X)
+                this.velocityY = 0;                // No vertical movement
+            }
+        }
+
+        // Reset block to its starting position
+        void reset() {
+            this.x = this.startX;  // Return to starting X
+            this.y = this.startY;  // Return to starting Y
+        }
+
+        // Reset block to exactly how the map created it (position, direction and speed)
+        void respawn() {
+            reset();
+            this.direction = 'U';
+            this.velocityX = 0;
+            this.velocityY = 0;
+        }
+    }
+
+    // ===================== GAME SETTINGS =====================
+    // Game board dimensions, taken from the map
+    final int rowCount;          // Number of rows in the game board
+    final int columnCount;       // Number of columns in the game board
+    final int tileSize = 32;     // Size of each tile in pixels
+    final int boardWidth;        // Total width: columns * 32 pixels (608 for the built-in map)
+    final int boardHeight;       // Total height: rows * 32 pixels (672 for the built-in map)
+
+    // ===================== MAP =====================
+    // Walls and the starting pellets and actors, in chunked tile storage (see TileMap)
+    // Shared, never modified: many games can play on one map
+    final TileMap map;
+
+    // ===================== OBJECT COLLECTIONS =====================
+    // OOPS: COMPOSITION (GameEngine HAS-A Block)
+    // Collections to store game objects
+    ArrayList<Block> ghosts; // All ghost blocks, in map order so seeded games replay identically
+    int mapGhostCount;      // Ghosts that come from the map (addGhost() extras follow them)
+    Block pacman;           // The pacman object
+    final SpatialHash ghostHash = new SpatialHash(); // Ghosts by position, so collisions only test nearby ones
+    char pacmanFacing = 'R'; // Direction pacman's sprite faces (updated on input, like the old image swap)
+
+    // Pellets as bitsets over tiles: bit (row * columnCount + col) is set while that tile holds
+    // a pellet. compileMap() builds the templates once; loadMap() copies them back in bulk.
+    long[] pellets;          // Food pellets still on the board
+    long[] powerPellets;     // Power pellets still on the board
+    long[] pelletTemplate;   // Food pellets at the start of a level
+    long[] powerTemplate;    // Power pellets at the start of a level
+    int pelletsRemaining;    // Food + power pellets left; the level is cleared at 0
+    int pelletTemplateCount; // Food + power pellets at the start of a level
+
+    // Pellet hit boxes inside their tile: food is 4x4 at +14, power food 16x16 at +8
+    public static final int FOOD_OFFSET = 14;
+    public static final int FOOD_SIZE = 4;
+    public static final int POWER_OFFSET = 8;
+    public static final int POWER_SIZE = 16;
+    public static final int FOOD_SCORE = 10;
+    public static final int POWER_SCORE = 50;
+
+    // Goes up on every loadMap(), so renderers can tell a new level from pellets being eaten
+    int mapVersion = 0;
+
+    // ===================== GHOST AI =====================
+    // Navigation graph and shortest-path tables, compiled with the map (shared between games)
+    NavGraph nav;
+    NavGraph.FlowField flow;        // Chase field toward pacman, only on maps too large for the table
+
+    // Scatter/chase schedule in ticks (20 ticks per second): scatter 7s, chase 20s, scatter 7s,
+    // chase 20s, scatter 5s, chase 20s, scatter 5s, then chase for the rest of the level
+    static final int[] GHOST_MODE_TICKS = {140, 400, 140, 400, 100, 400, 100};
+    int ghostModeTick = 0;          // Ticks since the level started
+    boolean scatter = true;         // Ghosts head for their corners instead of chasing
+
+    // true = the original ghosts that bounce off walls in random directions (for balance comparisons)
+    boolean wanderingGhosts = false;
+
+    // true = swarm mode: a ghost that would run into another ghost ahead of it turns back instead
+    boolean solidGhosts = false;
+
+    // ===================== GAME STATE =====================
+    // Input value meaning "no key this tick" for step()
+    public static final char NO_INPUT = 0;
+
+    public static final int STARTING_LIVES = 3; // Lives at the start of every game
+
+    char[] directions = {'U', 'D', 'L', 'R'}; // Array of possible directions
+    final long seed;                          // Seed the game was created with (replays start from it)
+    GameRandom random;                        // This game's own random generator for ghost movement
+    int score = 0;                            // Current game score
+    int lives = STARTING_LIVES;               // Number of lives remaining
+    int pelletsEaten = 0;                     // Food pellets eaten this game (for statistics)
+    boolean gameOver = false;                 // Game over flag
+    int level = 1;                            // Levels cleared this game, plus one
+    int ticksPlayed = 0;                      // Ticks moved this game (its length, for the results log)
+
+    // ===================== CONSTRUCTOR =====================
+    // Constructor - an unseeded game on the built-in map (different every run, but its seed is kept in seed)
+    public GameEngine() {
+        this(TileMap.classic(), new SplittableRandom().nextLong());
+    }
+
+    // Constructor - a seeded game on the built-in map
+    public GameEngine(long seed) {
+        this(TileMap.classic(), seed);
+    }
+
+    // Constructor - a seeded game: the same map, seed and inputs always play out the same way
+    // Builds the map and gives every ghost a starting direction
+    public GameEngine(TileMap map, long seed) {
+        this.map = map;
+        this.rowCount = map.rowCount;
+        this.columnCount = map.columnCount;
+        this.boardWidth = columnCount * tileSize;
+        this.boardHeight = rowCount * tileSize;
+        this.seed = seed;
+        this.random = new GameRandom(seed);  // Each game owns its generator, so games never share state
+        compileMap();  // Create every object and pellet template once
+        loadMap();     // Put the first level on the board
+
+        // Give each ghost a random starting direction
+        for (Block ghost : ghosts) {
+            char newDirection = directions[random.nextInt(4)];  // Pick random direction (0-3)
+            ghost.updateDirection(newDirection);                 // Set the direction
+        }
+    }
+
+    // ===================== SIMULATION API =====================
+    // Advance the game by one tick: apply this tick's input (U/D/L/R or NO_INPUT) and move everything
+    public void step(char input) {
+        if (gameOver) {  // A finished game stays frozen until restart()
+            return;
+        }
+        if (input != NO_INPUT) {
+            input(input);  // Same path the keyboard uses
+        }
+        move();
+    }
+
+    // Advance the game by several ticks with no input: the same game as calling step(NO_INPUT)
+    // that many times, but actors slide through the ticks where nothing can happen in one go
+    public void advance(int ticks) {
+        while (ticks > 0 && !gameOver) {
+            int span = ticks >= MIN_SWEPT_TICKS ? sweptTicks(ticks) : 0;
+            if (span == 0) {
+                step(NO_INPUT);  // Something happens this tick (or too few are left to sweep): play it normally
+                ticks--;
+            }
+            else {
+                ticks -= span;
+            }
+        }
+    }
+
+    // Apply a direction key to pacman immediately (the keyboard calls this between ticks)
+    public void input(char direction) {
+        pacman.updateDirection(direction);   // Turn if the new direction is open
+        pacmanFacing = pacman.direction;     // Face whichever direction pacman ended up with
+    }
+
+    // Add an extra ghost of the given colour (b, o, p or r) on a tile, for stress tests and benchmarks
+    public void addGhost(char type, int row, int column) {
+        Block ghost = new Block(type, column * tileSize, row * tileSize, tileSize, tileSize);
+        ghosts.add(ghost);                                   // Extra ghosts update after the map's own
+        ghost.updateDirection(directions[random.nextInt(4)]); // Start moving like the others
+    }
+
+    // Start a fresh game after game over
+    public void restart() {
+        loadMap();            // Reload the map
+        resetPositions();     // Reset positions
+        lives = STARTING_LIVES; // Reset lives to 3
+        score = 0;            // Reset score to 0
+        pelletsEaten = 0;     // Reset pellet count
+        gameOver = false;     // Clear game over flag
+        level = 1;
+        ticksPlayed = 0;
+    }
+
+    // ===================== MAP LOADING =====================
+    // OOPS: ABSTRACTION
+    // Compile the map once: the pellet templates and every actor
+    private void compileMap() {
+        ghosts = new ArrayList<Block>(); // Initialize empty list for ghosts
+        int words = (rowCount * columnCount + 63) >>> 6;  // 64 tiles per long
+        pelletTemplate = new long[words];
+        powerTemplate = new long[words];
+        pellets = new long[words];
+        powerPellets = new long[words];
+
+        // Visit only the chunks that hold something (empty chunks are not stored)
+        for (int cr = 0; cr < map.chunkRows; cr++) {
+            for (int cc = 0; cc < map.chunkColumns; cc++) {
+                byte[] chunk = map.chunk(cr, cc);
+                if (chunk == null) {
+                    continue;
+                }
+                for (int i = 0; i < chunk.length; i++) {
+                    int r = (cr << TileMap.CHUNK_SHIFT) + (i >>> TileMap.CHUNK_SHIFT);
+                    int c = (cc << TileMap.CHUNK_SHIFT) + (i & TileMap.CHUNK_MASK);
+                    if (chunk[i] == TileMap.FOOD && r < rowCount && c < columnCount) {  // Food pellet
+                        int tile = r * columnCount + c;
+                        pelletTemplate[tile >>> 6] |= 1L << tile;
+                        pelletTemplateCount++;
+                    }
+                    else if (chunk[i] == TileMap.POWER && r < rowCount && c < columnCount) {  // Power food
+                        int tile = r * columnCount + c;
+                        powerTemplate[tile >>> 6] |= 1L << tile;
+                        pelletTemplateCount++;
+                    }
+                }
+            }
+        }
+
+        // Actors: the type character tells the renderer which colour to draw
+        pacman = new Block('P', map.pacmanColumn * tileSize, map.pacmanRow * tileSize, tileSize, tileSize);
+        for (int i = 0; i < map.ghostCount; i++) {
+            ghosts.add(new Block(map.ghostTypes[i], map.ghostColumns[i] * tileSize, map.ghostRows[i] * tileSize,
+                    tileSize, tileSize));
+        }
+        mapGhostCount = ghosts.size();
+        nav = NavGraph.forMap(map);  // Ghost pathfinding tables
+        flow = nav.hasDistanceTable() ? null : new NavGraph.FlowField(nav);
+    }
+
+    // Start a level: refill every pellet and put the map's actors back where they started
+    // Nothing is allocated; the pellets are a bulk copy of the compiled templates
+    public void loadMap() {
+        GameEvents.LoadMap event = new GameEvents.LoadMap();
+        event.begin();
+        ghostModeTick = 0;  // Every level starts in scatter mode
+        scatter = true;
+        System.arraycopy(pelletTemplate, 0, pellets, 0, pellets.length);
+        System.arraycopy(powerTemplate, 0, powerPellets, 0, powerPellets.length);
+        pelletsRemaining = pelletTemplateCount;
+        mapVersion++;  // Cached board images must be refilled
+
+        // Ghosts added with addGhost() only last until the next level, as before
+        while (ghosts.size() > mapGhostCount) {
+            ghosts.remove(ghosts.size() - 1);
+        }
+        for (Block ghost : ghosts) {
+            ghost.respawn();
+        }
+        pacman.respawn();
+        pacmanFacing = 'R';  // Pacman is drawn facing right until the first key
+        event.mapVersion = mapVersion;
+        event.commit();
+    }
+
+    // ===================== GAME RULES =====================
+    // Move all game objects and check collisions
+    public void move() {
+        GameEvents.Move event = new GameEvents.Move();  // Costs nothing unless a JFR recording is running
+        event.begin();
+        moveActors();
+        event.ghosts = ghosts.size();
+        event.pelletsRemaining = pelletsRemaining;
+        event.commit();
+    }
+
+    // Body of move(): one tick of movement, collisions and eating
+    private void moveActors() {
+        ticksPlayed++;
+
+        // Move pacman based on current velocity
+        pacman.x += pacman.velocityX;
+        pacman.y += pacman.velocityY;
+
+        // Check if pacman collided with any wall
+        if (collidesWithWall(pacman)) {  // If collision detected
+            pacman.x -= pacman.velocityX;  // Undo X movement
+            pacman.y -= pacman.velocityY;  // Undo Y movement
+        }
+        wrapThroughTunnel(pacman);
+
+        if (!wanderingGhosts) {
+            updateGhostMode();
+        }
+
+        // Check ghost collisions and move ghosts
+        // Each ghost is checked against pacman before it moves, and moving one ghost never moves
+        // another or pacman, so the ghosts that will be found touching pacman are known up front:
+        // only the ones the hash files near pacman need a collision() test
+        fileGhosts();
+        int touching = touchingGhost(pacman, 0);
+        for (int i = 0; i < ghosts.size(); i++) {
+            Block ghost = ghosts.get(i);
+            // Check if ghost touched pacman
+            if (i == touching) {
+                lives -= 1;  // Lose a life
+                if (lives == 0) {  // If no lives left
+                    gameOver = true;  // Game over
+                    return;  // Exit method
+                }
+                resetPositions();  // Reset all positions after death
+                fileGhosts();      // Everyone moved back to the start
+                touching = touchingGhost(pacman, i + 1);
+            }
+
+            if (wanderingGhosts) {
+                wanderGhost(ghost);
+            }
+            else {
+                chaseGhost(ghost);
+            }
+            if (solidGhosts) {
+                keepApart(ghost, i);
+            }
+        }
+
+        // Check if pacman ate any food (only the 1-4 tiles it overlaps can hold a pellet it touches)
+        eatPellets();
+
+        // If all food is gone, reload the map (new level)
+        if (pelletsRemaining == 0) {
+            level++;
+            loadMap();          // Refill all food and put the actors back
+            resetPositions();   // Reset character positions
+        }
+    }
+
+    // Eat every pellet pacman touches this tick
+    private void eatPellets() {
+        int firstCol = Math.floorDiv(pacman.x, tileSize);
+        int lastCol = Math.floorDiv(pacman.x + pacman.width - 1, tileSize);
+        int firstRow = Math.floorDiv(pacman.y, tileSize);
+        int lastRow = Math.floorDiv(pacman.y + pacman.height - 1, tileSize);
+
+        for (int r = Math.max(firstRow, 0); r <= Math.min(lastRow, rowCount - 1); r++) {
+            for (int c = Math.max(firstCol, 0); c <= Math.min(lastCol, columnCount - 1); c++) {
+                int tile = r * columnCount + c;
+                long bit = 1L << tile;
+                if ((pellets[tile >>> 6] & bit) != 0 && touches(pacman, r, c, FOOD_OFFSET, FOOD_SIZE)) {
+                    pellets[tile >>> 6] &= ~bit;  // Remove the food
+                    score += FOOD_SCORE;         // Increase score by 10
+                    pelletsEaten++;              // Count it for statistics
+                    pelletsRemaining--;
+                }
+                if ((powerPellets[tile >>> 6] & bit) != 0 && touches(pacman, r, c, POWER_OFFSET, POWER_SIZE)) {
+                    powerPellets[tile >>> 6] &= ~bit;  // Remove the power food
+                    score += POWER_SCORE;
+                    pelletsEaten++;
+                    pelletsRemaining--;
+                }
+            }
+        }
+    }
+
+    // Check if a block overlaps the square of the given size centred in tile (r, c)
+    private boolean touches(Block b, int r, int c, int offset, int size) {
+        int x = c * tileSize + offset;
+        int y = r * tileSize + offset;
+        return b.x < x + size && b.x + b.width > x && b.y < y + size && b.y + b.height > y;
+    }
+
+    // Does this tile still hold food / power food?
+    public boolean hasPellet(int tile) {
+        return (pellets[tile >>> 6] & (1L << tile)) != 0;
+    }
+
+    public boolean hasPowerPellet(int tile) {
+        return (powerPellets[tile >>> 6] & (1L << tile)) != 0;
+    }
+
+    // ===================== SWEPT MOVEMENT =====================
+    // advance() plays spans of ticks at once. Within a span pacman moves in a straight line, so
+    // its path is swept against the wall grid one tile at a time to find the tick a wall stops
+    // it, and every pellet inside the swept box is eaten. Each ghost is followed from tile to
+    // tile through the span, taking the same corridor turns and junction choices chaseGhost()
+    // would, from where pacman (and, for blue, red) will be on that tick. Between tiles an actor
+    // moves in a straight line, so the tick it first touches pacman is solved from their
+    // relative motion. The span ends before the first tick a sweep cannot play: a ghost catches
+    // pacman, the level is cleared, the ghost mode flips, pacman wraps through a tunnel, a ghost
+    // bumps into a wall (it turns at random) or reaches a junction on a map that uses the flow
+    // field. advance() steps that tick normally, and the wandering and swarm rules always step.
+    static final int MIN_SWEPT_TICKS = 8;        // Shorter runs are cheaper stepped
+    static final int MAX_SWEPT_TICKS = 1024;     // Longest span
+    static final int MAX_SEGMENTS = 1 << 14;     // Ghost path segments per span (more ghosts, shorter spans)
+    private static final int NO_RED = Integer.MIN_VALUE;
+
+    // Every ghost's path through the span being swept, made once on the first advance(). Ghost i's
+    // segments are pathStart[i] .. pathEnd[i]: segment k starts on tick segmentTick[k] at
+    // (segmentX[k], segmentY[k]) heading directions[segmentDirection[k]]; the last only marks the end.
+    private int[] segmentTick, segmentX, segmentY, pathStart, pathEnd;
+    private byte[] segmentDirection;
+    private int segments;
+
+    // Play up to limit ticks as one span; returns the ticks played, or 0 (nothing changed) if
+    // the next tick has to be stepped
+    private int sweptTicks(int limit) {
+        if (wanderingGhosts || solidGhosts) {
+            return 0;
+        }
+        int span = Math.min(Math.min(limit, MAX_SWEPT_TICKS), ticksUntilModeChange());
+        int moving = pacmanFreeTicks(span);  // Ticks pacman moves before a wall stops it
+        if (moving < 0) {
+            return 0;
+        }
+        if (moving > ticksBeforeWrap(pacman)) {
+            span = moving = ticksBeforeWrap(pacman);
+        }
+
+        // Follow every ghost (red first: blue aims past it); each may end the span sooner
+        if (segmentTick == null) {
+            segmentTick = new int[MAX_SEGMENTS];
+            segmentX = new int[MAX_SEGMENTS];
+            segmentY = new int[MAX_SEGMENTS];
+            segmentDirection = new byte[MAX_SEGMENTS];
+        }
+        if (pathStart == null || pathStart.length < ghosts.size()) {
+            pathStart = new int[ghosts.size()];
+            pathEnd = new int[ghosts.size()];
+        }
+        segments = 0;
+        int red = redGhostIndex();
+        if (red >= 0) {
+            span = followGhost(red, red, span, moving);
+        }
+        for (int i = 0; i < ghosts.size() && span > 0; i++) {
+            if (i != red) {
+                span = followGhost(i, red, span, moving);
+            }
+        }
+        if (span == 0) {
+            return 0;
+        }
+
+        // The level ends when the last pellet goes: stop the span short of that tick
+        if (pelletsInSweep(span, moving) >= pelletsRemaining) {
+            int low = 0;
+            int high = span;  // pelletsInSweep(low) < pelletsRemaining <= pelletsInSweep(high)
+            while (high - low > 1) {
+                int mid = (low + high) >>> 1;
+                if (pelletsInSweep(mid, moving) < pelletsRemaining) {
+                    low = mid;
+                }
+                else {
+                    high = mid;
+                }
+            }
+            span = low;
+            if (span == 0) {
+                return 0;
+            }
+        }
+
+        // Play it: every actor to where its path is after span ticks
+        moving = Math.min(moving, span);
+        sweepPellets(span, moving, true);
+        for (int i = 0; i < ghosts.size(); i++) {
+            Block ghost = ghosts.get(i);
+            int k = pathSegment(i, span + 1);  // Position: the start of tick span + 1
+            ghost.x = segmentX[k] + (span + 1 - segmentTick[k]) * NavGraph.COLUMN_STEP[segmentDirection[k]] * (tileSize / 4);
+            ghost.y = segmentY[k] + (span + 1 - segmentTick[k]) * NavGraph.ROW_STEP[segmentDirection[k]] * (tileSize / 4);
+            k = pathSegment(i, span);          // Heading: as on tick span (a turn on span + 1 is not made yet)
+            ghost.direction = directions[segmentDirection[k]];
+            ghost.updateVelocity();
+        }
+        pacman.x += moving * pacman.velocityX;
+        pacman.y += moving * pacman.velocityY;
+        ghostModeTick += span;
+        ticksPlayed += span;
+        return span;
+    }
+
+    // Follow ghost index tile by tile for up to span ticks, with pacman moving for its first
+    // moving ticks, and record its path. Returns how many of the ticks can be swept (before it
+    // touches pacman or does something only step() can play).
+    private int followGhost(int index, int red, int span, int moving) {
+        Block ghost = ghosts.get(index);
+        int x = ghost.x;
+        int y = ghost.y;
+        int d = directionIndex(ghost.direction);
+        int speed = tileSize / 4;  // As updateVelocity()
+        pathStart[index] = segments;
+        int stop = span;
+        int tick = 0;  // Ticks followed: (x, y) is where the ghost is after them
+        if (ghost.velocityX != NavGraph.COLUMN_STEP[d] * speed || ghost.velocityY != NavGraph.ROW_STEP[d] * speed) {
+            stop = tick;  // Standing still (respawned, not yet turned)
+        }
+        while (tick < stop) {
+            if (x % tileSize == 0 && y % tileSize == 0) {  // On a tile: chaseGhost() decides on tick + 1
+                if (x < 0 || y < 0 || x >= boardWidth || y >= boardHeight) {
+                    stop = tick;
+                    break;
+                }
+                int tile = (y / tileSize) * columnCount + x / tileSize;
+                if (!nav.isJunction(tile)) {
+                    d = nav.corridorDirection(tile, d ^ 1);
+                }
+                else if (nav.hasDistanceTable()) {
+                    int pacmanX = pacman.x + Math.min(tick + 1, moving) * pacman.velocityX;
+                    int pacmanY = pacman.y + Math.min(tick + 1, moving) * pacman.velocityY;
+                    int redTick = index > red ? tick + 1 : tick;  // Red moves before or after this ghost
+                    boolean pivot = ghost.type == 'b' && red >= 0;
+                    d = nav.bestDirection(tile, d ^ 1, ghostTarget(ghost.type, x, y, pacmanX, pacmanY,
+                            pivot ? pathX(red, redTick) : NO_RED, pivot ? pathY(red, redTick) : NO_RED));
+                }
+                else {
+                    stop = tick;  // Flow field: shared with the other ghosts, and roaming is random
+                    break;
+                }
+            }
+            int vx = NavGraph.COLUMN_STEP[d] * speed;
+            int vy = NavGraph.ROW_STEP[d] * speed;
+            int along = vx != 0 ? x : y;
+            if (along % speed != 0) {
+                stop = tick;  // Off the movement grid
+                break;
+            }
+            int ticks = Math.floorMod(vx + vy > 0 ? -along : along, tileSize) / speed;  // To the next tile boundary
+            if (ticks == 0) {
+                if (wallUnder(x + vx, y + vy, ghost.width, ghost.height)) {
+                    stop = tick;  // It would bump into a wall and turn at random
+                    break;
+                }
+                ticks = tileSize / speed;
+            }
+            if (segments >= MAX_SEGMENTS - 2) {
+                stop = tick;  // Out of room for paths: the span ends here (the next ghost's at 0)
+                break;
+            }
+            ticks = Math.min(ticks, stop - tick);
+
+            int contact = ghostContact(x, y, vx, vy, tick + 1, tick + ticks, moving);
+            if (contact > 0) {
+                stop = contact - 1;
+            }
+            addSegment(tick + 1, x, y, d);
+            x += ticks * vx;
+            y += ticks * vy;
+            tick += ticks;
+            if (x <= -ghost.width) {  // As wrapThroughTunnel(), on the tick it arrives
+                x += boardWidth;
+            }
+            else if (x >= boardWidth) {
+                x -= boardWidth;
+            }
+            if (y <= -ghost.height) {
+                y += boardHeight;
+            }
+            else if (y >= boardHeight) {
+                y -= boardHeight;
+            }
+        }
+        pathEnd[index] = segments;
+        addSegment(tick + 1, x, y, d);  // End marker (the room check above leaves space for it)
+        return stop;
+    }
+
+    private void addSegment(int tick, int x, int y, int direction) {
+        segmentTick[segments] = tick;
+        segmentX[segments] = x;
+        segmentY[segments] = y;
+        segmentDirection[segments] = (byte) direction;
+        segments++;
+    }
+
+    // Ghost i's segment in force on the given tick of the span
+    private int pathSegment(int i, int tick) {
+        int k = pathEnd[i];
+        while (k > pathStart[i] && segmentTick[k] > tick) {
+            k--;
+        }
+        return k;
+    }
+
+    // Where ghost i is after the given number of ticks of the span
+    private int pathX(int i, int ticks) {
+        int k = pathSegment(i, ticks + 1);
+        return segmentX[k] + (ticks + 1 - segmentTick[k]) * NavGraph.COLUMN_STEP[segmentDirection[k]] * (tileSize / 4);
+    }
+
+    private int pathY(int i, int ticks) {
+        int k = pathSegment(i, ticks + 1);
+        return segmentY[k] + (ticks + 1 - segmentTick[k]) * NavGraph.ROW_STEP[segmentDirection[k]] * (tileSize / 4);
+    }
+
+    // First tick in [from, to] on which pacman, after moving, overlaps a ghost that is at (x, y)
+    // before tick from and moves by (vx, vy) a tick; 0 if none
+    private int ghostContact(int x, int y, int vx, int vy, int from, int to, int moving) {
+        // Quick rejection: the two are a tile or more apart on one axis the whole time
+        int pacmanX1 = pacman.x + Math.min(from, moving) * pacman.velocityX;
+        int pacmanX2 = pacman.x + Math.min(to, moving) * pacman.velocityX;
+        int pacmanY1 = pacman.y + Math.min(from, moving) * pacman.velocityY;
+        int pacmanY2 = pacman.y + Math.min(to, moving) * pacman.velocityY;
+        int ghostX2 = x + (to - from) * vx;
+        int ghostY2 = y + (to - from) * vy;
+        if (Math.min(pacmanX1, pacmanX2) - Math.max(x, ghostX2) >= tileSize
+                || Math.min(x, ghostX2) - Math.max(pacmanX1, pacmanX2) >= tileSize
+                || Math.min(pacmanY1, pacmanY2) - Math.max(y, ghostY2) >= tileSize
+                || Math.min(y, ghostY2) - Math.max(pacmanY1, pacmanY2) >= tileSize) {
+            return 0;
+        }
+
+        int dx = pacman.x - x + from * vx;  // Offset on tick t: (dx, dy) + t * (pacman's velocity - the ghost's)
+        int dy = pacman.y - y + from * vy;
+        int contact = firstOverlap(dx, pacman.velocityX - vx, dy, pacman.velocityY - vy, from, Math.min(to, moving));
+        if (contact == 0) {  // After pacman stops
+            contact = firstOverlap(dx + moving * pacman.velocityX, -vx, dy + moving * pacman.velocityY, -vy,
+                    Math.max(from, moving + 1), to);
+        }
+        return contact;
+    }
+
+    // Index of the red ghost blue pivots on (see redGhost()), or -1
+    private int redGhostIndex() {
+        for (int i = 0; i < mapGhostCount; i++) {
+            if (ghosts.get(i).type == 'r') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Ticks updateGhostMode() leaves scatter as it is
+    private int ticksUntilModeChange() {
+        int end = 0;
+        for (int i = 0; i < GHOST_MODE_TICKS.length; i++) {
+            end += GHOST_MODE_TICKS[i];
+            if (ghostModeTick + 1 < end) {
+                return (i % 2 == 0) == scatter ? end - ghostModeTick - 1 : 0;
+            }
+        }
+        return scatter ? 0 : Integer.MAX_VALUE;  // Past the schedule: chase forever
+    }
+
+    // Ticks a block can move before wrapThroughTunnel() would move it (MAX_VALUE if it stands still)
+    private int ticksBeforeWrap(Block b) {
+        if (b.velocityX < 0) {
+            return (b.x + b.width - 1) / -b.velocityX;
+        }
+        else if (b.velocityX > 0) {
+            return (boardWidth - b.x - 1) / b.velocityX;
+        }
+        else if (b.velocityY < 0) {
+            return (b.y + b.height - 1) / -b.velocityY;
+        }
+        else if (b.velocityY > 0) {
+            return (boardHeight - b.y - 1) / b.velocityY;
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    // Ticks pacman moves before a wall stops it (at most limit; it stays stopped after that)
+    // A block can only run into a new tile when it moves off a tile boundary, so the sweep tests
+    // one row or column of tiles per tile travelled. -1 if pacman is off the movement grid.
+    private int pacmanFreeTicks(int limit) {
+        int vx = pacman.velocityX;
+        int vy = pacman.velocityY;
+        int speed = Math.abs(vx + vy);
+        if (speed == 0) {
+            return 0;
+        }
+        int along = vx != 0 ? pacman.x : pacman.y;
+        if (along % speed != 0 || tileSize % speed != 0 || (vx != 0 && vy != 0)) {
+            return -1;
+        }
+        int ticks = Math.floorMod(vx + vy > 0 ? -along : along, tileSize) / speed;  // To the next boundary
+        while (ticks < limit) {
+            if (wallUnder(pacman.x + (ticks + 1) * vx, pacman.y + (ticks + 1) * vy, pacman.width, pacman.height)) {
+                return ticks;
+            }
+            ticks += tileSize / speed;
+        }
+        return limit;
+    }
+
+    // First tick t in [from, to] on which two tile-sized blocks at offset (x0 + t * dx, y0 + t * dy)
+    // from each other overlap, or 0 if they do not
+    private int firstOverlap(int x0, int dx, int y0, int dy, int from, int to) {
+        long first = Math.max(from, Math.max(overlapStart(x0, dx), overlapStart(y0, dy)));
+        long last = Math.min(to, Math.min(overlapEnd(x0, dx), overlapEnd(y0, dy)));
+        return first <= last ? (int) first : 0;
+    }
+
+    // First and last t with |d0 + t * dv| < tileSize (MIN/MAX_VALUE when unbounded, first > last when never)
+    private long overlapStart(long d0, long dv) {
+        if (dv < 0) {
+            return overlapStart(-d0, -dv);
+        }
+        else if (dv == 0) {
+            return Math.abs(d0) < tileSize ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+        return Math.floorDiv(-tileSize - d0, dv) + 1;
+    }
+
+    private long overlapEnd(long d0, long dv) {
+        if (dv < 0) {
+            return overlapEnd(-d0, -dv);
+        }
+        else if (dv == 0) {
+            return Math.abs(d0) < tileSize ? Long.MAX_VALUE : Long.MIN_VALUE;
+        }
+        return Math.floorDiv(tileSize - d0 - 1, dv);
+    }
+
+    // Pellets pacman eats in the first ticks of a span (it moves on the first moving of them)
+    private int pelletsInSweep(int ticks, int moving) {
+        return ticks == 0 ? 0 : sweepPellets(ticks, moving, false);
+    }
+
+    // Count (or eat) the pellets pacman touches on ticks 1 .. ticks. Its boxes on those ticks
+    // overlap one another, so together they make one box, from the first to the last.
+    private int sweepPellets(int ticks, int moving, boolean eat) {
+        moving = Math.min(moving, ticks);
+        int firstX = pacman.x + Math.min(moving, 1) * pacman.velocityX;
+        int firstY = pacman.y + Math.min(moving, 1) * pacman.velocityY;
+        int lastX = pacman.x + moving * pacman.velocityX;
+        int lastY = pacman.y + moving * pacman.velocityY;
+        int left = Math.min(firstX, lastX);
+        int top = Math.min(firstY, lastY);
+        int right = Math.max(firstX, lastX) + pacman.width;
+        int bottom = Math.max(firstY, lastY) + pacman.height;
+
+        int count = 0;
+        int lastRow = Math.min(Math.floorDiv(bottom - 1, tileSize), rowCount - 1);
+        int lastCol = Math.min(Math.floorDiv(right - 1, tileSize), columnCount - 1);
+        for (int r = Math.max(Math.floorDiv(top, tileSize), 0); r <= lastRow; r++) {
+            for (int c = Math.max(Math.floorDiv(left, tileSize), 0); c <= lastCol; c++) {
+                int tile = r * columnCount + c;
+                long bit = 1L << tile;
+                if ((pellets[tile >>> 6] & bit) != 0 && boxTouches(left, top, right, bottom, r, c, FOOD_OFFSET, FOOD_SIZE)) {
+                    count++;
+                    if (eat) {
+                        pellets[tile >>> 6] &= ~bit;
+                        score += FOOD_SCORE;
+                        pelletsEaten++;
+                        pelletsRemaining--;
+                    }
+                }
+                if ((powerPellets[tile >>> 6] & bit) != 0
+                        && boxTouches(left, top, right, bottom, r, c, POWER_OFFSET, POWER_SIZE)) {
+                    count++;
+                    if (eat) {
+                        powerPellets[tile >>> 6] &= ~bit;
+                        score += POWER_SCORE;
+                        pelletsEaten++;
+                        pelletsRemaining--;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    // touches() for a box given by its edges
+    private boolean boxTouches(int left, int top, int right, int bottom, int r, int c, int offset, int size) {
+        int x = c * tileSize + offset;
+        int y = r * tileSize + offset;
+        return left < x + size && right > x && top < y + size && bottom > y;
+    }
+
+    // ===================== GHOST MOVEMENT =====================
+    // Original ghost: bump into walls and pick a random new direction
+    private void wanderGhost(Block ghost) {
+        // Special behavior: if ghost is at row 9 and not moving vertically, make it go up
+        // This forces ghosts to leave the ghost house
+        if (ghost.y == tileSize * 9 && ghost.direction != 'U' && ghost.direction != 'D') {
+            ghost.updateDirection('U');
+        }
+
+        // Move ghost
+        ghost.x += ghost.velocityX;
+        ghost.y += ghost.velocityY;
+
+        // Check if ghost hit a wall or board edge
+        if (collidesWithWall(ghost) || ghost.x <= 0 || ghost.x + ghost.width >= boardWidth) {
+            ghost.x -= ghost.velocityX;  // Undo movement
+            ghost.y -= ghost.velocityY;  // Undo movement
+            char newDirection = directions[random.nextInt(4)];  // Pick random new direction
+            ghost.updateDirection(newDirection);  // Change direction
+        }
+    }
+
+    // Targeting ghost: on every tile centre, take the exit with the shortest path to its target
+    private void chaseGhost(Block ghost) {
+        if (ghost.x % tileSize == 0 && ghost.y % tileSize == 0) {  // Lined up with a tile: it may turn
+            int tile = (ghost.y / tileSize) * columnCount + ghost.x / tileSize;
+            int reverse = directionIndex(ghost.direction) ^ 1;   // Ghosts never turn back by choice
+            int next;
+            if (!nav.isJunction(tile)) {
+                next = nav.corridorDirection(tile, reverse);       // Corridor: only one way on
+            }
+            else if (nav.hasDistanceTable()) {
+                next = nav.bestDirection(tile, reverse, ghostTarget(ghost));
+            }
+            else {
+                flow.update(pacmanTile());                         // Large map: everyone near pacman chases it
+                next = flow.reaches(tile) ? flow.direction(tile, reverse) : roamDirection(tile, reverse);
+            }
+            ghost.direction = directions[next];
+            ghost.updateVelocity();
+        }
+
+        // Move ghost
+        ghost.x += ghost.velocityX;
+        ghost.y += ghost.velocityY;
+        if (collidesWithWall(ghost)) {  // Only if it started off the tile lattice (e.g. after addGhost)
+            ghost.x -= ghost.velocityX;
+            ghost.y -= ghost.velocityY;
+            ghost.updateDirection(directions[random.nextInt(4)]);
+        }
+        wrapThroughTunnel(ghost);
+    }
+
+    // A random exit other than back the way it came (ghosts too far away to chase pacman)
+    private int roamDirection(int tile, int reverse) {
+        int first = random.nextInt(4);
+        for (int i = 0; i < 4; i++) {
+            int d = (first + i) & 3;
+            if (d != reverse && nav.isOpen(tile, d)) {
+                return d;
+            }
+        }
+        return reverse;  // Dead end
+    }
+
+    // Advance the scatter/chase schedule; ghosts turn around whenever the mode flips
+    private void updateGhostMode() {
+        ghostModeTick++;
+        int end = 0;
+        boolean nowScatter = false;  // Past the schedule: chase forever
+        for (int i = 0; i < GHOST_MODE_TICKS.length; i++) {
+            end += GHOST_MODE_TICKS[i];
+            if (ghostModeTick < end) {
+                nowScatter = i % 2 == 0;
+                break;
+            }
+        }
+        if (nowScatter != scatter) {
+            scatter = nowScatter;
+            for (Block ghost : ghosts) {
+                ghost.direction = directions[directionIndex(ghost.direction) ^ 1];
+                ghost.updateVelocity();
+            }
+        }
+    }
+
+    // The tile each ghost colour heads for (always a walkable tile)
+    // Scatter: its own corner. Chase: red targets pacman, pink 4 tiles ahead of pacman,
+    // blue doubles the vector from red to 2 tiles ahead of pacman, orange chases pacman
+    // until it is within 8 tiles and then retreats to its corner
+    private int ghostTarget(Block ghost) {
+        Block red = ghost.type == 'b' ? redGhost() : null;
+        return ghostTarget(ghost.type, ghost.x, ghost.y, pacman.x, pacman.y,
+                red != null ? red.x : NO_RED, red != null ? red.y : NO_RED);
+    }
+
+    // The same for a ghost of this type at (x, y), with pacman and the red ghost at the given
+    // positions (redX NO_RED = no red ghost); advance() asks ahead of time
+    private int ghostTarget(char type, int x, int y, int pacmanX, int pacmanY, int redX, int redY) {
+        int pacmanRow = (pacmanY + tileSize / 2) / tileSize;
+        int pacmanColumn = (pacmanX + tileSize / 2) / tileSize;
+        int d = directionIndex(pacman.direction);
+        int aheadRow = NavGraph.ROW_STEP[d];
+        int aheadColumn = NavGraph.COLUMN_STEP[d];
+
+        int cornerRow = type == 'r' || type == 'p' ? 0 : rowCount - 1;
+        int cornerColumn = type == 'r' || type == 'b' ? columnCount - 1 : 0;
+        if (scatter) {
+            return nav.targetTile(cornerRow, cornerColumn);
+        }
+
+        if (type == 'p') {               // Pink: ambush 4 tiles ahead
+            return nav.targetTile(pacmanRow + 4 * aheadRow, pacmanColumn + 4 * aheadColumn);
+        }
+        else if (type == 'b') {          // Blue: flank from the far side of red
+            int pivotRow = pacmanRow + 2 * aheadRow;
+            int pivotColumn = pacmanColumn + 2 * aheadColumn;
+            int redRow = redX != NO_RED ? (redY + tileSize / 2) / tileSize : pivotRow;
+            int redColumn = redX != NO_RED ? (redX + tileSize / 2) / tileSize : pivotColumn;
+            return nav.targetTile(2 * pivotRow - redRow, 2 * pivotColumn - redColumn);
+        }
+        else if (type == 'o') {          // Orange: shy when close
+            int here = nav.targetTile((y + tileSize / 2) / tileSize, (x + tileSize / 2) / tileSize);
+            int target = nav.targetTile(pacmanRow, pacmanColumn);
+            return nav.distance(here, target) > 8 ? target : nav.targetTile(cornerRow, cornerColumn);
+        }
+        return nav.targetTile(pacmanRow, pacmanColumn);  // Red: straight at pacman
+    }
+
+    // The walkable tile under pacman's centre
+    private int pacmanTile() {
+        return nav.targetTile((pacman.y + tileSize / 2) / tileSize, (pacman.x + tileSize / 2) / tileSize);
+    }
+
+    // First red ghost from the map (blue's targeting pivots on it)
+    private Block redGhost() {
+        for (int i = 0; i < mapGhostCount; i++) {
+            if (ghosts.get(i).type == 'r') {
+                return ghosts.get(i);
+            }
+        }
+        return null;
+    }
+
+    // Index of a direction character in directions (U=0, D=1, L=2, R=3)
+    private static int directionIndex(char direction) {
+        return direction == 'U' ? 0 : direction == 'D' ? 1 : direction == 'L' ? 2 : 3;
+    }
+
+    // A block that has left the board through a tunnel comes back in on the other side
+    // (wallUnder() only lets it off an edge whose far side is open)
+    private void wrapThroughTunnel(Block b) {
+        if (b.x <= -b.width) {
+            b.x += boardWidth;
+        }
+        else if (b.x >= boardWidth) {
+            b.x -= boardWidth;
+        }
+        if (b.y <= -b.height) {
+            b.y += boardHeight;
+        }
+        else if (b.y >= boardHeight) {
+            b.y -= boardHeight;
+        }
+    }
+
+    // Check if two blocks are colliding using rectangle collision detection
+    public boolean collision(Block a, Block b) {
+        return a.x < b.x + b.width &&      // A's left edge is left of B's right edge
+               a.x + a.width > b.x &&      // A's right edge is right of B's left edge
+               a.y < b.y + b.height &&     // A's top edge is above B's bottom edge
+               a.y + a.height > b.y;       // A's bottom edge is below B's top edge
+    }
+
+    // File every ghost in the spatial hash under its current position (only ghosts that changed
+    // cells are relinked, and ghosts removed since the last tick are dropped)
+    private void fileGhosts() {
+        ghostHash.reserve(ghosts.size());
+        ghostHash.truncate(ghosts.size());
+        for (int i = 0; i < ghosts.size(); i++) {
+            Block ghost = ghosts.get(i);
+            ghostHash.update(i, ghost.x, ghost.y);
+        }
+    }
+
+    // Lowest index from 'from' on of a ghost overlapping b, or -1
+    // Only ghosts filed in the cells b could reach are tested (ghosts are tileSize wide, so a
+    // ghost touching b has its top-left corner less than tileSize above or left of b)
+    int touchingGhost(Block b, int from) {
+        int firstCellX = (b.x - tileSize + 1) >> SpatialHash.CELL_SHIFT;
+        int lastCellX = (b.x + b.width - 1) >> SpatialHash.CELL_SHIFT;
+        int firstCellY = (b.y - tileSize + 1) >> SpatialHash.CELL_SHIFT;
+        int lastCellY = (b.y + b.height - 1) >> SpatialHash.CELL_SHIFT;
+        int found = -1;
+        for (int cy = firstCellY; cy <= lastCellY; cy++) {
+            for (int cx = firstCellX; cx <= lastCellX; cx++) {
+                for (int id = ghostHash.first(cx, cy); id != SpatialHash.NONE; id = ghostHash.next(id)) {
+                    if (id >= from && (found < 0 || id < found) && collision(ghosts.get(id), b)) {
+                        found = id;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    // Swarm mode: undo a ghost's move if it ran into another ghost ahead of it, and turn it back
+    // Ghosts stacked on the same spot are not ahead of each other, so they can always separate
+    private void keepApart(Block ghost, int id) {
+        int firstCellX = (ghost.x - tileSize + 1) >> SpatialHash.CELL_SHIFT;
+        int lastCellX = (ghost.x + ghost.width - 1) >> SpatialHash.CELL_SHIFT;
+        int firstCellY = (ghost.y - tileSize + 1) >> SpatialHash.CELL_SHIFT;
+        int lastCellY = (ghost.y + ghost.height - 1) >> SpatialHash.CELL_SHIFT;
+        for (int cy = firstCellY; cy <= lastCellY; cy++) {
+            for (int cx = firstCellX; cx <= lastCellX; cx++) {
+                for (int other = ghostHash.first(cx, cy); other != SpatialHash.NONE; other = ghostHash.next(other)) {
+                    Block b = ghosts.get(other);
+                    if (other != id && collision(ghost, b)
+                            && (b.x - ghost.x) * ghost.velocityX + (b.y - ghost.y) * ghost.velocityY > 0) {
+                        ghost.x -= ghost.velocityX;
+                        ghost.y -= ghost.velocityY;
+                        ghost.direction = directions[directionIndex(ghost.direction) ^ 1];
+                        ghost.updateVelocity();
+                        ghostHash.update(id, ghost.x, ghost.y);
+                        return;
+                    }
+                }
+            }
+        }
+        ghostHash.update(id, ghost.x, ghost.y);  // Later ghosts see where this one went
+    }
+
+    // Check if a block overlaps any wall tile using the map's tile grid
+    // A tile-sized block covers at most 2x2 tiles, so this is constant time whatever the map size
+    public boolean collidesWithWall(Block b) {
+        return wallUnder(b.x, b.y, b.width, b.height);
+    }
+
+    // Same test for a box that is not a block (a position being swept through)
+    private boolean wallUnder(int x, int y, int width, int height) {
+        int firstCol = Math.floorDiv(x, tileSize);                     // Leftmost column touched
+        int lastCol = Math.floorDiv(x + width - 1, tileSize);          // Rightmost column touched
+        int firstRow = Math.floorDiv(y, tileSize);                     // Top row touched
+        int lastRow = Math.floorDiv(y + height - 1, tileSize);         // Bottom row touched
+
+        for (int r = firstRow; r <= lastRow; r++) {
+            // Off an edge a block is entering a tunnel: it meets the tile it comes back in on, so
+            // an opening whose far side is a wall is a wall (the same rule as NavGraph.step)
+            int row = r < 0 ? r + rowCount : r >= rowCount ? r - rowCount : r;
+            for (int c = firstCol; c <= lastCol; c++) {
+                int col = c < 0 ? c + columnCount : c >= columnCount ? c - columnCount : c;
+                if (isWallTile(row, col)) {  // Any solid tile under the block is a hit
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Look up a single tile in the map (tiles outside the board are open, like before)
+    public boolean isWallTile(int r, int c) {
+        return map.isWall(r, c);
+    }
+
+    // ===================== SAVED STATE =====================
+    // Everything that decides how the game continues, written to / read from a buffer (replay
+    // keyframes). The map itself is not included: it is rebuilt from tileMap by the constructor.
+    // Layout: random state, counters, flags, pacman, then each ghost, then the pellet bitsets.
+
+    // Bytes saveState() writes for the current number of ghosts
+    public int stateSize() {
+        return 8 + 8 * 4 + 4 + 2 + 18 + 4 + ghosts.size() * 28 + 2 * 8 * pellets.length;
+    }
+
+    public void saveState(ByteBuffer out) {
+        out.putLong(random.state());
+        out.putInt(score).putInt(lives).putInt(pelletsEaten).putInt(pelletsRemaining);
+        out.putInt(mapVersion).putInt(ghostModeTick).putInt(level).putInt(ticksPlayed);
+        out.put((byte) (gameOver ? 1 : 0)).put((byte) (scatter ? 1 : 0)).put((byte) (wanderingGhosts ? 1 : 0))
+                .put((byte) (solidGhosts ? 1 : 0));
+        out.putChar(pacmanFacing);
+        out.putInt(pacman.x).putInt(pacman.y).putChar(pacman.direction);
+        out.putInt(pacman.velocityX).putInt(pacman.velocityY);
+
+        out.putInt(ghosts.size());
+        for (Block ghost : ghosts) {
+            out.putChar(ghost.type).putInt(ghost.startX).putInt(ghost.startY);
+            out.putInt(ghost.x).putInt(ghost.y).putChar(ghost.direction);
+            out.putInt(ghost.velocityX).putInt(ghost.velocityY);
+        }
+        for (long word : pellets) {
+            out.putLong(word);
+        }
+        for (long word : powerPellets) {
+            out.putLong(word);
+        }
+    }
+
+    // Put the game back exactly as saveState() found it (allocates only for extra ghosts)
+    public void restoreState(ByteBuffer in) {
+        random.setState(in.getLong());
+        score = in.getInt();
+        lives = in.getInt();
+        pelletsEaten = in.getInt();
+        pelletsRemaining = in.getInt();
+        mapVersion = in.getInt();
+        ghostModeTick = in.getInt();
+        level = in.getInt();
+        ticksPlayed = in.getInt();
+        gameOver = in.get() != 0;
+        scatter = in.get() != 0;
+        wanderingGhosts = in.get() != 0;
+        solidGhosts = in.get() != 0;
+        pacmanFacing = in.getChar();
+        pacman.x = in.getInt();
+        pacman.y = in.getInt();
+        pacman.direction = in.getChar();
+        pacman.velocityX = in.getInt();
+        pacman.velocityY = in.getInt();
+
+        int ghostCount = in.getInt();
+        while (ghosts.size() > ghostCount) {
+            ghosts.remove(ghosts.size() - 1);
+        }
+        for (int i = 0; i < ghostCount; i++) {
+            char type = in.getChar();
+            int startX = in.getInt();
+            int startY = in.getInt();
+            if (i >= ghosts.size()) {  // A ghost added with addGhost() since
+                ghosts.add(new Block(type, startX, startY, tileSize, tileSize));
+            }
+            Block ghost = ghosts.get(i);
+            ghost.type = type;
+            ghost.startX = startX;
+            ghost.startY = startY;
+            ghost.x = in.getInt();
+            ghost.y = in.getInt();
+            ghost.direction = in.getChar();
+            ghost.velocityX = in.getInt();
+            ghost.velocityY = in.getInt();
+        }
+        for (int i = 0; i < pellets.length; i++) {
+            pellets[i] = in.getLong();
+        }
+        for (int i = 0; i < powerPellets.length; i++) {
+            powerPellets[i] = in.getLong();
+        }
+    }
+
+    // Reset all character positions to their starting locations
+    public void resetPositions() {
+        GameEvents.ResetPositions event = new GameEvents.ResetPositions();
+        event.begin();
+        pacman.reset();         // Reset pacman position
+        pacman.velocityX = 0;   // Stop pacman movement
+        pacman.velocityY = 0;   // Stop pacman movement
+
+        // Reset all ghosts
+        for (Block ghost : ghosts) {
+            ghost.reset();  // Reset ghost position
+            char newDirection = directions[random.nextInt(4)];  // Give random direction
+            ghost.updateDirection(newDirection);  // Apply the direction
+        }
+        event.commit();
+    }
+}
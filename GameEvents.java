@@ -0,0 +1,92 @@
+// Import the JDK Flight Recorder API (part of the JDK, no AWT involved)
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+
+// Custom JDK Flight Recorder events for the game loop
+// Record with: java -XX:StartFlightRecording=filename=pacman.jfr,settings=profile App
+// and open the file in JDK Mission Control (events are under "PacMan"), or: jfr print --categories PacMan pacman.jfr
+// Without a recording an event costs a begin()/commit() pair the JIT reduces to nothing.
+// Stack traces are off: the events fire on every tick and frame.
+public class GameEvents {
+    private GameEvents() {}
+
+    // Register the event types on a background thread. Setting up the first JFR event class takes
+    // about 300 ms, recording or not, and would otherwise hold up the first frame. The engine's
+    // first event then waits only for whatever is left.
+    static void preload() {
+        Thread thread = new Thread(() -> {
+            new Tick();
+            new Move();
+            new Draw();
+            new LoadMap();
+            new ResetPositions();
+            new InputLatency();
+        }, "pacman-jfr-setup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Name("pacman.Tick")
+    @Label("Tick")
+    @Category("PacMan")
+    @Description("One game loop tick: input, move() and repaint scheduling")
+    @StackTrace(false)
+    public static class Tick extends Event {
+    }
+
+    @Name("pacman.Move")
+    @Label("Move")
+    @Category("PacMan")
+    @Description("GameEngine.move(): pacman, ghosts, collisions and pellets")
+    @StackTrace(false)
+    public static class Move extends Event {
+        @Label("Ghosts")
+        int ghosts;
+
+        @Label("Pellets Remaining")
+        int pelletsRemaining;
+    }
+
+    @Name("pacman.Draw")
+    @Label("Draw")
+    @Category("PacMan")
+    @Description("PacMan.draw(): one frame")
+    @StackTrace(false)
+    public static class Draw extends Event {
+    }
+
+    @Name("pacman.LoadMap")
+    @Label("Load Map")
+    @Category("PacMan")
+    @Description("GameEngine.loadMap(): level reset")
+    @StackTrace(false)
+    public static class LoadMap extends Event {
+        @Label("Map Version")
+        int mapVersion;
+    }
+
+    @Name("pacman.ResetPositions")
+    @Label("Reset Positions")
+    @Category("PacMan")
+    @Description("GameEngine.resetPositions(): actors back to their start after a death or level")
+    @StackTrace(false)
+    public static class ResetPositions extends Event {
+    }
+
+    @Name("pacman.InputLatency")
+    @Label("Input Latency")
+    @Category("PacMan")
+    @Description("Time from a key release to the first frame on screen that shows it")
+    @StackTrace(false)
+    public static class InputLatency extends Event {
+        @Label("Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+    }
+}
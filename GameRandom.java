@@ -0,0 +1,45 @@
+// Seedable random numbers whose whole state is one long, so it can be saved and restored
+// Same SplitMix64 generator as java.util.SplittableRandom: new GameRandom(seed) produces exactly
+// the numbers new SplittableRandom(seed) does. SplittableRandom hides its state, which replay
+// keyframes need to capture; here state() returns it and GameRandom(state) resumes from it.
+public class GameRandom {
+    static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;  // SplittableRandom's default increment
+
+    private long state;
+
+    GameRandom(long seed) {
+        this.state = seed;
+    }
+
+    // Current state; new GameRandom(state()) continues with the same numbers as this one
+    long state() {
+        return state;
+    }
+
+    void setState(long state) {
+        this.state = state;
+    }
+
+    // Uniform int over all 32-bit values
+    int nextInt() {
+        return mix32(state += GOLDEN_GAMMA);
+    }
+
+    // The output for a state: games kept as a long[] of states (VectorEnv) step them with this
+    static int mix32(long z) {
+        z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+        return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+    }
+
+    // Uniform int in [0, bound), rejecting the biased top range like SplittableRandom does
+    int nextInt(int bound) {
+        int r = nextInt();
+        int m = bound - 1;
+        if ((bound & m) == 0) {  // Power of two: keep the low bits
+            return r & m;
+        }
+        for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = nextInt() >>> 1) {
+        }
+        return r;
+    }
+}
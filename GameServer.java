@@ -0,0 +1,513 @@
+// Import networking and fork-join utilities for the game server
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;                      // Every message is read and written through buffers
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;               // One thread watches every connection
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;        // Ticks the sessions in parallel, like BatchRunner plays games
+import java.util.concurrent.RecursiveAction;
+
+
+// Authoritative headless game server: every TCP connection plays its own GameEngine session
+// One loop thread owns the sockets and the session list. It waits on a Selector for input and
+// acknowledgements until the next tick is due, then ticks every session on a fork-join pool and
+// writes each client a snapshot. The loop thread is blocked while the pool runs, and the pool is
+// idle while the loop thread runs, so sessions need no locks. Each session's game is seeded with
+// BatchRunner.gameSeed(seed, sessionNumber), so a run can be replayed offline.
+//
+// Snapshots are delta-compressed against the last one the client acknowledged: only actors that
+// moved and the tiles whose pellets were eaten since then. A session keeps the last HISTORY
+// snapshots to diff against; if the acknowledged one is older, or the level was reloaded since,
+// it sends a full snapshot. A client that has not taken the previous snapshot off the socket yet
+// is skipped for that tick: the next delta still starts from what it acknowledged.
+//
+// Protocol (big-endian):
+//   client -> server, 6 bytes each: tag, argument byte, int
+//     INPUT direction, input sequence number | ACK -, snapshot tick | RESTART -, -
+//   server -> client: int payload length, then a snapshot (see Snapshot.write)
+//
+// Usage: java GameServer [port] [threads] [seed]     (see LoadGenerator for a client)
+// Add -Dpacman.scores=<file> to keep every finished game in a results log (see ScoreStore)
+public class GameServer {
+    // ===================== SETTINGS =====================
+    static final int DEFAULT_PORT = 7777;
+    static final int TICK_RATE = FixedStepLoop.DEFAULT_TICK_RATE;  // 20 ticks/s, like the game
+    static final int HISTORY = 32;                  // Snapshots kept per session (power of two)
+    static final int SESSIONS_PER_TASK = 64;        // Sessions ticked sequentially by one leaf task
+    static final int REPORT_SECONDS = 5;
+
+    static final byte INPUT = 'I';
+    static final byte ACK = 'A';
+    static final byte RESTART = 'R';
+    static final int MESSAGE_SIZE = 6;
+
+    final TileMap map;
+    final long seed;
+    final ForkJoinPool pool;
+    final ArrayList<Session> sessions = new ArrayList<>();
+    int sessionsOpened = 0;
+    ScoreStore scores;      // Records every finished game under the client's address (null = not recording)
+
+    // Per-report statistics, only touched by the loop thread
+    final Histogram tickMicros = new Histogram();   // Ticking and encoding every session
+    long snapshotsSent, bytesSent, fullSnapshots, skippedSnapshots, lateTicks;
+
+    GameServer(TileMap map, long seed, int threads) {
+        this.map = map;
+        this.seed = seed;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    // ===================== SNAPSHOTS =====================
+    // Everything a client needs to draw one tick, and the wire format for sending it
+    // Shared with LoadGenerator, which decodes into the same class
+    static final class Snapshot {
+        static final byte FULL = 'F';
+        static final byte DELTA = 'D';
+
+        int tick = -1;
+        int inputSeq;           // Last input the server had applied when the tick ran
+        int score;
+        int lives;
+        boolean gameOver;
+        int mapVersion;         // Pellets can only disappear while this stays the same
+        int actorCount;         // Pacman, then the ghosts in engine order
+        int[] actors = new int[0];          // x, y, direction per actor
+        long[] pellets = new long[0];       // Same bitsets as GameEngine
+        long[] powerPellets = new long[0];
+
+        // Record the engine's state after a tick (allocates only if the ghost count grew)
+        void capture(GameEngine game, int tick, int inputSeq) {
+            this.tick = tick;
+            this.inputSeq = inputSeq;
+            score = game.score;
+            lives = game.lives;
+            gameOver = game.gameOver;
+            mapVersion = game.mapVersion;
+            resize(game.ghosts.size() + 1, game.pellets.length);
+            put(0, game.pacman);
+            for (int i = 0; i < game.ghosts.size(); i++) {
+                put(i + 1, game.ghosts.get(i));
+            }
+            System.arraycopy(game.pellets, 0, pellets, 0, pellets.length);
+            System.arraycopy(game.powerPellets, 0, powerPellets, 0, powerPellets.length);
+        }
+
+        private void put(int actor, GameEngine.Block b) {
+            actors[actor * 3] = b.x;
+            actors[actor * 3 + 1] = b.y;
+            actors[actor * 3 + 2] = b.direction;
+        }
+
+        private void resize(int actorCount, int words) {
+            this.actorCount = actorCount;
+            if (actors.length < actorCount * 3) {
+                actors = new int[actorCount * 3];
+            }
+            if (pellets.length != words) {
+                pellets = new long[words];
+                powerPellets = new long[words];
+            }
+        }
+
+        void copyFrom(Snapshot other) {
+            tick = other.tick;
+            inputSeq = other.inputSeq;
+            score = other.score;
+            lives = other.lives;
+            gameOver = other.gameOver;
+            mapVersion = other.mapVersion;
+            resize(other.actorCount, other.pellets.length);
+            System.arraycopy(other.actors, 0, actors, 0, actorCount * 3);
+            System.arraycopy(other.pellets, 0, pellets, 0, pellets.length);
+            System.arraycopy(other.powerPellets, 0, powerPellets, 0, powerPellets.length);
+        }
+
+        // Hash of every field, sent with each snapshot so clients can check what they decoded
+        int checksum() {
+            long h = tick * 31L + inputSeq;
+            h = h * 31 + score;
+            h = h * 31 + lives;
+            h = h * 31 + (gameOver ? 1 : 0);
+            h = h * 31 + mapVersion;
+            for (int i = 0; i < actorCount * 3; i++) {
+                h = h * 31 + actors[i];
+            }
+            for (int i = 0; i < pellets.length; i++) {
+                h = h * 31 + pellets[i];
+                h = h * 31 + powerPellets[i];
+            }
+            return (int) (h ^ (h >>> 32));
+        }
+
+        // Bytes a full snapshot takes, and the most a delta against a snapshot at most HISTORY
+        // ticks old can take (pacman eats at most 4 pellets a tick)
+        int maxSize() {
+            return 32 + actorCount * 12 + 4 + 16 * pellets.length + HISTORY * 4 * 5;
+        }
+
+        // Write this snapshot, as a delta against base, or in full if base is null or unusable
+        // Layout: kind, tick, base tick, input seq, score, lives, game over, map version, checksum, then
+        //   FULL   actor count, (x, y, direction) per actor, word count, pellet words, power pellet words
+        //   DELTA  changed actor count, (actor, x, y, direction) per changed actor,
+        //          eaten tile count, tiles as gaps from the previous one (varints)
+        void write(Snapshot base, ByteBuffer out) {
+            boolean full = base == null || base.mapVersion != mapVersion || base.actorCount != actorCount;
+            out.put(full ? FULL : DELTA).putInt(tick).putInt(full ? -1 : base.tick).putInt(inputSeq);
+            out.putInt(score).put((byte) lives).put((byte) (gameOver ? 1 : 0)).putInt(mapVersion).putInt(checksum());
+            if (full) {
+                out.putShort((short) actorCount);
+                for (int i = 0; i < actorCount; i++) {
+                    out.putInt(actors[i * 3]).putInt(actors[i * 3 + 1]).putChar((char) actors[i * 3 + 2]);
+                }
+                out.putInt(pellets.length);
+                for (long word : pellets) {
+                    out.putLong(word);
+                }
+                for (long word : powerPellets) {
+                    out.putLong(word);
+                }
+                return;
+            }
+
+            int countAt = out.position();
+            out.putShort((short) 0);
+            int changed = 0;
+            for (int i = 0; i < actorCount; i++) {
+                int a = i * 3;
+                if (actors[a] != base.actors[a] || actors[a + 1] != base.actors[a + 1] || actors[a + 2] != base.actors[a + 2]) {
+                    out.putShort((short) i).putInt(actors[a]).putInt(actors[a + 1]).putChar((char) actors[a + 2]);
+                    changed++;
+                }
+            }
+            out.putShort(countAt, (short) changed);
+
+            int eaten = 0;
+            for (int w = 0; w < pellets.length; w++) {
+                eaten += Long.bitCount((base.pellets[w] | base.powerPellets[w]) & ~(pellets[w] | powerPellets[w]));
+            }
+            Replay.putVarint(out, eaten);
+            int previous = 0;
+            for (int w = 0; w < pellets.length; w++) {
+                long gone = (base.pellets[w] | base.powerPellets[w]) & ~(pellets[w] | powerPellets[w]);
+                while (gone != 0) {
+                    int tile = (w << 6) + Long.numberOfTrailingZeros(gone);
+                    Replay.putVarint(out, tile - previous);
+                    previous = tile;
+                    gone &= gone - 1;
+                }
+            }
+        }
+
+        // Base tick of the snapshot at the buffer's position (-1 for a full one)
+        static int baseTick(ByteBuffer in) {
+            return in.getInt(in.position() + 5);
+        }
+
+        // Decode a snapshot written by write(); base must be the snapshot at baseTick(in)
+        // Returns the checksum the server sent, to compare with checksum()
+        int read(ByteBuffer in, Snapshot base) {
+            byte kind = in.get();
+            int tick = in.getInt();
+            in.getInt();  // Base tick, already looked up by the caller
+            if (kind == DELTA) {
+                copyFrom(base);
+            }
+            this.tick = tick;
+            inputSeq = in.getInt();
+            score = in.getInt();
+            lives = in.get();
+            gameOver = in.get() != 0;
+            mapVersion = in.getInt();
+            int checksum = in.getInt();
+            if (kind == FULL) {
+                int count = in.getShort();
+                resize(count, pellets.length);
+                for (int i = 0; i < count * 3; i += 3) {
+                    actors[i] = in.getInt();
+                    actors[i + 1] = in.getInt();
+                    actors[i + 2] = in.getChar();
+                }
+                resize(count, in.getInt());
+                for (int w = 0; w < pellets.length; w++) {
+                    pellets[w] = in.getLong();
+                }
+                for (int w = 0; w < powerPellets.length; w++) {
+                    powerPellets[w] = in.getLong();
+                }
+                return checksum;
+            }
+
+            int changed = in.getShort();
+            for (int i = 0; i < changed; i++) {
+                int a = in.getShort() * 3;
+                actors[a] = in.getInt();
+                actors[a + 1] = in.getInt();
+                actors[a + 2] = in.getChar();
+            }
+            int eaten = (int) Replay.getVarint(in);
+            int tile = 0;
+            for (int i = 0; i < eaten; i++) {
+                tile += (int) Replay.getVarint(in);
+                pellets[tile >>> 6] &= ~(1L << tile);
+                powerPellets[tile >>> 6] &= ~(1L << tile);
+            }
+            return checksum;
+        }
+    }
+
+    // ===================== SESSIONS =====================
+    // One connected client and its game
+    final class Session {
+        final SocketChannel channel;
+        final GameEngine game;
+        final String player;      // Client's address, the name its results are recorded under
+        final Snapshot[] history = new Snapshot[HISTORY];  // Snapshot of tick t is history[t % HISTORY]
+        final ByteBuffer in = ByteBuffer.allocate(MESSAGE_SIZE * 64);
+        final ByteBuffer out;     // Frames not yet written to the socket (write mode)
+        int tick = 0;
+        int ackTick = -1;         // Newest snapshot the client confirmed; deltas start from it
+        int inputSeq = 0;
+        boolean restart = false;
+        byte queued;              // Kind of snapshot the last tick queued (FULL or DELTA), or 0 if skipped
+
+        Session(SocketChannel channel, long seed, String player) {
+            this.channel = channel;
+            this.game = new GameEngine(map, seed);
+            this.player = player;
+            for (int i = 0; i < HISTORY; i++) {
+                history[i] = new Snapshot();
+            }
+            history[0].capture(game, 0, 0);
+            this.out = ByteBuffer.allocateDirect(4 + history[0].maxSize());
+        }
+
+        // Apply the client's messages; runs on the loop thread between ticks, like key presses
+        void receive() {
+            in.flip();
+            while (in.remaining() >= MESSAGE_SIZE) {
+                byte tag = in.get();
+                byte argument = in.get();
+                int value = in.getInt();
+                if (tag == INPUT && (argument == 'U' || argument == 'D' || argument == 'L' || argument == 'R')) {
+                    game.input((char) argument);
+                    inputSeq = value;
+                }
+                else if (tag == ACK) {
+                    ackTick = Math.max(ackTick, value);
+                }
+                else if (tag == RESTART) {
+                    restart = true;
+                }
+            }
+            in.compact();
+        }
+
+        // Advance the game one tick and queue its snapshot; runs on a pool thread
+        void tick() {
+            if (restart) {
+                game.restart();
+                restart = false;
+            }
+            boolean wasOver = game.gameOver;
+            game.step(GameEngine.NO_INPUT);
+            if (scores != null && game.gameOver && !wasOver) {
+                scores.record(player, game);  // Sessions tick in parallel; the store locks around appends
+            }
+            tick++;
+            Snapshot now = history[tick & (HISTORY - 1)];
+            now.capture(game, tick, inputSeq);
+            if (out.position() > 0) {
+                queued = 0;
+                return;  // The client has not taken the last one yet; skip a tick rather than queue
+            }
+            Snapshot base = history[ackTick & (HISTORY - 1)];
+            if (ackTick < 0 || tick - ackTick >= HISTORY || base.tick != ackTick) {
+                base = null;  // Nothing acknowledged that is still kept: send everything
+            }
+            out.putInt(0);
+            now.write(base, out);
+            out.putInt(0, out.position() - 4);
+            queued = out.get(4);  // The kind write() chose (it may send FULL even with a base)
+        }
+
+        // Send as much of the queued frame as the socket takes; returns the bytes written
+        int flush() throws IOException {
+            out.flip();
+            int written = channel.write(out);
+            out.compact();
+            return written;
+        }
+    }
+
+    // Fork-join task ticking sessions [from, to)
+    final class TickRange extends RecursiveAction {
+        private static final long serialVersionUID = 1L;  // Fork-join tasks are Serializable; never serialized here
+        final int from;
+        final int to;
+
+        TickRange(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SESSIONS_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    sessions.get(i).tick();
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new TickRange(from, middle), new TickRange(middle, to));
+        }
+    }
+
+    // ===================== LOOP =====================
+    // Serve forever on the given port
+    void serve(int port) throws IOException {
+        Selector selector = Selector.open();
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port), 4096);  // Load tests connect thousands at once
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        System.out.printf("Serving on port %d, %d tick threads, %d ticks/s%n", port, pool.getParallelism(), TICK_RATE);
+
+        long period = 1_000_000_000L / TICK_RATE;
+        long nextTick = System.nanoTime() + period;
+        long nextReport = System.nanoTime() + REPORT_SECONDS * 1_000_000_000L;
+        while (true) {
+            long wait = (nextTick - System.nanoTime()) / 1_000_000;
+            if (wait > 0) {
+                selector.select(wait);
+            }
+            else {
+                selector.selectNow();
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    accept(server, selector);
+                    continue;
+                }
+                Session session = (Session) key.attachment();
+                try {
+                    if (key.isReadable()) {
+                        if (session.channel.read(session.in) < 0) {
+                            close(session, key);
+                            continue;
+                        }
+                        session.receive();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        bytesSent += session.flush();
+                        if (session.out.position() == 0) {
+                            key.interestOps(SelectionKey.OP_READ);
+                        }
+                    }
+                }
+                catch (IOException e) {
+                    close(session, key);  // Connection reset: drop the session
+                }
+            }
+
+            long now = System.nanoTime();
+            if (now >= nextTick) {
+                tickAll(selector);
+                nextTick += period;
+                if (now - nextTick > 5 * period) {  // Far behind: give up on catching up
+                    lateTicks++;
+                    nextTick = now + period;
+                }
+            }
+            if (now >= nextReport) {
+                report();
+                nextReport += REPORT_SECONDS * 1_000_000_000L;
+            }
+        }
+    }
+
+    private void accept(ServerSocketChannel server, Selector selector) throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);  // Snapshots are small and urgent
+            String player = ((InetSocketAddress) channel.getRemoteAddress()).getHostString();
+            Session session = new Session(channel, BatchRunner.gameSeed(seed, sessionsOpened++), player);
+            channel.register(selector, SelectionKey.OP_READ, session);
+            sessions.add(session);
+        }
+    }
+
+    private void close(Session session, SelectionKey key) {
+        key.cancel();
+        try {
+            session.channel.close();
+        }
+        catch (IOException ignored) {
+            // Already gone
+        }
+        sessions.remove(session);
+    }
+
+    // Tick every session on the pool, then write out the snapshots
+    private void tickAll(Selector selector) {
+        long start = System.nanoTime();
+        pool.invoke(new TickRange(0, sessions.size()));
+        tickMicros.record((System.nanoTime() - start) / 1000);
+
+        for (int i = sessions.size() - 1; i >= 0; i--) {  // Backwards: close() removes from the list
+            Session session = sessions.get(i);
+            if (session.queued == 0) {
+                skippedSnapshots++;
+                continue;  // Still waiting for the socket to drain (OP_WRITE is already set)
+            }
+            snapshotsSent++;
+            fullSnapshots += session.queued == Snapshot.FULL ? 1 : 0;
+            SelectionKey key = session.channel.keyFor(selector);
+            try {
+                bytesSent += session.flush();
+                if (session.out.position() > 0) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);  // Finish when it drains
+                }
+            }
+            catch (IOException e) {
+                close(session, key);
+            }
+        }
+    }
+
+    private void report() {
+        double seconds = REPORT_SECONDS;
+        System.out.printf("sessions %d | tick us p50 %d p99 %d max %d"
+                        + " | snapshots/s %.0f (%.1f%% full, %d skipped)"
+                        + " | %.1f KB/s, %.0f B/snapshot | late %d%n",
+                sessions.size(), tickMicros.percentile(50), tickMicros.percentile(99), tickMicros.max(),
+                snapshotsSent / seconds, snapshotsSent == 0 ? 0.0 : 100.0 * fullSnapshots / snapshotsSent,
+                skippedSnapshots, bytesSent / seconds / 1024,
+                snapshotsSent == 0 ? 0.0 : (double) bytesSent / snapshotsSent, lateTicks);
+        tickMicros.reset();
+        snapshotsSent = bytesSent = fullSnapshots = skippedSnapshots = lateTicks = 0;
+    }
+
+    // ===================== ENTRY POINT =====================
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42L;
+        GameServer server = new GameServer(TileMap.fromProperty(), seed, threads);
+        server.scores = ScoreStore.fromProperty();
+        server.serve(port);
+    }
+}
@@ -0,0 +1,175 @@
+// Compact copy of a game's state in flat primitive arrays, for search AIs that branch millions of times
+// Holds the same things saveState() writes: the random generator, counters and flags, every
+// actor and the pellet bitsets. Actors are structs of arrays: index 0 is pacman and index
+// i + 1 is ghosts.get(i). copyInto() is a handful of array copies, and capture()/restore()
+// move a game's state in and out of a GameEngine on the same map. None of them allocate
+// once the arrays are big enough for the actor count (always, for states made from the same game).
+public class GameState {
+    // ===================== SCALARS =====================
+    long randomState;
+    int score;
+    int lives;
+    int pelletsEaten;
+    int pelletsRemaining;
+    int mapVersion;
+    int ghostModeTick;
+    int level;
+    int ticksPlayed;
+    boolean gameOver;
+    boolean scatter;
+    boolean wanderingGhosts;
+    boolean solidGhosts;
+    char pacmanFacing;
+
+    // ===================== ACTORS =====================
+    int actorCount;          // Pacman plus ghosts
+    int[] x;
+    int[] y;
+    int[] velocityX;
+    int[] velocityY;
+    char[] direction;
+    int[] startX;            // Ghosts added with addGhost() have their own starts, so these are kept too
+    int[] startY;
+    char[] type;
+
+    // ===================== PELLETS =====================
+    final long[] pellets;
+    final long[] powerPellets;
+
+    // Empty state with room for a game's current actors
+    GameState(GameEngine game) {
+        allocateActors(game.ghosts.size() + 1);
+        pellets = new long[game.pellets.length];
+        powerPellets = new long[game.powerPellets.length];
+    }
+
+    private void allocateActors(int capacity) {
+        x = new int[capacity];
+        y = new int[capacity];
+        velocityX = new int[capacity];
+        velocityY = new int[capacity];
+        direction = new char[capacity];
+        startX = new int[capacity];
+        startY = new int[capacity];
+        type = new char[capacity];
+    }
+
+    // ===================== COPYING =====================
+    // Copy this state into another made for the same map
+    void copyInto(GameState other) {
+        other.randomState = randomState;
+        other.score = score;
+        other.lives = lives;
+        other.pelletsEaten = pelletsEaten;
+        other.pelletsRemaining = pelletsRemaining;
+        other.mapVersion = mapVersion;
+        other.ghostModeTick = ghostModeTick;
+        other.level = level;
+        other.ticksPlayed = ticksPlayed;
+        other.gameOver = gameOver;
+        other.scatter = scatter;
+        other.wanderingGhosts = wanderingGhosts;
+        other.solidGhosts = solidGhosts;
+        other.pacmanFacing = pacmanFacing;
+
+        int n = actorCount;
+        if (other.x.length < n) {
+            other.allocateActors(n);
+        }
+        other.actorCount = n;
+        System.arraycopy(x, 0, other.x, 0, n);
+        System.arraycopy(y, 0, other.y, 0, n);
+        System.arraycopy(velocityX, 0, other.velocityX, 0, n);
+        System.arraycopy(velocityY, 0, other.velocityY, 0, n);
+        System.arraycopy(direction, 0, other.direction, 0, n);
+        System.arraycopy(startX, 0, other.startX, 0, n);
+        System.arraycopy(startY, 0, other.startY, 0, n);
+        System.arraycopy(type, 0, other.type, 0, n);
+        System.arraycopy(pellets, 0, other.pellets, 0, pellets.length);
+        System.arraycopy(powerPellets, 0, other.powerPellets, 0, powerPellets.length);
+    }
+
+    // Record a game's state
+    void capture(GameEngine game) {
+        randomState = game.random.state();
+        score = game.score;
+        lives = game.lives;
+        pelletsEaten = game.pelletsEaten;
+        pelletsRemaining = game.pelletsRemaining;
+        mapVersion = game.mapVersion;
+        ghostModeTick = game.ghostModeTick;
+        level = game.level;
+        ticksPlayed = game.ticksPlayed;
+        gameOver = game.gameOver;
+        scatter = game.scatter;
+        wanderingGhosts = game.wanderingGhosts;
+        solidGhosts = game.solidGhosts;
+        pacmanFacing = game.pacmanFacing;
+
+        int n = game.ghosts.size() + 1;
+        if (x.length < n) {
+            allocateActors(n);
+        }
+        actorCount = n;
+        put(0, game.pacman);
+        for (int i = 1; i < n; i++) {
+            put(i, game.ghosts.get(i - 1));
+        }
+        System.arraycopy(game.pellets, 0, pellets, 0, pellets.length);
+        System.arraycopy(game.powerPellets, 0, powerPellets, 0, powerPellets.length);
+    }
+
+    private void put(int i, GameEngine.Block b) {
+        x[i] = b.x;
+        y[i] = b.y;
+        velocityX[i] = b.velocityX;
+        velocityY[i] = b.velocityY;
+        direction[i] = b.direction;
+        startX[i] = b.startX;
+        startY[i] = b.startY;
+        type[i] = b.type;
+    }
+
+    // Put a game (on the same map) back into this state; it then plays on exactly as the
+    // captured game would have (allocates only if the game has fewer ghosts than the state)
+    void restore(GameEngine game) {
+        game.random.setState(randomState);
+        game.score = score;
+        game.lives = lives;
+        game.pelletsEaten = pelletsEaten;
+        game.pelletsRemaining = pelletsRemaining;
+        game.mapVersion = mapVersion;
+        game.ghostModeTick = ghostModeTick;
+        game.level = level;
+        game.ticksPlayed = ticksPlayed;
+        game.gameOver = gameOver;
+        game.scatter = scatter;
+        game.wanderingGhosts = wanderingGhosts;
+        game.solidGhosts = solidGhosts;
+        game.pacmanFacing = pacmanFacing;
+
+        while (game.ghosts.size() > actorCount - 1) {
+            game.ghosts.remove(game.ghosts.size() - 1);
+        }
+        while (game.ghosts.size() < actorCount - 1) {
+            game.ghosts.add(game.new Block(type[game.ghosts.size() + 1], 0, 0, game.tileSize, game.tileSize));
+        }
+        take(0, game.pacman);
+        for (int i = 1; i < actorCount; i++) {
+            take(i, game.ghosts.get(i - 1));
+        }
+        System.arraycopy(pellets, 0, game.pellets, 0, pellets.length);
+        System.arraycopy(powerPellets, 0, game.powerPellets, 0, powerPellets.length);
+    }
+
+    private void take(int i, GameEngine.Block b) {
+        b.x = x[i];
+        b.y = y[i];
+        b.velocityX = velocityX[i];
+        b.velocityY = velocityY[i];
+        b.direction = direction[i];
+        b.startX = startX[i];
+        b.startY = startY[i];
+        b.type = type[i];
+    }
+}
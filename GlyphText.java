@@ -0,0 +1,108 @@
+// Import AWT font classes for pre-laid-out text
+import java.awt.Font;                         // Font the text is laid out in
+import java.awt.Graphics2D;                   // Drawing surface
+import java.awt.font.FontRenderContext;       // Layouts are only valid for one render context
+import java.awt.font.GlyphVector;             // Text already turned into positioned glyphs
+
+
+// Pre-laid-out text in one font, so drawing it allocates nothing
+// Fixed strings and the digits 0-9 are laid out once as GlyphVectors to measure them; centring
+// then needs no FontMetrics call per frame. Lines that contain numbers (the score) are built in
+// a reusable char buffer instead of by string concatenation.
+// Text is drawn with drawChars(): on HotSpot that path allocates nothing, while
+// drawGlyphVector() allocates on every call (measured with AllocationCounter).
+// Layouts are rebuilt only when the Graphics' FontRenderContext changes (e.g. a new screen).
+public class GlyphText {
+    final Font font;
+    private final char[][] strings;              // Fixed strings, referred to by index
+    private final float[] widths;                // Advance width of each fixed string
+    private final float[] digitWidths = new float[10];  // Advance width of '0'..'9'
+    private final char[] line = new char[96];    // Reusable buffer for a line with numbers in it
+    private int lineLength = 0;
+    private float lineWidth = 0;
+    private FontRenderContext context;           // Context the widths were measured for
+
+    GlyphText(Font font, String... strings) {
+        this.font = font;
+        this.strings = new char[strings.length][];
+        for (int i = 0; i < strings.length; i++) {
+            this.strings[i] = strings[i].toCharArray();
+        }
+        this.widths = new float[strings.length];
+    }
+
+    // Make sure the layouts match the context g draws with, and select the font
+    void prepare(Graphics2D g) {
+        FontRenderContext current = g.getFontRenderContext();
+        if (!current.equals(context)) {
+            for (int i = 0; i < strings.length; i++) {
+                widths[i] = advance(current, strings[i]);
+            }
+            for (int d = 0; d < 10; d++) {
+                digitWidths[d] = advance(current, new char[] {(char) ('0' + d)});
+            }
+            context = current;
+        }
+        g.setFont(font);
+    }
+
+    // Width of laid-out text in the given context
+    private float advance(FontRenderContext context, char[] text) {
+        GlyphVector layout = font.createGlyphVector(context, text);
+        return (float) layout.getLogicalBounds().getWidth();
+    }
+
+    // ===================== FIXED STRINGS =====================
+    // Width in pixels of fixed string i
+    int width(int i) {
+        return Math.round(widths[i]);
+    }
+
+    // Draw fixed string i with its baseline at (x, y)
+    void draw(Graphics2D g, int i, int x, int y) {
+        g.drawChars(strings[i], 0, strings[i].length, x, y);
+    }
+
+    // ===================== LINES WITH NUMBERS =====================
+    // Start a new line in the buffer
+    GlyphText clear() {
+        lineLength = 0;
+        lineWidth = 0;
+        return this;
+    }
+
+    // Append fixed string i to the line
+    GlyphText append(int i) {
+        System.arraycopy(strings[i], 0, line, lineLength, strings[i].length);
+        lineLength += strings[i].length;
+        lineWidth += widths[i];
+        return this;
+    }
+
+    // Append a non-negative number to the line, without creating a String
+    GlyphText appendNumber(int value) {
+        int start = lineLength;
+        do {  // Digits come out least significant first...
+            int digit = value % 10;
+            line[lineLength++] = (char) ('0' + digit);
+            lineWidth += digitWidths[digit];
+            value /= 10;
+        } while (value > 0);
+        for (int i = start, j = lineLength - 1; i < j; i++, j--) {  // ...so reverse them in place
+            char swap = line[i];
+            line[i] = line[j];
+            line[j] = swap;
+        }
+        return this;
+    }
+
+    // Width in pixels of the line built so far
+    int lineWidth() {
+        return Math.round(lineWidth);
+    }
+
+    // Draw the line with its baseline at (x, y)
+    void drawLine(Graphics2D g, int x, int y) {
+        g.drawChars(line, 0, lineLength, x, y);
+    }
+}
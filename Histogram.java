@@ -0,0 +1,118 @@
+import java.util.Arrays;         // Bulk fill for reset()
+
+// Streaming histogram for non-negative long values with fixed memory
+// Values are counted in log-linear buckets (HdrHistogram style): exact below 64,
+// then 32 buckets per power of two, so any recorded value is known to within ~3%.
+// Recording never allocates, and two histograms merge by adding their counts, so the
+// merged result does not depend on how the values were split between threads.
+public class Histogram {
+    // ===================== BUCKET LAYOUT =====================
+    private static final int SUB_BUCKET_BITS = 5;                    // 2^5 = 32 buckets per power of two
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS; // 32
+    private static final int BUCKET_COUNT = (63 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+
+    private final long[] counts = new long[BUCKET_COUNT];  // Number of values seen in each bucket
+    private long totalCount = 0;                           // Number of values recorded
+    private long sum = 0;                                  // Sum of all values (for the mean)
+    private long min = Long.MAX_VALUE;                     // Smallest value recorded
+    private long max = 0;                                  // Largest value recorded
+
+    // ===================== RECORDING =====================
+    // Record one value (negative values are clamped to 0)
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[bucketIndex(value)]++;
+        totalCount++;
+        sum += value;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    // Add every count from another histogram into this one
+    public void add(Histogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    // Forget everything recorded so far (keeps the bucket array)
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    // ===================== QUERIES =====================
+    public long count() {
+        return totalCount;
+    }
+
+    public long min() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public double mean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    // Value at the given percentile (0-100), reported as the lower edge of its bucket
+    public long percentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100.0 * totalCount);  // How many values lie at or below the answer
+        if (rank < 1) {
+            rank = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(Math.max(bucketLowerBound(i), min()), max);  // Never report outside the observed range
+            }
+        }
+        return max;
+    }
+
+    // One-line summary: count, mean and the usual percentiles
+    public String summary() {
+        return String.format("n=%d mean=%.1f min=%d p50=%d p90=%d p99=%d max=%d",
+                count(), mean(), min(), percentile(50), percentile(90), percentile(99), max());
+    }
+
+    // ===================== BUCKET MATH =====================
+    // Values below 64 get their own bucket; above that the top 6 significant bits pick the bucket
+    static int bucketIndex(long value) {
+        if (value < 2 * SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;  // Bits dropped below the top 6
+        return shift * SUB_BUCKET_COUNT + (int) (value >>> shift);
+    }
+
+    // Smallest value that lands in the given bucket
+    static long bucketLowerBound(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long top = index - (long) shift * SUB_BUCKET_COUNT;
+        return top << shift;
+    }
+}
@@ -0,0 +1,192 @@
+// Import networking utilities for the load generator
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;               // One thread drives every simulated client
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.SplittableRandom;               // Seeded: the same arguments send the same inputs
+
+
+// Load generator for GameServer: many simulated players on one thread
+// Every client decodes each snapshot against the one it names as its base, checks the decoded
+// state against the server's checksum, acknowledges it, and now and then presses a random
+// direction (about one tick in INPUT_EVERY). Input latency is the time from sending a key to
+// the first snapshot showing the server had applied it, so it includes waiting for the next tick
+// (up to 50 ms at 20 ticks/s).
+//
+// Sessions can be a comma-separated ramp: each step connects more clients, then measures for the
+// given seconds. The sessions per core a server can hold is the last step whose p99 latency
+// stays under a tick or two.
+//
+// Usage: java LoadGenerator [sessions[,sessions...]] [seconds] [host] [port]
+public class LoadGenerator {
+    static final int RING = 64;          // Snapshots kept per client; more than GameServer.HISTORY
+    static final int INPUT_EVERY = 8;    // Ticks between inputs, on average
+    static final char[] DIRECTIONS = {'U', 'D', 'L', 'R'};
+
+    final SplittableRandom random = new SplittableRandom(42L);
+    final ArrayList<Client> clients = new ArrayList<>();
+
+    // Results of the current step
+    final Histogram latencyMicros = new Histogram();
+    long snapshots, fullSnapshots, bytes, mismatches, missingBases;
+
+    // ===================== CLIENTS =====================
+    // One simulated player
+    final class Client {
+        final SocketChannel channel;
+        final GameServer.Snapshot[] ring = new GameServer.Snapshot[RING];  // Snapshot of tick t is ring[t % RING]
+        ByteBuffer in = ByteBuffer.allocate(4096);                          // Grows for big full snapshots
+        final ByteBuffer out = ByteBuffer.allocate(GameServer.MESSAGE_SIZE * 32);
+        final long[] sentAt = new long[RING];  // System.nanoTime() each outstanding input was sent
+        int inputSeq = 0;                      // Last input sent
+        int appliedSeq = 0;                    // Last input a snapshot has shown as applied
+        boolean restartSent = false;
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+            for (int i = 0; i < RING; i++) {
+                ring[i] = new GameServer.Snapshot();
+            }
+        }
+
+        // Read what the socket has, handle every complete snapshot, and answer them
+        void receive() throws IOException {
+            if (channel.read(in) < 0) {
+                throw new IOException("Server closed the connection");
+            }
+            in.flip();
+            while (in.remaining() >= 4 && in.remaining() >= 4 + in.getInt(in.position())) {
+                int start = in.position();
+                int end = start + 4 + in.getInt();
+                bytes += end - start;
+                snapshot();
+                in.position(end);
+            }
+            if (in.remaining() >= 4 && 4 + in.getInt(in.position()) > in.capacity()) {
+                in = ByteBuffer.allocate(2 * (4 + in.getInt(in.position()))).put(in);  // Frame bigger than the buffer
+            }
+            else {
+                in.compact();
+            }
+            out.flip();
+            channel.write(out);
+            out.compact();  // Anything left goes with the next answer
+        }
+
+        private void snapshot() {
+            long now = System.nanoTime();
+            int baseTick = GameServer.Snapshot.baseTick(in);
+            GameServer.Snapshot base = null;
+            if (baseTick >= 0) {
+                base = ring[baseTick & (RING - 1)];
+                if (base.tick != baseTick) {
+                    missingBases++;  // Should never happen: the server only uses acknowledged bases
+                    return;
+                }
+            }
+            int tick = in.getInt(in.position() + 1);
+            GameServer.Snapshot snapshot = ring[tick & (RING - 1)];
+            int checksum = snapshot.read(in, base);
+            snapshots++;
+            fullSnapshots += base == null ? 1 : 0;
+            if (checksum != snapshot.checksum()) {
+                mismatches++;
+            }
+
+            while (appliedSeq < snapshot.inputSeq) {  // Inputs this snapshot shows for the first time
+                appliedSeq++;
+                latencyMicros.record((now - sentAt[appliedSeq & (RING - 1)]) / 1000);
+            }
+
+            if (out.remaining() < 3 * GameServer.MESSAGE_SIZE) {
+                return;  // Socket backed up: skip answering, the server keeps the older base
+            }
+            out.put(GameServer.ACK).put((byte) 0).putInt(tick);
+            if (snapshot.gameOver && !restartSent) {
+                out.put(GameServer.RESTART).put((byte) 0).putInt(0);
+                restartSent = true;
+            }
+            else if (!snapshot.gameOver) {
+                restartSent = false;
+            }
+            if (random.nextInt(INPUT_EVERY) == 0 && inputSeq - appliedSeq < RING) {
+                inputSeq++;
+                sentAt[inputSeq & (RING - 1)] = System.nanoTime();
+                out.put(GameServer.INPUT).put((byte) DIRECTIONS[random.nextInt(4)]).putInt(inputSeq);
+            }
+        }
+    }
+
+    // ===================== RUNNING =====================
+    // Connect clients until there are the given number
+    void connect(InetSocketAddress server, int count, Selector selector) throws IOException {
+        while (clients.size() < count) {
+            SocketChannel channel = SocketChannel.open(server);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.configureBlocking(false);
+            Client client = new Client(channel);
+            channel.register(selector, SelectionKey.OP_READ, client);
+            clients.add(client);
+        }
+    }
+
+    // Drive every client for the given time
+    void run(Selector selector, long nanos) throws IOException {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            selector.select(10);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                ((Client) key.attachment()).receive();
+            }
+        }
+    }
+
+    void resetStatistics() {
+        latencyMicros.reset();
+        snapshots = fullSnapshots = bytes = mismatches = missingBases = 0;
+    }
+
+    // ===================== ENTRY POINT =====================
+    public static void main(String[] args) throws IOException {
+        String[] steps = (args.length > 0 ? args[0] : "100,500,1000,2000").split(",");
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        String host = args.length > 2 ? args[2] : "localhost";
+        int port = args.length > 3 ? Integer.parseInt(args[3]) : GameServer.DEFAULT_PORT;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        LoadGenerator generator = new LoadGenerator();
+        InetSocketAddress server = new InetSocketAddress(host, port);
+        Selector selector = Selector.open();
+        System.out.printf("%d cores; input latency is key sent -> first snapshot showing it (ms)%n", cores);
+        for (String step : steps) {
+            int sessions = Integer.parseInt(step.trim());
+            generator.connect(server, sessions, selector);
+            generator.run(selector, 2_000_000_000L);  // Settle: first full snapshots, JIT warm-up
+            generator.resetStatistics();
+            generator.run(selector, seconds * 1_000_000_000L);
+
+            Histogram latency = generator.latencyMicros;
+            System.out.printf("sessions %5d (%6.0f/core) | snapshots/s per session %.1f, %.0f B each, %.2f%% full"
+                            + " | latency p50 %.1f p99 %.1f p99.9 %.1f max %.1f | mismatches %d, missing bases %d%n",
+                    sessions, (double) sessions / cores,
+                    (double) generator.snapshots / sessions / seconds,
+                    generator.snapshots == 0 ? 0.0 : (double) generator.bytes / generator.snapshots,
+                    generator.snapshots == 0 ? 0.0 : 100.0 * generator.fullSnapshots / generator.snapshots,
+                    latency.percentile(50) / 1000.0, latency.percentile(99) / 1000.0,
+                    latency.percentile(99.9) / 1000.0, latency.max() / 1000.0,
+                    generator.mismatches, generator.missingBases);
+        }
+        selector.close();
+        for (Client client : generator.clients) {
+            client.channel.close();
+        }
+    }
+}
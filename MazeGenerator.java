@@ -0,0 +1,108 @@
+// Import file output and seeded random numbers for the maze generator
+import java.io.BufferedWriter;          // Rows are written out as they are made
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;                // Resetting the row buffers
+import java.util.SplittableRandom;      // Seeded: the same arguments always give the same maze
+
+
+// Generates large maze map files for TileMap.load(), one row at a time
+// Uses the sidewinder algorithm, which only ever looks at the current row: each row of cells is
+// carved into runs joined east-west, and every run gets one opening to the row below (the last
+// row is a single run). Memory is one row, whatever the maze size. Sidewinder makes a perfect
+// maze (exactly one path between two cells); knocking out an extra LOOP_CHANCE of the walls
+// adds the loops Pac-Man needs to escape ghosts.
+//
+// Cells sit on odd rows and columns, so the tile grid is walls with corridors one tile wide.
+// Every cell holds food, a few hold power food; pacman starts in the middle, and ghosts are
+// scattered over the rest of the maze.
+//
+// Usage: java MazeGenerator <rows> <columns> <file> [ghosts] [seed]
+public class MazeGenerator {
+    static final double LOOP_CHANCE = 0.15;    // Extra walls opened to make loops
+    static final int POWER_EVERY = 200;        // About one cell in this many holds power food
+    static final char[] GHOST_TYPES = {'r', 'p', 'b', 'o'};
+
+    public static void main(String[] args) throws IOException {
+        int rows = Integer.parseInt(args[0]);
+        int columns = Integer.parseInt(args[1]);
+        Path file = Path.of(args[2]);
+        int ghosts = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 42L;
+
+        long start = System.nanoTime();
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            generate(rows, columns, ghosts, new SplittableRandom(seed), out);
+        }
+        System.out.printf("%dx%d maze written to %s in %.2fs%n", rows, columns, file, (System.nanoTime() - start) / 1e9);
+    }
+
+    // Write a rows x columns maze (at least 5 x 5) with about the given number of ghosts
+    static void generate(int rows, int columns, int ghosts, SplittableRandom random, BufferedWriter out)
+            throws IOException {
+        int cellRows = (rows - 1) / 2;
+        int cellColumns = (columns - 1) / 2;
+        int startRow = cellRows / 2, startColumn = cellColumns / 2;  // Pacman's cell
+        double ghostChance = (double) ghosts / (cellRows * cellColumns);
+        char[] cellLine = new char[columns];  // A row of cells and the passages between them
+        char[] southLine = new char[columns]; // The walls below it, with the openings carved
+        int ghostIndex = 0;
+
+        writeWallRow(out, cellLine);
+        for (int i = 0; i < cellRows; i++) {
+            boolean lastRow = i == cellRows - 1;
+            Arrays.fill(cellLine, 'X');
+            Arrays.fill(southLine, 'X');
+            int runStart = 0;
+            for (int j = 0; j < cellColumns; j++) {
+                int c = 2 * j + 1;
+                boolean lastColumn = j == cellColumns - 1;
+
+                // What is in the cell
+                if (i == startRow && j == startColumn) {
+                    cellLine[c] = 'P';
+                }
+                else if (random.nextDouble() < ghostChance && (Math.abs(i - startRow) > 4 || Math.abs(j - startColumn) > 4)) {
+                    cellLine[c] = GHOST_TYPES[ghostIndex++ % GHOST_TYPES.length];
+                }
+                else {
+                    cellLine[c] = random.nextInt(POWER_EVERY) == 0 ? '*' : ' ';
+                }
+
+                // Sidewinder: extend the run east, or close it with one opening south
+                boolean east = !lastColumn && (lastRow || random.nextBoolean());
+                if (east) {
+                    cellLine[c + 1] = ' ';
+                }
+                else {
+                    if (!lastRow) {
+                        southLine[2 * (runStart + random.nextInt(j - runStart + 1)) + 1] = ' ';
+                    }
+                    runStart = j + 1;
+                    if (!lastColumn && random.nextDouble() < LOOP_CHANCE) {
+                        cellLine[c + 1] = ' ';  // Loop: open the wall that closed the run anyway
+                    }
+                }
+                if (!lastRow && southLine[c] == 'X' && random.nextDouble() < LOOP_CHANCE) {
+                    southLine[c] = ' ';  // Loop: a second way down
+                }
+            }
+            out.write(cellLine);
+            out.newLine();
+            if (!lastRow) {
+                out.write(southLine);
+                out.newLine();
+            }
+        }
+        for (int r = 2 * cellRows; r < rows; r++) {  // Bottom border (two rows if rows is even)
+            writeWallRow(out, cellLine);
+        }
+    }
+
+    private static void writeWallRow(BufferedWriter out, char[] line) throws IOException {
+        Arrays.fill(line, 'X');
+        out.write(line);
+        out.newLine();
+    }
+}
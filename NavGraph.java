@@ -0,0 +1,660 @@
+// Import only core Java libraries - navigation is part of the headless engine
+import java.util.Arrays;        // Bulk fill for distance tables
+import java.util.concurrent.ConcurrentHashMap; // Compiled graphs shared between games on the same map
+
+
+// Navigation graph compiled once from the map's walls, for ghost pathfinding
+// Every non-wall tile (including 'O' space) is walkable. A row or column that is open at both
+// board edges is a tunnel: its edge tiles are neighbours of each other. Tiles with three or more
+// exits, and dead ends, are junctions.
+//
+// Each tile is one byte (walkable, its exits, junction), kept in 32x32-tile chunks like TileMap.
+// Chunks with nothing walkable, and open chunks where every tile has all four exits, share one
+// array each, so the graph never costs more than the map itself.
+//
+// Shortest paths come from one of two tables, so choosing a direction is a lookup per exit:
+// - small maps get an all-pairs distance table between walkable tiles, built from a junction
+//   graph: junction nodes, and the corridors between them as edges with a length (see
+//   buildDistanceTable). The graph is only needed while building; queries use the table.
+// - maps with more than MAX_TABLE_TILES walkable tiles instead keep one BFS flow field toward a
+//   single target (pacman), rebuilt only when that target changes and shared by every ghost.
+//   The field only reaches FLOW_RADIUS steps, so rebuilding it, and the memory it needs, are
+//   the same on any map size.
+// A compiled graph never changes, so forMap() shares one between every game on the same map;
+// the flow field is per game (see FlowField).
+public class NavGraph {
+    // ===================== DIRECTIONS =====================
+    // Same order as GameEngine.directions: U, D, L, R. The reverse of direction d is d ^ 1.
+    static final int[] ROW_STEP = {-1, 1, 0, 0};
+    static final int[] COLUMN_STEP = {0, 0, -1, 1};
+    static final int NONE = -1;  // No neighbour / no direction
+    private static final int[] TIE_ORDER = {0, 2, 1, 3};  // U, L, D, R: order that wins ties
+
+    public static final int MAX_TABLE_TILES = 2048;   // All-pairs table limit (2048^2 shorts = 8 MB)
+    public static final int UNREACHABLE = Short.MAX_VALUE;
+    static final int MAX_CACHED_GRAPHS = 16;            // Distinct maps kept compiled at once
+
+    // ===================== TILES =====================
+    // Tile bits: 1 << d for every direction d with a walkable neighbour, then these
+    private static final int WALKABLE = 1 << 4;
+    private static final int JUNCTION = 1 << 5;
+    private static final int EDGE = 1 << 6;      // On the board's border: neighbours may wrap
+    private static final byte CROSSROADS = (byte) (WALKABLE | JUNCTION | 0xF);  // Open all round
+    private static final byte[] CLOSED_CHUNK = new byte[TileMap.CHUNK_SIZE * TileMap.CHUNK_SIZE];
+    private static final byte[] CROSSROADS_CHUNK = filledChunk(CROSSROADS);
+
+    final int rowCount;
+    final int columnCount;
+    final int tileCount;
+    private final int chunkColumns;
+    private final byte[][] chunks;  // chunks[chunkRow * chunkColumns + chunkColumn], as in TileMap
+    private byte[] tiles;           // The same bytes in one array on table maps (small ones), else null
+    private final int[] tileStep;   // Tile index change for a step in each direction (away from the edges)
+    final int openCount;            // Walkable tiles
+    int[] nearestOpen;              // For every tile, the closest walkable tile (table maps only, else null)
+
+    // ===================== SHORTEST PATHS =====================
+    int[] openIndex;             // Index of every walkable tile in the distance table, or NONE (null on large maps)
+    short[] distances;           // distances[openIndex[a] * openCount + openIndex[b]], or null on large maps
+
+    // ===================== SHARING =====================
+    // Compiled graphs, keyed by their wall layout
+    private static final ConcurrentHashMap<WallLayout, NavGraph> CACHE = new ConcurrentHashMap<>();
+
+    // Cache key: one bit per tile, set on walls, and the dimensions
+    private static final class WallLayout {
+        final long[] walls;
+        final int rowCount;
+        final int columnCount;
+
+        WallLayout(TileMap map) {
+            this.rowCount = map.rowCount;
+            this.columnCount = map.columnCount;
+            this.walls = new long[(map.tileCount() + 63) >>> 6];
+            for (int r = 0, tile = 0; r < rowCount; r++) {
+                for (int c = 0; c < columnCount; c++, tile++) {
+                    if (map.isWall(r, c)) {
+                        walls[tile >>> 6] |= 1L << tile;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof WallLayout && ((WallLayout) o).rowCount == rowCount
+                    && ((WallLayout) o).columnCount == columnCount && Arrays.equals(((WallLayout) o).walls, walls);
+        }
+
+        @Override
+        public int hashCode() {
+            return (Arrays.hashCode(walls) * 31 + rowCount) * 31 + columnCount;
+        }
+    }
+
+    // The compiled graph for a map's walls, reusing one already built for the same layout
+    static NavGraph forMap(TileMap map) {
+        WallLayout key = new WallLayout(map);
+        NavGraph graph = CACHE.get(key);
+        if (graph == null) {
+            graph = new NavGraph(map);
+            if (CACHE.size() < MAX_CACHED_GRAPHS) {
+                NavGraph existing = CACHE.putIfAbsent(key, graph);  // Another thread may have won the race
+                graph = existing != null ? existing : graph;
+            }
+        }
+        return graph;
+    }
+
+    // ===================== CONSTRUCTOR =====================
+    NavGraph(TileMap map) {
+        this.rowCount = map.rowCount;
+        this.columnCount = map.columnCount;
+        this.tileCount = rowCount * columnCount;
+        this.chunkColumns = map.chunkColumns;
+        this.tileStep = new int[] {-columnCount, columnCount, -1, 1};
+        int chunkRows = (rowCount + TileMap.CHUNK_MASK) >>> TileMap.CHUNK_SHIFT;
+        chunks = new byte[chunkRows * chunkColumns][];
+        openCount = buildChunks(map);
+
+        if (openCount <= MAX_TABLE_TILES) {
+            byte[] flat = new byte[tileCount];  // Tables are looked up every tick: skip the chunk step
+            for (int tile = 0; tile < tileCount; tile++) {
+                flat[tile] = (byte) bits(tile);
+            }
+            tiles = flat;
+            int[] queue = new int[tileCount];  // BFS queue shared by the build steps
+            nearestOpen = new int[tileCount];
+            buildNearestOpen(queue);
+            buildDistanceTable(queue);
+        }
+    }
+
+    // Work out every tile's byte, chunk by chunk; uniform chunks become the shared arrays
+    // Returns the number of walkable tiles
+    private int buildChunks(TileMap map) {
+        int walkable = 0;
+        byte[] chunk = new byte[TileMap.CHUNK_SIZE * TileMap.CHUNK_SIZE];
+        for (int index = 0; index < chunks.length; index++) {
+            int top = (index / chunkColumns) << TileMap.CHUNK_SHIFT;
+            int left = (index % chunkColumns) << TileMap.CHUNK_SHIFT;
+            boolean closed = true, crossroads = true;
+            for (int i = 0; i < chunk.length; i++) {
+                int r = top + (i >>> TileMap.CHUNK_SHIFT);
+                int c = left + (i & TileMap.CHUNK_MASK);
+                chunk[i] = r < rowCount && c < columnCount ? tileBits(map, r, c) : 0;
+                closed &= chunk[i] == 0;
+                crossroads &= chunk[i] == CROSSROADS;
+                walkable += chunk[i] != 0 ? 1 : 0;
+            }
+            if (closed) {
+                chunks[index] = CLOSED_CHUNK;
+            }
+            else if (crossroads) {
+                chunks[index] = CROSSROADS_CHUNK;
+            }
+            else {
+                chunks[index] = chunk;
+                chunk = new byte[chunk.length];
+            }
+        }
+        return walkable;
+    }
+
+    // Walkable, exits (through tunnels only if the far edge is open too) and junction for one tile
+    private byte tileBits(TileMap map, int r, int c) {
+        if (map.isWall(r, c)) {
+            return 0;
+        }
+        int bits = r == 0 || c == 0 || r == rowCount - 1 || c == columnCount - 1 ? WALKABLE | EDGE : WALKABLE;
+        int exits = 0;
+        for (int d = 0; d < 4; d++) {
+            int next = step(r * columnCount + c, d);
+            if (!map.isWall(next / columnCount, next % columnCount)) {
+                bits |= 1 << d;
+                exits++;
+            }
+        }
+        return (byte) (exits >= 3 || exits == 1 ? bits | JUNCTION : bits);
+    }
+
+    private static byte[] filledChunk(byte bits) {
+        byte[] chunk = new byte[TileMap.CHUNK_SIZE * TileMap.CHUNK_SIZE];
+        Arrays.fill(chunk, bits);
+        return chunk;
+    }
+
+    // The tile one step in direction d, wrapping around the board edges (walls included)
+    private int step(int tile, int d) {
+        int r = tile / columnCount + ROW_STEP[d];
+        int c = tile % columnCount + COLUMN_STEP[d];
+        if (c < 0 || c >= columnCount) {
+            c = Math.floorMod(c, columnCount);  // Off a side edge: tileBits() only opens it if the far edge is open
+        }
+        if (r < 0 || r >= rowCount) {
+            r = Math.floorMod(r, rowCount);
+        }
+        return r * columnCount + c;
+    }
+
+    private int bits(int tile) {
+        if (tiles != null) {
+            return tiles[tile];
+        }
+        int r = tile / columnCount;
+        return bits(r, tile - r * columnCount);
+    }
+
+    private int bits(int r, int c) {
+        return chunks[(r >>> TileMap.CHUNK_SHIFT) * chunkColumns + (c >>> TileMap.CHUNK_SHIFT)]
+                [((r & TileMap.CHUNK_MASK) << TileMap.CHUNK_SHIFT) | (c & TileMap.CHUNK_MASK)];
+    }
+
+    // ===================== BUILDING =====================
+    // Multi-source BFS from every walkable tile over the full grid (walls included)
+    private void buildNearestOpen(int[] queue) {
+        Arrays.fill(nearestOpen, NONE);
+        int head = 0, tail = 0;
+        for (int tile = 0; tile < tileCount; tile++) {
+            if (isWalkable(tile)) {
+                nearestOpen[tile] = tile;
+                queue[tail++] = tile;
+            }
+        }
+        while (head < tail) {
+            int tile = queue[head++];
+            int r = tile / columnCount, c = tile % columnCount;
+            for (int d = 0; d < 4; d++) {
+                int nr = r + ROW_STEP[d], nc = c + COLUMN_STEP[d];
+                if (nr < 0 || nr >= rowCount || nc < 0 || nc >= columnCount) {
+                    continue;
+                }
+                int next = nr * columnCount + nc;
+                if (nearestOpen[next] == NONE) {
+                    nearestOpen[next] = nearestOpen[tile];
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    // The all-pairs table, from the junction graph. Dijkstra from every node gives the distances
+    // between junctions. A corridor tile is k steps from one end of its corridor and length - k
+    // from the other, so the distance between two tiles is the shortest of the four ways between
+    // the ends of their corridors, or the way along the corridor when they share one. A junction
+    // is both ends of a corridor of length 0. Parts of the map with no junction at all (a loop
+    // with no side turnings) are left to a BFS per tile.
+    private void buildDistanceTable(int[] queue) {
+        openIndex = new int[tileCount];
+        for (int tile = 0, index = 0; tile < tileCount; tile++) {
+            openIndex[tile] = isWalkable(tile) ? index++ : NONE;
+        }
+        distances = new short[openCount * openCount];
+        Arrays.fill(distances, (short) UNREACHABLE);
+
+        // Junction nodes
+        int[] tileNodes = new int[tileCount];
+        Arrays.fill(tileNodes, NONE);
+        int nodes = 0;
+        for (int tile = 0; tile < tileCount; tile++) {
+            if (isJunction(tile)) {
+                tileNodes[tile] = nodes++;
+            }
+        }
+        int[] nodeTiles = new int[nodes];
+        for (int tile = 0; tile < tileCount; tile++) {
+            if (isJunction(tile)) {
+                nodeTiles[tileNodes[tile]] = tile;
+            }
+        }
+
+        // Corridor edges, in compressed adjacency: the edges of node n are edgeStart[n] .. edgeStart[n + 1] - 1
+        // Every tile is placed between two nodes: endA[tile] is toA[tile] steps away, endB[tile] toB[tile]
+        int[] edgeStart = new int[nodes + 1];
+        int[] edgeTarget = new int[nodes * 4];
+        int[] edgeLength = new int[nodes * 4];
+        int[] tileEdge = new int[tileCount];     // The corridor a tile is on, or NONE
+        int[] endA = new int[tileCount];
+        int[] endB = new int[tileCount];
+        int[] toA = new int[tileCount];
+        int[] toB = new int[tileCount];
+        Arrays.fill(tileEdge, NONE);
+        Arrays.fill(endA, NONE);
+        int edges = 0;
+        for (int node = 0; node < nodes; node++) {
+            edgeStart[node] = edges;
+            endA[nodeTiles[node]] = endB[nodeTiles[node]] = node;
+            for (int d = 0; d < 4; d++) {
+                int tile = neighbour(nodeTiles[node], d);
+                int heading = d;
+                int steps = 1;
+                // Follow the corridor: each corridor tile has exactly one exit besides the way back
+                while (tile != NONE && !isJunction(tile) && steps <= tileCount) {
+                    queue[steps - 1] = tile;
+                    int turn = NONE;
+                    for (int e = 0; e < 4 && turn == NONE; e++) {
+                        if (e != (heading ^ 1) && isOpen(tile, e)) {
+                            turn = e;
+                        }
+                    }
+                    heading = turn;
+                    tile = turn == NONE ? NONE : neighbour(tile, turn);
+                    steps++;
+                }
+                if (tile == NONE || !isJunction(tile)) {
+                    continue;
+                }
+                edgeTarget[edges] = tileNodes[tile];
+                edgeLength[edges] = steps;
+                for (int k = 1; k < steps; k++) {  // Its tiles, unless the walk from the other end placed them
+                    int corridor = queue[k - 1];
+                    if (tileEdge[corridor] == NONE) {
+                        tileEdge[corridor] = edges;
+                        endA[corridor] = node;
+                        endB[corridor] = tileNodes[tile];
+                        toA[corridor] = k;
+                        toB[corridor] = steps - k;
+                    }
+                }
+                edges++;
+            }
+        }
+        edgeStart[nodes] = edges;
+
+        // Node to node, by Dijkstra over the edges
+        short[] nodeDistances = new short[nodes * nodes];
+        int[] distance = new int[Math.max(nodes, tileCount)];
+        long[] heap = new long[edges + 1];  // (distance << 32) | node; stale entries are skipped
+        for (int source = 0; source < nodes; source++) {
+            Arrays.fill(distance, 0, nodes, UNREACHABLE);
+            distance[source] = 0;
+            int size = push(heap, 0, source);
+            while (size > 0) {
+                long top = heap[0];
+                size = pop(heap, size);
+                int node = (int) top;
+                if ((int) (top >>> 32) != distance[node]) {
+                    continue;
+                }
+                for (int e = edgeStart[node]; e < edgeStart[node + 1]; e++) {
+                    int next = edgeTarget[e];
+                    int through = distance[node] + edgeLength[e];
+                    if (through < distance[next]) {
+                        distance[next] = through;
+                        size = push(heap, size, (long) through << 32 | next);
+                    }
+                }
+            }
+            for (int node = 0; node < nodes; node++) {
+                nodeDistances[source * nodes + node] = (short) distance[node];
+            }
+        }
+
+        // Tile to tile, through the ends of their corridors
+        for (int from = 0; from < tileCount; from++) {
+            if (endA[from] == NONE) {
+                continue;
+            }
+            int row = openIndex[from] * openCount;
+            int fromA = endA[from] * nodes, fromB = endB[from] * nodes;
+            for (int to = 0; to < tileCount; to++) {
+                if (endA[to] == NONE) {
+                    continue;
+                }
+                int best = Math.min(
+                        Math.min(toA[from] + nodeDistances[fromA + endA[to]] + toA[to],
+                                toA[from] + nodeDistances[fromA + endB[to]] + toB[to]),
+                        Math.min(toB[from] + nodeDistances[fromB + endA[to]] + toA[to],
+                                toB[from] + nodeDistances[fromB + endB[to]] + toB[to]));
+                if (tileEdge[from] != NONE && tileEdge[from] == tileEdge[to]) {
+                    best = Math.min(best, Math.abs(toA[from] - toA[to]));
+                }
+                distances[row + openIndex[to]] = (short) Math.min(best, UNREACHABLE);
+            }
+        }
+
+        // Tiles off the graph only reach each other
+        for (int source = 0; source < tileCount; source++) {
+            if (!isWalkable(source) || endA[source] != NONE) {
+                continue;
+            }
+            bfs(source, distance, queue);
+            int row = openIndex[source] * openCount;
+            for (int tile = 0; tile < tileCount; tile++) {
+                if (distance[tile] != UNREACHABLE) {
+                    distances[row + openIndex[tile]] = (short) distance[tile];
+                }
+            }
+        }
+    }
+
+    // Binary min-heap of longs for Dijkstra; both return the new size
+    private static int push(long[] heap, int size, long value) {
+        int i = size;
+        while (i > 0 && heap[(i - 1) >>> 1] > value) {
+            heap[i] = heap[(i - 1) >>> 1];
+            i = (i - 1) >>> 1;
+        }
+        heap[i] = value;
+        return size + 1;
+    }
+
+    private static int pop(long[] heap, int size) {
+        long last = heap[--size];
+        int i = 0;
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= last) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return size;
+    }
+
+    // Breadth-first search over walkable tiles, writing each tile's step count from source
+    void bfs(int source, int[] distance, int[] queue) {
+        Arrays.fill(distance, UNREACHABLE);
+        distance[source] = 0;
+        int head = 0, tail = 0;
+        queue[tail++] = source;
+        while (head < tail) {
+            int tile = queue[head++];
+            for (int d = 0; d < 4; d++) {
+                int next = neighbour(tile, d);
+                if (next != NONE && distance[next] == UNREACHABLE) {
+                    distance[next] = distance[tile] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    // ===================== QUERIES =====================
+    public boolean hasDistanceTable() {
+        return distances != null;
+    }
+
+    public boolean isWalkable(int tile) {
+        return (bits(tile) & WALKABLE) != 0;
+    }
+
+    // Tiles where a ghost has a real choice (3+ exits) or must turn back (dead end)
+    public boolean isJunction(int tile) {
+        return (bits(tile) & JUNCTION) != 0;
+    }
+
+    public boolean isOpen(int tile, int direction) {
+        return (bits(tile) & (1 << direction)) != 0;
+    }
+
+    // The tile one step in direction d, wrapping through tunnels, or NONE if it is a wall or off the board
+    public int neighbour(int tile, int direction) {
+        int bits = bits(tile);
+        if ((bits & (1 << direction)) == 0) {
+            return NONE;
+        }
+        return (bits & EDGE) == 0 ? tile + tileStep[direction] : step(tile, direction);
+    }
+
+    // Shortest path length between two walkable tiles (table maps only), or UNREACHABLE
+    public int distance(int from, int to) {
+        return distances[openIndex[from] * openCount + openIndex[to]];
+    }
+
+    // Closest walkable tile to a (row, column) that may be a wall or off the board
+    public int targetTile(int row, int column) {
+        row = Math.max(0, Math.min(rowCount - 1, row));
+        column = Math.max(0, Math.min(columnCount - 1, column));
+        if (nearestOpen != null) {
+            return nearestOpen[row * columnCount + column];
+        }
+        return nearestWalkable(row, column);
+    }
+
+    // Large maps: search outward in rings of growing (Manhattan) distance for a walkable tile
+    // Pacman, the only target on these maps, is nearly always on one already
+    private int nearestWalkable(int row, int column) {
+        for (int radius = 0; radius < rowCount + columnCount; radius++) {
+            for (int dr = -radius; dr <= radius; dr++) {
+                int r = row + dr;
+                int dc = radius - Math.abs(dr);
+                if (r < 0 || r >= rowCount) {
+                    continue;
+                }
+                if (column - dc >= 0 && isWalkable(r * columnCount + column - dc)) {
+                    return r * columnCount + column - dc;
+                }
+                if (column + dc < columnCount && isWalkable(r * columnCount + column + dc)) {
+                    return r * columnCount + column + dc;
+                }
+            }
+        }
+        return NONE;
+    }
+
+    // Direction to take from tile toward target without reversing (unless it is a dead end)
+    // Ties go to U, L, D, R in that order, like the arcade game
+    public int bestDirection(int tile, int reverse, int target) {
+        int best = NONE;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int d : TIE_ORDER) {
+            int next = neighbour(tile, d);
+            if (next == NONE || d == reverse) {
+                continue;
+            }
+            int distance = distance(next, target);
+            if (distance < bestDistance) {
+                best = d;
+                bestDistance = distance;
+            }
+        }
+        return best != NONE ? best : reverse;
+    }
+
+    // The only direction out of a corridor tile other than reverse (or reverse at a dead end)
+    public int corridorDirection(int tile, int reverse) {
+        for (int d = 0; d < 4; d++) {
+            if (d != reverse && isOpen(tile, d)) {
+                return d;
+            }
+        }
+        return reverse;
+    }
+
+    // ===================== FLOW FIELD =====================
+    // One game's BFS distance field toward a single target, for maps too large for the table
+    // Only tiles within FLOW_RADIUS steps of the target are reached; the rest stay UNREACHABLE.
+    // Those tiles all lie in a square of 2 * FLOW_RADIUS + 1 tiles a side around the target
+    // (wrapping through tunnels), so distances are kept in a window that size, indexed by the
+    // offset from the target, not in an array over the whole map.
+    static final int FLOW_RADIUS = 96;
+    static final int FLOW_WINDOW = 2 * FLOW_RADIUS + 1;
+
+    static class FlowField {
+        final NavGraph nav;
+        private final int windowRows;     // FLOW_WINDOW, or the whole height / width when smaller
+        private final int windowColumns;
+        private final short[] distance;   // Steps to target by window cell (UNREACHABLE beyond FLOW_RADIUS)
+        private final int[] queueRows;    // Reused so no update allocates; hold the tiles the last search reached
+        private final int[] queueColumns;
+        private int reached = 0;          // How many tiles that was
+        int target = NONE;
+        private int targetRow, targetColumn;
+
+        FlowField(NavGraph nav) {
+            this.nav = nav;
+            windowRows = Math.min(nav.rowCount, FLOW_WINDOW);
+            windowColumns = Math.min(nav.columnCount, FLOW_WINDOW);
+            distance = new short[windowRows * windowColumns];
+            int tiles = Math.min(nav.tileCount, 2 * FLOW_RADIUS * (FLOW_RADIUS + 1) + 1);  // Tiles within the radius
+            queueRows = new int[tiles];
+            queueColumns = new int[tiles];
+            Arrays.fill(distance, (short) UNREACHABLE);
+        }
+
+        // Point the field at a new target (one bounded BFS, skipped if the target has not moved)
+        // Only the tiles the previous search reached are cleared, never the whole window
+        void update(int newTarget) {
+            if (newTarget == target) {
+                return;
+            }
+            for (int i = 0; i < reached; i++) {
+                distance[cell(queueRows[i], queueColumns[i])] = UNREACHABLE;  // Cells of the old target's window
+            }
+            target = newTarget;
+            targetRow = newTarget / nav.columnCount;
+            targetColumn = newTarget % nav.columnCount;
+            distance[cell(targetRow, targetColumn)] = 0;
+            int head = 0, tail = 0;
+            queueRows[tail] = targetRow;
+            queueColumns[tail++] = targetColumn;
+            while (head < tail) {
+                int r = queueRows[head];
+                int c = queueColumns[head++];
+                int steps = distance[cell(r, c)];
+                if (steps == FLOW_RADIUS) {
+                    continue;  // Edge of the field
+                }
+                int exits = nav.bits(r, c);
+                for (int d = 0; d < 4; d++) {
+                    if ((exits & (1 << d)) == 0) {
+                        continue;
+                    }
+                    int nr = r + ROW_STEP[d];
+                    int nc = c + COLUMN_STEP[d];
+                    nr = nr < 0 ? nr + nav.rowCount : nr == nav.rowCount ? 0 : nr;  // Through a tunnel
+                    nc = nc < 0 ? nc + nav.columnCount : nc == nav.columnCount ? 0 : nc;
+                    int cell = cell(nr, nc);  // Within FLOW_RADIUS of the target, so inside the window
+                    if (distance[cell] == UNREACHABLE) {
+                        distance[cell] = (short) (steps + 1);
+                        queueRows[tail] = nr;
+                        queueColumns[tail++] = nc;
+                    }
+                }
+            }
+            reached = tail;
+        }
+
+        // Window cell of a tile, or -1 outside the window (too far from the target to be reached)
+        private int cell(int tile) {
+            int r = tile / nav.columnCount;
+            return cell(r, tile - r * nav.columnCount);
+        }
+
+        private int cell(int r, int c) {
+            if (windowRows == FLOW_WINDOW) {  // Otherwise the window is the full height: rows as they are
+                r = offset(r, targetRow, nav.rowCount);
+                if (r >= FLOW_WINDOW) {
+                    return -1;
+                }
+            }
+            if (windowColumns == FLOW_WINDOW) {
+                c = offset(c, targetColumn, nav.columnCount);
+                if (c >= FLOW_WINDOW) {
+                    return -1;
+                }
+            }
+            return r * windowColumns + c;
+        }
+
+        // Position of i in a window that starts FLOW_RADIUS before the target, wrapping at size
+        private static int offset(int i, int target, int size) {
+            int offset = i - target + FLOW_RADIUS;  // size > FLOW_WINDOW, so one wrap at most
+            return offset < 0 ? offset + size : offset >= size ? offset - size : offset;
+        }
+
+        private int distanceTo(int tile) {
+            int cell = cell(tile);
+            return cell < 0 ? UNREACHABLE : distance[cell];
+        }
+
+        // Is tile close enough to the target to follow the field?
+        boolean reaches(int tile) {
+            return distanceTo(tile) != UNREACHABLE;
+        }
+
+        // Direction to take from tile down the field, with the same rules as bestDirection()
+        int direction(int tile, int reverse) {
+            int best = NONE;
+            int bestDistance = Integer.MAX_VALUE;
+            for (int d : TIE_ORDER) {
+                int next = nav.neighbour(tile, d);
+                if (next == NONE || d == reverse) {
+                    continue;
+                }
+                int distance = distanceTo(next);
+                if (distance < bestDistance) {
+                    best = d;
+                    bestDistance = distance;
+                }
+            }
+            return best != NONE ? best : reverse;
+        }
+    }
+}
@@ -1,183 +1,116 @@
 // Import necessary Java libraries for graphics, events, and data structures
 import java.awt.*;              // Graphics, Color, Font, Image
 import java.awt.event.*;        // ActionListener, KeyListener
-import java.util.HashSet;       // Collection framework (stores unique objects)
-import java.util.Random;        // Random number generation
+import java.awt.image.BufferedImage; // Offscreen image for the cached board layer
 import javax.swing.*;           // Swing GUI components
 
 
 // Main class that extends JPanel (for drawing) and implements ActionListener (for timer) and KeyListener (for keyboard input)
+// All game state and rules live in GameEngine; this class only draws it and forwards input
 public class PacMan extends JPanel implements ActionListener, KeyListener {
-    // ===================== INNER CLASS =====================
-    // OOPS: ENCAPSULATION
-    // Inner class to represent all game objects (walls, ghosts, pacman, food)
-	// OOPS: ENCAPSULATION
-	class Block {
-        int x;              // X position on screen
-        int y;              // Y position on screen
-        int width;          // Width of the block
-        int height;         // Height of the block
-        Image image;        // Image to display for this block
-        int startX;         // Starting X position (for reset)
-        int startY;         // Starting Y position (for reset)
-        char direction = 'U'; // Current direction: U=Up, D=Down, L=Left, R=Right
-        int velocityX = 0;  // Horizontal speed (pixels per frame)
-        int velocityY = 0;  // Vertical speed (pixels per frame)
-
-        // Constructor to create a new block with image and position
-        Block(Image image, int x, int y, int width, int height) {
-            this.image = image;      // Store the image
-            this.x = x;              // Set X position
-            this.y = y;              // Set Y position
-            this.width = width;      // Set width
-            this.height = height;    // Set height
-            this.startX = x;         // Remember starting X for reset
-            this.startY = y;         // Remember starting Y for reset
-        }
-
-        // Method to change the direction of a block (used for pacman and ghosts)
-        void updateDirection(char direction) {
-            char prevDirection = this.direction;  // Save current direction in case we need to revert
-            this.direction = direction;            // Update to new direction
-            updateVelocity();                      // Calculate new velocity based on direction
-            this.x += this.velocityX;              // Try moving in new direction
-            this.y += this.velocityY;              // Try moving in new direction
-            
-            // Check if the new position collides with any wall
-            for (Block wall : walls) {
-                if (collision(this, wall)) {       // If collision detected
-                    this.x -= this.velocityX;      // Undo the X movement
-                    this.y -= this.velocityY;      // Undo the Y movement
-                    this.direction = prevDirection; // Revert to previous direction
-                    updateVelocity();               // Recalculate velocity for old direction
-                }
-            }
-        }
-
-        // Calculate velocity based on current direction
-        void updateVelocity() {
-            if (this.direction == 'U') {          // Moving Up
-                this.velocityX = 0;                // No horizontal movement
-                this.velocityY = -tileSize/4;      // Move up (negative Y)
-            }
-            else if (this.direction == 'D') {     // Moving Down
-                this.velocityX = 0;                // No horizontal movement
-                this.velocityY = tileSize/4;       // Move down (positive Y)
-            }
-            else if (this.direction == 'L') {     // Moving Left
-                this.velocityX = -tileSize/4;      // Move left (negative X)
-                this.velocityY = 0;                // No vertical movement
-            }
-            else if (this.direction == 'R') {     // Moving Right
-                this.velocityX = tileSize/4;       // Move right (positive X)
-                this.velocityY = 0;                // No vertical movement
-            }
-        }
-
-        // Reset block to its starting position
-        void reset() {
-            this.x = this.startX;  // Return to starting X
-            this.y = this.startY;  // Return to starting Y
-        }
-    }
-
     // ===================== GAME SETTINGS =====================
     // OOPS: ENCAPSULATION (private variables)
-    // Game board dimensions
-    private int rowCount = 21;           // Number of rows in the game board
-    private int columnCount = 19;        // Number of columns in the game board
-    private int tileSize = 32;           // Size of each tile in pixels
-    private int boardWidth = columnCount * tileSize;   // Total width: 19 * 32 = 608 pixels
-    private int boardHeight = rowCount * tileSize;     // Total height: 21 * 32 = 672 pixels
+    // Board dimensions are taken from the engine so both always agree
+    private int tileSize;        // Size of each tile in pixels
+    private int boardWidth;      // Total width in pixels
+    private int boardHeight;     // Total height in pixels
+
+    // ===================== CAMERA =====================
+    // Maps larger than MAX_VIEW_COLUMNS x MAX_VIEW_ROWS tiles scroll: the panel shows a viewport
+    // that follows pacman, and each frame draws only the tiles and actors inside it
+    static final int MAX_VIEW_COLUMNS = 31;
+    static final int MAX_VIEW_ROWS = 23;
+    int viewWidth;               // Panel size in pixels (the whole board when it fits)
+    int viewHeight;
+    private boolean scrolling;   // The board is larger than the view
+    private int cameraX, cameraY; // Board pixel shown at the view's top-left corner
 
     // ===================== IMAGES =====================
-    // Abstraction: ImageIcon hides file loading complexity
-    // Image variables for all game sprites
-    private Image wallImage;           // Wall block image
-    private Image blueGhostImage;      // Blue ghost image
-    private Image orangeGhostImage;    // Orange ghost image
-    private Image pinkGhostImage;      // Pink ghost image
-    private Image redGhostImage;       // Red ghost image
-
-    // Pacman images for each direction
-    private Image pacmanUpImage;       // Pacman facing up
-    private Image pacmanDownImage;     // Pacman facing down
-    private Image pacmanLeftImage;     // Pacman facing left
-    private Image pacmanRightImage;    // Pacman facing right
-
-    // ===================== MAP =====================
-    // Abstraction: Game board defined using characters
-    // X = wall, O = empty space (outside play area), P = pac man starting position, ' ' = food
-    // Ghosts: b = blue, o = orange, p = pink, r = red
-    private String[] tileMap = {
-        "XXXXXXXXXXXXXXXXXXX",  // Row 0: Top border
-        "X        X        X",  // Row 1: Open space with center wall
-        "X XX XXX X XXX XX X",  // Row 2: Obstacle pattern
-        "X                 X",  // Row 3: Open corridor
-        "X XX X XXXXX X XX X",  // Row 4: More obstacles
-        "X    X       X    X",  // Row 5: Open space
-        "XXXX XXXX XXXX XXXX",  // Row 6: Wall before ghost house
-        "OOOX X       X XOOO",  // Row 7: Ghost house entrance
-        "XXXX X XXrXX X XXXX",  // Row 8: Ghost house with red ghost
-        "X      bpo        X",  // Row 9: Center row with 3 ghosts (blue, pink, orange)
-        "XXXX X XXXXX X XXXX",  // Row 10: Ghost house exit
-        "OOOX X       X XOOO",  // Row 11: Below ghost house
-        "XXXX X XXXXX X XXXX",  // Row 12: More walls
-        "X        X        X",  // Row 13: Open space
-        "X XX XXX X XXX XX X",  // Row 14: Obstacle pattern
-        "X  X     P     X  X",  // Row 15: Pacman starting position (P)
-        "XX X X XXXXX X X XX",  // Row 16: Complex obstacles
-        "X    X   X   X    X",  // Row 17: Open corridors
-        "X XXXXXX X XXXXXX X",  // Row 18: Large wall sections
-        "X                 X",  // Row 19: Bottom corridor
-        "XXXXXXXXXXXXXXXXXXX"   // Row 20: Bottom border
-    };
-
-    // ===================== OBJECT COLLECTIONS =====================
-    // OOPS: COMPOSITION (PacMan HAS-A Block)
-    // Collections to store game objects
-    HashSet<Block> walls;   // Set of all wall blocks
-    HashSet<Block> foods;   // Set of all food pellets
-    HashSet<Block> ghosts;  // Set of all ghost blocks
-    Block pacman;           // The pacman object
+    // All game sprites in one image, scaled to the tile size when it is loaded (see SpriteAtlas)
+    private final SpriteAtlas sprites;
+
+    // ===================== CACHED BOARD LAYER =====================
+    // Walls and pellets never move, so they are drawn once into this image; after that only
+    // the tiles whose pellet bits changed (eaten, or refilled by a new level) are redrawn
+    private BufferedImage boardLayer;      // Walls + remaining pellets on a black background
+    private Graphics2D layerGraphics;      // Graphics that draws into boardLayer
+    private long[] layerPellets;           // Food pellets currently drawn on the layer
+    private long[] layerPowerPellets;      // Power pellets currently drawn on the layer
+
+    // Where each actor was last painted, so a tick only repaints the area around them
+    private int lastPacmanX, lastPacmanY;  // Pacman's previous position
+    private int[] lastGhostX = new int[0]; // Previous ghost positions, in engine ghost order
+    private int[] lastGhostY = new int[0];
+    private int lastScore, lastLives;      // HUD values on screen
+    private final RenderState current = new RenderState();  // Reused snapshot for draw(Graphics)
+
+    // ===================== TEXT =====================
+    // Fonts are created once and static strings laid out once (see GlyphText)
+    private static final Font HUD_FONT = new Font("Arial", Font.PLAIN, 18);          // Score line, restart hint
+    private static final Font LARGE_FONT = new Font("Arial", Font.BOLD, 48);         // GAME OVER / GAME START
+    private static final Font SCORE_FONT = new Font("Arial", Font.PLAIN, 24);        // Final score
+    private static final Font INSTRUCTION_FONT = new Font("Arial", Font.PLAIN, 20);  // Start screen hint
+
+    private static final int LIVES = 0, SCORE = 1, RESTART = 2;   // hudText strings
+    private static final int GAME_OVER = 0, GAME_START = 1;       // largeText strings
+    private static final int FINAL_SCORE = 0;                     // scoreText strings
+    private static final int INSTRUCTIONS = 0;                    // instructionText strings
+    private final GlyphText hudText = new GlyphText(HUD_FONT, "x", " Score: ", "Press any key to restart");
+    private final GlyphText largeText = new GlyphText(LARGE_FONT, "GAME OVER", "GAME START");
+    private final GlyphText scoreText = new GlyphText(SCORE_FONT, "Final Score: ");
+    private final GlyphText instructionText = new GlyphText(INSTRUCTION_FONT, "Press WASD or Arrow keys to begin");
+
+    // Profiling overlay (F3): tick, frame and input latency percentiles
+    private static final Font OVERLAY_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private static final Color OVERLAY_BACKGROUND = new Color(0, 0, 0, 190);
+    private static final int OVERLAY_LINE = 14, OVERLAY_WIDTH = 380, OVERLAY_HEIGHT = 3 * OVERLAY_LINE + 4;
+    private static final int OVERLAY_TICK = 0, OVERLAY_FRAME = 1, OVERLAY_INPUT = 2;  // overlayText strings
+    private static final int OVERLAY_P50 = 3, OVERLAY_P99 = 4, OVERLAY_MAX = 5, OVERLAY_MICROS = 6, OVERLAY_RATE = 7;
+    private final GlyphText overlayText = new GlyphText(OVERLAY_FONT,
+            "tick ", "frame", "input", "  p50 ", "  p99 ", "  max ", " us  ", "/s");
+    // Translucent box behind the numbers: blitting it allocates nothing, a translucent fillRect() ~5 KB a frame
+    private final BufferedImage overlayBackground = translucentBox(OVERLAY_WIDTH, OVERLAY_HEIGHT, OVERLAY_BACKGROUND);
+    final Profiler profiler = new Profiler();
+    private long inputAt = 0;  // When the last movement key not yet on screen was released
+    private boolean paintingRegions = false;  // Set while one tick's dirty regions are painted (one frame)
+
+    // Debug counters for bytes allocated per tick and per frame (-Dpacman.allocations=true)
+    private final AllocationCounter tickAllocations = new AllocationCounter("tick");
+    private final AllocationCounter frameAllocations = new AllocationCounter("frame");
 
     // ===================== GAME STATE =====================
-    // Game control variables
+    // OOPS: COMPOSITION (PacMan HAS-A GameEngine)
+    GameEngine game;                          // Headless engine holding the board, actors and score
     Timer gameLoop;                           // Timer to control game updates
-    char[] directions = {'U', 'D', 'L', 'R'}; // Array of possible directions
-    Random random = new Random();             // Random number generator for ghost movement
-    int score = 0;                            // Current game score
-    int lives = 3;                            // Number of lives remaining
-    boolean gameOver = false;                 // Game over flag
-    boolean gameStarted = false;              // Game started flag
+    boolean gameStarted = false;              // Game started flag (start screen is a display concern)
+    Replay.Writer recorder;                   // Records the game being played (null = not recording)
+    Replay.Player replay;                     // Plays a replay instead of the keyboard (null = live game)
+    ScoreStore scores;                        // Records every finished game (null = not recording results)
+    Autopilot autopilot;                      // Steers pacman while on (F2 toggles; null = the player steers)
 
     // ===================== CONSTRUCTOR =====================
     // Constructor - initializes the game
     PacMan() {
-        setPreferredSize(new Dimension(boardWidth, boardHeight));  // Set panel size
+        this(new GameEngine());
+    }
+
+    // Constructor - renders an engine created elsewhere
+    PacMan(GameEngine game) {
+        this.game = game;
+        tileSize = game.tileSize;
+        boardWidth = game.boardWidth;
+        boardHeight = game.boardHeight;
+        viewWidth = Math.min(boardWidth, MAX_VIEW_COLUMNS * tileSize);
+        viewHeight = Math.min(boardHeight, MAX_VIEW_ROWS * tileSize);
+        scrolling = viewWidth < boardWidth || viewHeight < boardHeight;
+
+        setPreferredSize(new Dimension(viewWidth, viewHeight));    // Set panel size
         setBackground(Color.BLACK);                                 // Black background
         addKeyListener(this);                                       // Listen for keyboard input
         setFocusable(true);                                         // Allow panel to receive focus
 
-        // Load all image files from resources
-        wallImage = new ImageIcon(getClass().getResource("./wall.png")).getImage();
-        blueGhostImage = new ImageIcon(getClass().getResource("./blueGhost.png")).getImage();
-        orangeGhostImage = new ImageIcon(getClass().getResource("./orangeGhost.png")).getImage();
-        pinkGhostImage = new ImageIcon(getClass().getResource("./pinkGhost.png")).getImage();
-        redGhostImage = new ImageIcon(getClass().getResource("./redGhost.png")).getImage();
-
-        pacmanUpImage = new ImageIcon(getClass().getResource("./pacmanUp.png")).getImage();
-        pacmanDownImage = new ImageIcon(getClass().getResource("./pacmanDown.png")).getImage();
-        pacmanLeftImage = new ImageIcon(getClass().getResource("./pacmanLeft.png")).getImage();
-        pacmanRightImage = new ImageIcon(getClass().getResource("./pacmanRight.png")).getImage();
-
-        loadMap();  // Load the game map and create all objects
-        
-        // Give each ghost a random starting direction
-        for (Block ghost : ghosts) {
-            char newDirection = directions[random.nextInt(4)];  // Pick random direction (0-3)
-            ghost.updateDirection(newDirection);                 // Set the direction
-        }
+        // Sprites: decoded once (usually already, in the background since App started), scaled once
+        sprites = SpriteAtlas.forTileSize(tileSize);
 
         // OOPS: INTERFACE POLYMORPHISM
         // Create game timer: 50ms delay = 20 frames per second (1000ms / 50ms = 20fps)
@@ -185,229 +118,432 @@ public class PacMan extends JPanel implements ActionListener, KeyListener {
         // Don't start the timer yet - wait for player to press a key
     }
 
-    // ===================== MAP LOADING =====================
-    // OOPS: ABSTRACTION
-    // Load the map from the tileMap string array and create game objects
-    public void loadMap() {
-        walls = new HashSet<Block>();   // Initialize empty set for walls
-        foods = new HashSet<Block>();   // Initialize empty set for food
-        ghosts = new HashSet<Block>();  // Initialize empty set for ghosts
-
-        // Loop through each row of the map
-        for (int r = 0; r < rowCount; r++) {
-            // Loop through each column of the map
-            for (int c = 0; c < columnCount; c++) {
-                String row = tileMap[r];          // Get the current row string
-                char tileMapChar = row.charAt(c); // Get the character at this position
-
-                int x = c * tileSize;  // Calculate X pixel position (column * 32)
-                int y = r * tileSize;  // Calculate Y pixel position (row * 32)
-
-                // Create appropriate object based on the character
-                if (tileMapChar == 'X') {  // 'X' = wall block
-                    Block wall = new Block(wallImage, x, y, tileSize, tileSize);
-                    walls.add(wall);  // Add to walls set
-                }
-                else if (tileMapChar == 'b') {  // 'b' = blue ghost
-                    Block ghost = new Block(blueGhostImage, x, y, tileSize, tileSize);
-                    ghosts.add(ghost);  // Add to ghosts set
-                }
-                else if (tileMapChar == 'o') {  // 'o' = orange ghost
-                    Block ghost = new Block(orangeGhostImage, x, y, tileSize, tileSize);
-                    ghosts.add(ghost);  // Add to ghosts set
-                }
-                else if (tileMapChar == 'p') {  // 'p' = pink ghost
-                    Block ghost = new Block(pinkGhostImage, x, y, tileSize, tileSize);
-                    ghosts.add(ghost);  // Add to ghosts set
-                }
-                else if (tileMapChar == 'r') {  // 'r' = red ghost
-                    Block ghost = new Block(redGhostImage, x, y, tileSize, tileSize);
-                    ghosts.add(ghost);  // Add to ghosts set
-                }
-                else if (tileMapChar == 'P') {  // 'P' = pacman starting position
-                    pacman = new Block(pacmanRightImage, x, y, tileSize, tileSize);
-                }
-                else if (tileMapChar == ' ') {  // ' ' (space) = food pellet
-                    // Food is smaller (4x4) and centered in the tile (+14 offset to center it)
-                    Block food = new Block(null, x + 14, y + 14, 4, 4);
-                    foods.add(food);  // Add to foods set
-                }
-            }
+    // ===================== SPRITES =====================
+    // An image filled with one (translucent) colour, ready to blit
+    private static BufferedImage translucentBox(int width, int height, Color color) {
+        BufferedImage box = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = box.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        return box;
+    }
+
+    // Pick the sprite for a block from its map type
+    private static int ghostSprite(char type) {
+        if (type == 'b') {
+            return SpriteAtlas.BLUE_GHOST;    // Blue ghost
         }
+        else if (type == 'o') {
+            return SpriteAtlas.ORANGE_GHOST;  // Orange ghost
+        }
+        else if (type == 'p') {
+            return SpriteAtlas.PINK_GHOST;    // Pink ghost
+        }
+        return SpriteAtlas.RED_GHOST;         // Red ghost
+    }
+
+    // Pick the pacman sprite for the direction it faces
+    private static int pacmanSprite(char facing) {
+        if (facing == 'U') {
+            return SpriteAtlas.PACMAN_UP;     // Use up-facing image
+        }
+        else if (facing == 'D') {
+            return SpriteAtlas.PACMAN_DOWN;   // Use down-facing image
+        }
+        else if (facing == 'L') {
+            return SpriteAtlas.PACMAN_LEFT;   // Use left-facing image
+        }
+        return SpriteAtlas.PACMAN_RIGHT;      // Use right-facing image
     }
 
     // Override paintComponent to draw the game
     public void paintComponent(Graphics g) {
         super.paintComponent(g);  // Call parent method to clear panel
+        if (paintingRegions) {
+            draw(g);               // One region of the frame repaintDirtyRegions() is presenting
+            return;
+        }
+        long start = profiler.enabled ? System.nanoTime() : 0;
+        frameAllocations.begin();
         draw(g);                   // Call our custom draw method
+        frameAllocations.end();
+        framePresented(start);
+    }
+
+    // Once for every frame on screen, however many regions it was painted in
+    private void framePresented(long start) {
+        if (profiler.enabled) {
+            profiler.frame.record(System.nanoTime() - start, System.nanoTime());
+        }
+        App.firstFrame();          // Startup time, reported once
+
+        if (inputAt != 0) {  // This frame is the first to show the last key press
+            recordInputLatency(profiler, System.nanoTime() - inputAt);
+            inputAt = 0;
+        }
+    }
+
+    // Record key-to-screen latency into the overlay's histogram and a JFR event
+    static void recordInputLatency(Profiler profiler, long nanos) {
+        if (profiler.enabled) {
+            profiler.input.record(nanos, System.nanoTime());
+        }
+        GameEvents.InputLatency event = new GameEvents.InputLatency();
+        if (event.shouldCommit()) {
+            event.latency = nanos;
+            event.commit();
+        }
     }
 
-    // Draw all game elements
+    // Draw all game elements as they are in the engine right now
     public void draw(Graphics g) {
-        // Draw pacman
-        g.drawImage(pacman.image, pacman.x, pacman.y, pacman.width, pacman.height, null);
+        current.captureShared(game, gameStarted);  // Same thread as the engine: no pellet copy needed
+        draw(g, current, current, 1f);
+    }
+
+    // Draw a frame between two snapshots: alpha 0 shows previous, alpha 1 shows next
+    // Actors are interpolated; the board, HUD and screens always come from next
+    // Frame times are the caller's to record (the fixed-step loop's renderer, or framePresented())
+    public void draw(Graphics g, RenderState previous, RenderState next, float alpha) {
+        GameEvents.Draw event = new GameEvents.Draw();  // Costs nothing unless a JFR recording is running
+        event.begin();
+
+        drawFrame(g, previous, next, alpha);
 
-        // Draw all ghosts
-        for (Block ghost : ghosts) {
-            g.drawImage(ghost.image, ghost.x, ghost.y, ghost.width, ghost.height, null);
+        if (profiler.enabled) {
+            drawOverlay((Graphics2D) g);
         }
+        event.commit();
+    }
 
-        // Draw all walls
-        for (Block wall : walls) {
-            g.drawImage(wall.image, wall.x, wall.y, wall.width, wall.height, null);
+    // Body of draw(): board, actors, HUD and screens
+    private void drawFrame(Graphics g, RenderState previous, RenderState next, float alpha) {
+        Graphics2D g2 = (Graphics2D) g;
+
+        // Interpolate only within one board: after a level change the old positions mean nothing
+        boolean blend = alpha < 1f && previous.mapVersion == next.mapVersion
+                && previous.ghostCount == next.ghostCount;
+        int pacmanX = blend ? lerp(previous.pacmanX, next.pacmanX, alpha) : next.pacmanX;
+        int pacmanY = blend ? lerp(previous.pacmanY, next.pacmanY, alpha) : next.pacmanY;
+
+        if (scrolling) {
+            // Walls and pellets: only the chunks the view touches
+            follow(pacmanX, pacmanY);
+            g2.setColor(Color.BLACK);
+            g2.fillRect(0, 0, viewWidth, viewHeight);
+            drawTiles(g2, next, cameraX, cameraY, viewWidth, viewHeight);
+        }
+        else {
+            // Draw walls and pellets in one blit (only the clipped part is copied)
+            updateBoardLayer(next);
+            g.drawImage(boardLayer, 0, 0, null);
         }
 
-        // Draw all food pellets as white rectangles
-        g.setColor(Color.WHITE);
-        for (Block food : foods) {
-            g.fillRect(food.x, food.y, food.width, food.height);
+        // Draw pacman (camera offsets are 0 when the board fits)
+        sprites.draw(g, pacmanSprite(next.pacmanFacing), pacmanX - cameraX, pacmanY - cameraY);
+
+        // Draw the ghosts inside the view
+        for (int i = 0; i < next.ghostCount; i++) {
+            int ghostX = blend ? lerp(previous.ghostX[i], next.ghostX[i], alpha) : next.ghostX[i];
+            int ghostY = blend ? lerp(previous.ghostY[i], next.ghostY[i], alpha) : next.ghostY[i];
+            if (inView(ghostX, ghostY)) {
+                sprites.draw(g, ghostSprite(next.ghostType[i]), ghostX - cameraX, ghostY - cameraY);
+            }
         }
 
-        // Draw score and status messages
-        g.setFont(new Font("Arial", Font.PLAIN, 18));  // Set default font
+        // Draw score and status messages (pre-laid-out glyphs: nothing is allocated per frame)
 
-        if (gameOver) {  // If game is over
+        if (next.gameOver) {  // If game is over
             // Display large "GAME OVER" text in center
-            g.setFont(new Font("Arial", Font.BOLD, 48));
-            g.setColor(Color.RED);
-            String gameOverText = "GAME OVER";
-            FontMetrics fm = g.getFontMetrics();                      // Get font measurements
-            int textWidth = fm.stringWidth(gameOverText);            // Calculate text width
-            g.drawString(gameOverText, (boardWidth - textWidth) / 2, boardHeight / 2 - 30);  // Center it
+            largeText.prepare(g2);
+            g2.setColor(Color.RED);
+            largeText.draw(g2, GAME_OVER, (viewWidth - largeText.width(GAME_OVER)) / 2, viewHeight / 2 - 30);
 
             // Display final score
-            g.setFont(new Font("Arial", Font.PLAIN, 24));
-            g.setColor(Color.WHITE);
-            String scoreText = "Final Score: " + String.valueOf(score);
-            fm = g.getFontMetrics();
-            textWidth = fm.stringWidth(scoreText);
-            g.drawString(scoreText, (boardWidth - textWidth) / 2, boardHeight / 2 + 20);
+            scoreText.prepare(g2);
+            g2.setColor(Color.WHITE);
+            scoreText.clear().append(FINAL_SCORE).appendNumber(next.score);
+            scoreText.drawLine(g2, (viewWidth - scoreText.lineWidth()) / 2, viewHeight / 2 + 20);
 
             // Display restart instruction
-            g.setFont(new Font("Arial", Font.PLAIN, 18));
-            String restartText = "Press any key to restart";
-            fm = g.getFontMetrics();
-            textWidth = fm.stringWidth(restartText);
-            g.drawString(restartText, (boardWidth - textWidth) / 2, boardHeight / 2 + 60);
+            hudText.prepare(g2);
+            hudText.draw(g2, RESTART, (viewWidth - hudText.width(RESTART)) / 2, viewHeight / 2 + 60);
         }
-        else if (!gameStarted) {  // If game hasn't started yet
+        else if (!next.gameStarted) {  // If game hasn't started yet
             // Display large "GAME START" text
-            g.setFont(new Font("Arial", Font.BOLD, 48));
-            g.setColor(Color.YELLOW);
-            String startText = "GAME START";
-            FontMetrics fm = g.getFontMetrics();
-            int textWidth = fm.stringWidth(startText);
-            g.drawString(startText, (boardWidth - textWidth) / 2, boardHeight / 2 - 20);
+            largeText.prepare(g2);
+            g2.setColor(Color.YELLOW);
+            largeText.draw(g2, GAME_START, (viewWidth - largeText.width(GAME_START)) / 2, viewHeight / 2 - 20);
 
             // Display instructions
-            g.setFont(new Font("Arial", Font.PLAIN, 20));
-            g.setColor(Color.WHITE);
-            String instructionText = "Press WASD or Arrow keys to begin";
-            fm = g.getFontMetrics();
-            textWidth = fm.stringWidth(instructionText);
-            g.drawString(instructionText, (boardWidth - textWidth) / 2, boardHeight / 2 + 30);
+            instructionText.prepare(g2);
+            g2.setColor(Color.WHITE);
+            instructionText.draw(g2, INSTRUCTIONS, (viewWidth - instructionText.width(INSTRUCTIONS)) / 2, viewHeight / 2 + 30);
         }
         else {  // Normal gameplay
-            // Display lives and score at top of screen
-            g.drawString("x" + String.valueOf(lives) + " Score: " + String.valueOf(score), tileSize/2, tileSize/2);
+            // Display lives and score at top of screen: "x<lives> Score: <score>"
+            hudText.prepare(g2);
+            g2.setColor(Color.WHITE);
+            hudText.clear().append(LIVES).appendNumber(next.lives).append(SCORE).appendNumber(next.score);
+            hudText.drawLine(g2, tileSize/2, tileSize/2);
         }
     }
 
-    // Move all game objects and check collisions
-    public void move() {
-        // Move pacman based on current velocity
-        pacman.x += pacman.velocityX;
-        pacman.y += pacman.velocityY;
-
-        // Check if pacman collided with any wall
-        for (Block wall : walls) {
-            if (collision(pacman, wall)) {  // If collision detected
-                pacman.x -= pacman.velocityX;  // Undo X movement
-                pacman.y -= pacman.velocityY;  // Undo Y movement
-                break;  // Stop checking walls
-            }
+    // ===================== PROFILING OVERLAY =====================
+    // Draw p50/p99/max of tick, frame and input latency (microseconds) and their rates
+    private void drawOverlay(Graphics2D g) {
+        int top = viewHeight - OVERLAY_HEIGHT;
+        g.drawImage(overlayBackground, 0, top, null);
+        overlayText.prepare(g);
+        g.setColor(Color.GREEN);
+        drawOverlayLine(g, OVERLAY_TICK, profiler.tick, top + OVERLAY_LINE);
+        drawOverlayLine(g, OVERLAY_FRAME, profiler.frame, top + 2 * OVERLAY_LINE);
+        drawOverlayLine(g, OVERLAY_INPUT, profiler.input, top + 3 * OVERLAY_LINE);
+    }
+
+    // One overlay line: "<name> p50 <n> p99 <n> max <n> us <rate>/s"
+    private void drawOverlayLine(Graphics2D g, int name, Profiler.Latency latency, int y) {
+        overlayText.clear().append(name)
+                .append(OVERLAY_P50).appendNumber(latency.p50)
+                .append(OVERLAY_P99).appendNumber(latency.p99)
+                .append(OVERLAY_MAX).appendNumber(latency.max)
+                .append(OVERLAY_MICROS).appendNumber(latency.perSecond).append(OVERLAY_RATE);
+        overlayText.drawLine(g, 4, y - 3);
+    }
+
+    // Centre the view on pacman, without showing anything past the board's edges
+    private void follow(int pacmanX, int pacmanY) {
+        cameraX = Math.max(0, Math.min(boardWidth - viewWidth, pacmanX + tileSize / 2 - viewWidth / 2));
+        cameraY = Math.max(0, Math.min(boardHeight - viewHeight, pacmanY + tileSize / 2 - viewHeight / 2));
+    }
+
+    // Does an actor at (x, y) overlap the view?
+    private boolean inView(int x, int y) {
+        return x + tileSize > cameraX && x < cameraX + viewWidth && y + tileSize > cameraY && y < cameraY + viewHeight;
+    }
+
+    // Position part way from a to b, rounded to the nearest pixel
+    // A jump of more than a tile (death, tunnel) is not a move, so it snaps to b
+    private int lerp(int a, int b, float alpha) {
+        if (Math.abs(b - a) > tileSize) {
+            return b;
         }
+        return a + Math.round((b - a) * alpha);
+    }
 
-        // Check ghost collisions and move ghosts
-        for (Block ghost : ghosts) {
-            // Check if ghost touched pacman
-            if (collision(ghost, pacman)) {
-                lives -= 1;  // Lose a life
-                if (lives == 0) {  // If no lives left
-                    gameOver = true;  // Game over
-                    return;  // Exit method
-                }
-                resetPositions();  // Reset all positions after death
-            }
+    // ===================== BOARD LAYER =====================
+    // Bring the cached board layer up to date with a snapshot
+    private void updateBoardLayer(RenderState state) {
+        if (boardLayer == null) {
+            renderBoardLayer(state);  // First frame: draw every wall and pellet once
+            return;
+        }
 
-            // Special behavior: if ghost is at row 9 and not moving vertically, make it go up
-            // This forces ghosts to leave the ghost house
-            if (ghost.y == tileSize * 9 && ghost.direction != 'U' && ghost.direction != 'D') {
-                ghost.updateDirection('U');
-            }
-            
-            // Move ghost
-            ghost.x += ghost.velocityX;
-            ghost.y += ghost.velocityY;
-            
-            // Check if ghost hit a wall or board edge
-            for (Block wall : walls) {
-                if (collision(ghost, wall) || ghost.x <= 0 || ghost.x + ghost.width >= boardWidth) {
-                    ghost.x -= ghost.velocityX;  // Undo movement
-                    ghost.y -= ghost.velocityY;  // Undo movement
-                    char newDirection = directions[random.nextInt(4)];  // Pick random new direction
-                    ghost.updateDirection(newDirection);  // Change direction
-                }
+        // Redraw only the tiles whose pellets differ from what the layer shows
+        for (int word = 0; word < state.pellets.length; word++) {
+            long changed = (state.pellets[word] ^ layerPellets[word])
+                         | (state.powerPellets[word] ^ layerPowerPellets[word]);
+            while (changed != 0) {
+                int tile = (word << 6) + Long.numberOfTrailingZeros(changed);
+                changed &= changed - 1;  // Clear the lowest set bit
+                drawPelletTile(layerGraphics, state, tile);
             }
+            layerPellets[word] = state.pellets[word];
+            layerPowerPellets[word] = state.powerPellets[word];
         }
+    }
+
+    // Draw all walls and the snapshot's pellets into a fresh layer image
+    private void renderBoardLayer(RenderState state) {
+        GraphicsConfiguration config = getGraphicsConfiguration();  // Null until the panel is on screen
+        boardLayer = config != null
+                ? config.createCompatibleImage(boardWidth, boardHeight)  // Display format: blits without conversion
+                : new BufferedImage(boardWidth, boardHeight, BufferedImage.TYPE_INT_RGB);
+        layerGraphics = boardLayer.createGraphics();  // Kept for the layer's lifetime: updates then allocate nothing
+        Graphics2D g = layerGraphics;
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, boardWidth, boardHeight);
+
+        // Draw all walls and every tile that holds a pellet
+        drawTiles(g, state, 0, 0, boardWidth, boardHeight);
+
+        layerPellets = state.pellets.clone();
+        layerPowerPellets = state.powerPellets.clone();
+    }
 
-        // Check if pacman ate any food
-        Block foodEaten = null;  // Track which food was eaten
-        for (Block food : foods) {
-            if (collision(pacman, food)) {  // If pacman touched food
-                foodEaten = food;  // Mark this food for removal
-                score += 10;       // Increase score by 10
+    // Draw the walls and pellets inside a rectangle of the board (in board pixels) onto a black
+    // background, with the rectangle's top-left corner at (0, 0)
+    // Visits only the map chunks the rectangle touches, and skips chunks with nothing in them
+    private void drawTiles(Graphics2D g, RenderState state, int left, int top, int width, int height) {
+        TileMap map = state.map;
+        int firstRow = Math.max(0, top / tileSize);
+        int lastRow = Math.min(map.rowCount - 1, (top + height - 1) / tileSize);
+        int firstColumn = Math.max(0, left / tileSize);
+        int lastColumn = Math.min(map.columnCount - 1, (left + width - 1) / tileSize);
+
+        for (int cr = firstRow >>> TileMap.CHUNK_SHIFT; cr <= lastRow >>> TileMap.CHUNK_SHIFT; cr++) {
+            for (int cc = firstColumn >>> TileMap.CHUNK_SHIFT; cc <= lastColumn >>> TileMap.CHUNK_SHIFT; cc++) {
+                byte[] chunk = map.chunk(cr, cc);
+                if (chunk == null) {
+                    continue;  // All open: no walls, and pellets only ever sit on FOOD or POWER tiles
+                }
+                int rowEnd = Math.min(lastRow, (cr << TileMap.CHUNK_SHIFT) + TileMap.CHUNK_MASK);
+                int columnEnd = Math.min(lastColumn, (cc << TileMap.CHUNK_SHIFT) + TileMap.CHUNK_MASK);
+                for (int r = Math.max(firstRow, cr << TileMap.CHUNK_SHIFT); r <= rowEnd; r++) {
+                    for (int c = Math.max(firstColumn, cc << TileMap.CHUNK_SHIFT); c <= columnEnd; c++) {
+                        byte tile = chunk[((r & TileMap.CHUNK_MASK) << TileMap.CHUNK_SHIFT) | (c & TileMap.CHUNK_MASK)];
+                        if (tile == TileMap.WALL) {
+                            sprites.draw(g, SpriteAtlas.WALL, c * tileSize - left, r * tileSize - top);
+                        }
+                        else if (tile != TileMap.OPEN) {
+                            drawPellet(g, state, r * map.columnCount + c, c * tileSize - left, r * tileSize - top);
+                        }
+                    }
+                }
             }
         }
-        foods.remove(foodEaten);  // Remove the eaten food from the set
+    }
 
-        // If all food is gone, reload the map (new level)
-        if (foods.isEmpty()) {
-            loadMap();          // Reload all food and positions
-            resetPositions();   // Reset character positions
+    // Redraw one pellet tile: clear it, then draw whatever pellet it holds in this snapshot
+    // (pellet tiles hold nothing else, so clearing the whole tile is safe)
+    private void drawPelletTile(Graphics2D g, RenderState state, int tile) {
+        int x = (tile % game.columnCount) * tileSize;
+        int y = (tile / game.columnCount) * tileSize;
+        g.setColor(Color.BLACK);
+        g.fillRect(x, y, tileSize, tileSize);
+        drawPellet(g, state, tile, x, y);
+    }
+
+    // Draw the pellet a tile holds in this snapshot, if any, with the tile's corner at (x, y)
+    private void drawPellet(Graphics2D g, RenderState state, int tile, int x, int y) {
+        if (bit(state.pellets, tile)) {  // Food pellets are small white rectangles
+            g.setColor(Color.WHITE);
+            g.fillRect(x + GameEngine.FOOD_OFFSET, y + GameEngine.FOOD_OFFSET, GameEngine.FOOD_SIZE, GameEngine.FOOD_SIZE);
+        }
+        else if (bit(state.powerPellets, tile)) {
+            sprites.draw(g, SpriteAtlas.POWER_FOOD, x, y);
         }
     }
 
-    // Check if two blocks are colliding using rectangle collision detection
-    public boolean collision(Block a, Block b) {
-        return a.x < b.x + b.width &&      // A's left edge is left of B's right edge
-               a.x + a.width > b.x &&      // A's right edge is right of B's left edge
-               a.y < b.y + b.height &&     // A's top edge is above B's bottom edge
-               a.y + a.height > b.y;       // A's bottom edge is below B's top edge
+    // Test one tile's bit in a pellet bitset
+    private static boolean bit(long[] bits, int tile) {
+        return (bits[tile >>> 6] & (1L << tile)) != 0;
     }
 
-    // Reset all character positions to their starting locations
-    public void resetPositions() {
-        pacman.reset();         // Reset pacman position
-        pacman.velocityX = 0;   // Stop pacman movement
-        pacman.velocityY = 0;   // Stop pacman movement
-        
-        // Reset all ghosts
-        for (Block ghost : ghosts) {
-            ghost.reset();  // Reset ghost position
-            char newDirection = directions[random.nextInt(4)];  // Give random direction
-            ghost.updateDirection(newDirection);  // Apply the direction
-        }
+    // ===================== GAME LOOP =====================
+    // Play a replay from where the player is (the panel must be showing player.game)
+    void watch(Replay.Player player) {
+        replay = player;
+        gameStarted = true;
+        rememberPainted();
+        gameLoop.start();
     }
 
     // Called by the timer every 50ms (game loop)
     @Override
     public void actionPerformed(ActionEvent e) {
-        move();    // Update all positions and check collisions
-        repaint(); // Redraw the screen
-        if (gameOver) {  // If game ended
+        GameEvents.Tick event = new GameEvents.Tick();
+        event.begin();
+        int mapVersion = game.mapVersion;  // Remember the board so a level change can be spotted
+        long start = profiler.enabled ? System.nanoTime() : 0;
+        tickAllocations.begin();
+        if (replay != null) {
+            if (!replay.step()) {  // Recorded inputs, then move
+                gameLoop.stop();   // End of the replay
+            }
+        }
+        else {
+            if (autopilot != null) {
+                steer(autopilot.nextInput(game));  // Searches every few ticks, like a key press in between
+            }
+            game.move();  // Update all positions and check collisions
+            if (recorder != null) {
+                recorder.tick();
+            }
+        }
+        tickAllocations.end();
+        if (profiler.enabled) {
+            profiler.tick.record(System.nanoTime() - start, System.nanoTime());
+        }
+
+        if (scrolling || game.gameOver || mapVersion != game.mapVersion || lastGhostX.length != game.ghosts.size()) {
+            repaint();  // Screen changes everywhere (or the camera moved): redraw the whole panel
+        }
+        else {
+            repaintDirtyRegions();  // Only the actors and the HUD changed
+        }
+        rememberPainted();
+
+        if (game.gameOver && replay == null) {  // If game ended (a replay may restart it)
             gameLoop.stop();  // Stop the timer
+            if (scores != null) {
+                scores.record(ScoreStore.defaultPlayer(), game);
+            }
         }
+        event.commit();
+    }
+
+    // Repaint the area each actor moved through, and the HUD if its numbers changed
+    // paintImmediately() paints each region on its own; repaint(rect) would merge them
+    // into one bounding box that covers most of the board. The regions are still one frame:
+    // allocations, frame time, input latency and the first frame are counted once per tick
+    private void repaintDirtyRegions() {
+        long start = profiler.enabled ? System.nanoTime() : 0;
+        frameAllocations.begin();
+        paintingRegions = true;
+        paintDirty();
+        paintingRegions = false;
+        frameAllocations.end();
+        framePresented(start);
+    }
+
+    private void paintDirty() {
+        GameEngine.Block pacman = game.pacman;
+        repaintMoved(lastPacmanX, lastPacmanY, pacman.x, pacman.y);
+
+        for (int i = 0; i < lastGhostX.length; i++) {
+            GameEngine.Block ghost = game.ghosts.get(i);
+            repaintMoved(lastGhostX[i], lastGhostY[i], ghost.x, ghost.y);
+        }
+
+        if (game.score != lastScore || game.lives != lastLives) {
+            paintImmediately(0, 0, viewWidth, tileSize);  // Lives and score line at the top
+        }
+        if (profiler.enabled) {
+            paintImmediately(0, viewHeight - OVERLAY_HEIGHT, OVERLAY_WIDTH, OVERLAY_HEIGHT);  // Live numbers
+        }
+    }
+
+    // Repaint an actor's old and new position (one rectangle when they touch, two when it jumped)
+    private void repaintMoved(int oldX, int oldY, int x, int y) {
+        if (Math.abs(x - oldX) <= tileSize && Math.abs(y - oldY) <= tileSize) {
+            int left = Math.min(oldX, x);
+            int top = Math.min(oldY, y);
+            paintImmediately(left, top, Math.abs(x - oldX) + tileSize, Math.abs(y - oldY) + tileSize);
+        }
+        else {  // Teleported (life lost): the two spots are far apart
+            paintImmediately(oldX, oldY, tileSize, tileSize);
+            paintImmediately(x, y, tileSize, tileSize);
+        }
+    }
+
+    // Record what is on screen now, for the next tick's dirty regions
+    private void rememberPainted() {
+        lastPacmanX = game.pacman.x;
+        lastPacmanY = game.pacman.y;
+        int ghostCount = game.ghosts.size();
+        if (lastGhostX.length != ghostCount) {
+            lastGhostX = new int[ghostCount];
+            lastGhostY = new int[ghostCount];
+        }
+        for (int i = 0; i < ghostCount; i++) {
+            GameEngine.Block ghost = game.ghosts.get(i);
+            lastGhostX[i] = ghost.x;
+            lastGhostY[i] = ghost.y;
+        }
+        lastScore = game.score;
+        lastLives = game.lives;
     }
 
     // ===================== INPUT =====================
@@ -421,25 +557,42 @@ public class PacMan extends JPanel implements ActionListener, KeyListener {
     // Handle keyboard input when keys are released
     @Override
     public void keyReleased(KeyEvent e) {
+        // F3 shows or hides the profiling overlay (and turns its recording on or off)
+        if (e.getKeyCode() == KeyEvent.VK_F3) {
+            profiler.toggle();
+            repaint();
+            return;
+        }
+        if (replay != null) {
+            return;  // Watching a replay: the keyboard does not play
+        }
+
+        // F2 hands pacman to the autopilot (Monte-Carlo tree search) and back
+        if (e.getKeyCode() == KeyEvent.VK_F2) {
+            autopilot = autopilot == null ? new Autopilot(game, game.seed) : null;
+            if (autopilot != null && !gameStarted && !game.gameOver) {
+                gameStarted = true;
+                gameLoop.start();
+                rememberPainted();
+                repaint();
+            }
+            return;
+        }
+
         // If game is over, any key restarts the game
-        if (gameOver) {
-            loadMap();            // Reload the map
-            resetPositions();     // Reset positions
-            lives = 3;            // Reset lives to 3
-            score = 0;            // Reset score to 0
-            gameOver = false;     // Clear game over flag
+        if (game.gameOver) {
+            game.restart();       // Reload the map, positions, lives and score
+            if (recorder != null) {
+                recorder.restart();
+            }
             gameStarted = false;  // Show start message again
+            repaint();            // Redraw the whole panel with the start screen
             return;               // Don't process as movement key
         }
 
-        // Get the key code that was pressed
-        int keyCode = e.getKeyCode();
-        
-        // Ignore all keys except WASD and arrow keys
-        if (keyCode != KeyEvent.VK_W && keyCode != KeyEvent.VK_A && 
-            keyCode != KeyEvent.VK_S && keyCode != KeyEvent.VK_D &&
-            keyCode != KeyEvent.VK_UP && keyCode != KeyEvent.VK_DOWN && 
-            keyCode != KeyEvent.VK_LEFT && keyCode != KeyEvent.VK_RIGHT) {
+        // Translate the key into a direction (0 for keys we ignore)
+        char direction = directionForKey(e.getKeyCode());
+        if (direction == GameEngine.NO_INPUT) {
             return;  // Exit if not a movement key
         }
 
@@ -447,34 +600,40 @@ public class PacMan extends JPanel implements ActionListener, KeyListener {
         if (!gameStarted) {
             gameStarted = true;  // Mark game as started
             gameLoop.start();    // Start the timer
+            rememberPainted();   // Dirty regions are tracked from here on
+            repaint();           // Replace the start screen with the board
         }
 
-        // Update pacman direction based on key pressed
+        // Update pacman direction (and the way its sprite faces) based on key pressed
+        steer(direction);
+        inputAt = System.nanoTime();  // paintComponent() measures how long until it is on screen
+    }
+
+    // Turn pacman (keyboard or autopilot) and record it; NO_INPUT does nothing
+    private void steer(char direction) {
+        if (direction == GameEngine.NO_INPUT) {
+            return;
+        }
+        game.input(direction);
+        if (recorder != null) {
+            recorder.input(direction);
+        }
+    }
+
+    // Map WASD and arrow keys to U/D/L/R
+    static char directionForKey(int keyCode) {
         if (keyCode == KeyEvent.VK_W || keyCode == KeyEvent.VK_UP) {  // W or Up arrow
-        	pacman.updateDirection('U');  // Move up
+            return 'U';  // Move up
         }
         else if (keyCode == KeyEvent.VK_S || keyCode == KeyEvent.VK_DOWN) {  // S or Down arrow
-            pacman.updateDirection('D');  // Move down
+            return 'D';  // Move down
         }
         else if (keyCode == KeyEvent.VK_A || keyCode == KeyEvent.VK_LEFT) {  // A or Left arrow
-            pacman.updateDirection('L');  // Move left
+            return 'L';  // Move left
         }
         else if (keyCode == KeyEvent.VK_D || keyCode == KeyEvent.VK_RIGHT) {  // D or Right arrow
-            pacman.updateDirection('R');  // Move right
-        }
-
-        // Update pacman's image to match the direction
-        if (pacman.direction == 'U') {
-            pacman.image = pacmanUpImage;     // Use up-facing image
-        }
-        else if (pacman.direction == 'D') {
-            pacman.image = pacmanDownImage;   // Use down-facing image
-        }
-        else if (pacman.direction == 'L') {
-            pacman.image = pacmanLeftImage;   // Use left-facing image
-        }
-        else if (pacman.direction == 'R') {
-            pacman.image = pacmanRightImage;  // Use right-facing image
+            return 'R';  // Move right
         }
+        return GameEngine.NO_INPUT;  // Any other key is ignored
     }
 }
\ No newline at end of file
@@ -0,0 +1,44 @@
+// Live latency statistics for the on-screen profiling overlay
+// Tick time, frame time and input-to-screen latency are recorded into Histograms (microseconds).
+// Once a second each one publishes its p50/p99/max and rate to volatile fields and starts a new
+// window, so the overlay can read them from any thread without locking.
+// Recording is off unless the overlay is shown (F3) or -Dpacman.profile=true is set; when off,
+// each probe is one boolean check.
+public class Profiler {
+    static final long WINDOW_NANOS = 1_000_000_000L;  // Length of one statistics window
+
+    volatile boolean enabled = Boolean.getBoolean("pacman.profile");  // Record and show the overlay
+
+    final Latency tick = new Latency();    // Time spent in one tick
+    final Latency frame = new Latency();   // Time spent drawing one frame
+    final Latency input = new Latency();   // Key release to the frame that shows it
+
+    // One measured quantity: written by a single thread, readable by any
+    static class Latency {
+        private final Histogram window = new Histogram();  // Current window, owner thread only
+        private long windowStart = System.nanoTime();
+
+        // Results of the last complete window
+        volatile int p50;        // Microseconds
+        volatile int p99;
+        volatile int max;
+        volatile int perSecond;  // Samples in the window (ticks/s, frames/s, inputs/s)
+
+        // Record one duration; publishes and resets the window once a second
+        void record(long nanos, long now) {
+            window.record(nanos / 1000);
+            if (now - windowStart >= WINDOW_NANOS) {
+                p50 = (int) window.percentile(50);
+                p99 = (int) window.percentile(99);
+                max = (int) window.max();
+                perSecond = (int) (window.count() * WINDOW_NANOS / (now - windowStart));
+                window.reset();
+                windowStart = now;
+            }
+        }
+    }
+
+    void toggle() {
+        enabled = !enabled;
+    }
+}
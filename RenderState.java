@@ -0,0 +1,126 @@
+// Snapshot of everything PacMan draws for one tick, copied out of a GameEngine
+// The simulation thread fills these and hands them to the render thread, which can then
+// draw (and interpolate between two of them) without touching the engine it is stepping.
+// The map is shared by reference (it never changes); the pellet bitsets are copied.
+public class RenderState {
+    // ===================== BOARD =====================
+    int mapVersion;        // Engine mapVersion this snapshot belongs to
+    TileMap map;           // Walls (and the board size)
+    long[] pellets = new long[0];       // Food pellets left, one bit per tile
+    long[] powerPellets = new long[0];  // Power pellets left, one bit per tile
+    private boolean sharedPellets;      // The bitsets above are the engine's own (captureShared)
+
+    // ===================== ACTORS =====================
+    int pacmanX;                    // Pacman position
+    int pacmanY;
+    char pacmanFacing = 'R';        // Direction pacman's sprite faces
+    int ghostCount;                 // Number of valid entries in the ghost arrays
+    int[] ghostX = new int[0];      // Ghost positions, in engine ghost order
+    int[] ghostY = new int[0];
+    char[] ghostType = new char[0]; // Ghost colours (b, o, p or r)
+
+    // ===================== HUD =====================
+    int score;               // Current score
+    int lives;               // Lives remaining
+    boolean gameOver;        // Game over screen
+    boolean gameStarted;     // False while the start screen is shown
+
+    // ===================== INPUT =====================
+    // Set by FixedStepLoop after capture(), so the render thread can time key-to-screen latency
+    int inputCount;          // Movement keys applied so far
+    long inputAt;            // System.nanoTime() when the newest of them was released
+
+    // ===================== COPYING =====================
+    // Copy the engine's current state into this snapshot (allocates only when the ghost count grows)
+    void capture(GameEngine game, boolean started) {
+        unshare();
+        pellets = copyBits(game.pellets, pellets);
+        powerPellets = copyBits(game.powerPellets, powerPellets);
+        captureRest(game, started);
+    }
+
+    // Like capture(), but the pellet bitsets are the engine's own instead of copies
+    // Only for drawing on the thread that steps the engine (the Swing timer loop): a copy costs
+    // time proportional to the map size on every frame
+    void captureShared(GameEngine game, boolean started) {
+        pellets = game.pellets;
+        powerPellets = game.powerPellets;
+        sharedPellets = true;
+        captureRest(game, started);
+    }
+
+    // Everything capture() takes apart from the pellets
+    private void captureRest(GameEngine game, boolean started) {
+        mapVersion = game.mapVersion;
+        map = game.map;
+        pacmanX = game.pacman.x;
+        pacmanY = game.pacman.y;
+        pacmanFacing = game.pacmanFacing;
+        ensureGhostCapacity(game.ghosts.size());
+        ghostCount = game.ghosts.size();
+        for (int i = 0; i < ghostCount; i++) {
+            GameEngine.Block ghost = game.ghosts.get(i);
+            ghostX[i] = ghost.x;
+            ghostY[i] = ghost.y;
+            ghostType[i] = ghost.type;
+        }
+
+        score = game.score;
+        lives = game.lives;
+        gameOver = game.gameOver;
+        gameStarted = started;
+    }
+
+    // Make this snapshot an exact copy of another one
+    void copyFrom(RenderState other) {
+        mapVersion = other.mapVersion;
+        map = other.map;
+        unshare();
+        pellets = copyBits(other.pellets, pellets);
+        powerPellets = copyBits(other.powerPellets, powerPellets);
+
+        pacmanX = other.pacmanX;
+        pacmanY = other.pacmanY;
+        pacmanFacing = other.pacmanFacing;
+        ensureGhostCapacity(other.ghostCount);
+        ghostCount = other.ghostCount;
+        System.arraycopy(other.ghostX, 0, ghostX, 0, ghostCount);
+        System.arraycopy(other.ghostY, 0, ghostY, 0, ghostCount);
+        System.arraycopy(other.ghostType, 0, ghostType, 0, ghostCount);
+
+        score = other.score;
+        lives = other.lives;
+        gameOver = other.gameOver;
+        gameStarted = other.gameStarted;
+
+        inputCount = other.inputCount;
+        inputAt = other.inputAt;
+    }
+
+    // Give up the engine's bitsets from captureShared(), so copies never write into them
+    private void unshare() {
+        if (sharedPellets) {
+            pellets = new long[0];
+            powerPellets = new long[0];
+            sharedPellets = false;
+        }
+    }
+
+    // Copy a bitset into target, allocating only the first time (or if the board size changed)
+    private static long[] copyBits(long[] source, long[] target) {
+        if (target.length != source.length) {
+            target = new long[source.length];
+        }
+        System.arraycopy(source, 0, target, 0, source.length);
+        return target;
+    }
+
+    // Grow the ghost arrays if they cannot hold this many ghosts
+    private void ensureGhostCapacity(int count) {
+        if (ghostX.length < count) {
+            ghostX = new int[count];
+            ghostY = new int[count];
+            ghostType = new char[count];
+        }
+    }
+}
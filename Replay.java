@@ -0,0 +1,464 @@
+// Import NIO for the buffered channel writer and the memory-mapped reader
+import java.io.IOException;                 // File errors
+import java.nio.BufferUnderflowException;   // A record cut off by the end of the file
+import java.nio.ByteBuffer;                 // Record encoding
+import java.nio.MappedByteBuffer;           // Replay file mapped into memory
+import java.nio.channels.FileChannel;       // Channel the writer flushes to and the reader maps
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;                    // Growing the keyframe index
+
+
+// Deterministic replays: a seed, the inputs, and periodic keyframes
+// A game is fully decided by its seed and the inputs applied between ticks, so a replay stores
+// only those, run-length encoded: every record says how many ticks passed since the previous
+// record. Every KEYFRAME_TICKS ticks a keyframe holds the full GameEngine state, and an index
+// of keyframes at the end of the file lets a reader jump to any tick by restoring the nearest
+// keyframe before it and simulating at most KEYFRAME_TICKS ticks, instead of replaying from 0.
+//
+// Record with:  java -Dpacman.record=game.replay App
+// Check with:   java Replay game.replay [tick]   (re-simulates, verifies the final score, times seeking)
+// Watch with:   java App replay game.replay [tick]
+//
+// File layout (big-endian):
+//   header   magic "PMRP", version, seed, rows, columns, tile size, keyframe interval
+//   records  tag byte, ticks since the previous record (varint), then by tag:
+//            INPUT direction byte | RESTART - | KEYFRAME state length + GameEngine.saveState() | END score, lives
+//   index    keyframe count, (tick, file offset) per keyframe, index offset, magic "PMIX"
+// A recording cut off before close() has no index; the reader then rebuilds it by scanning.
+public class Replay {
+    // ===================== FORMAT =====================
+    static final int MAGIC = 0x504D5250;         // "PMRP"
+    static final int INDEX_MAGIC = 0x504D4958;   // "PMIX"
+    static final short VERSION = 3;             // 3: keyframes save the level and ticks played
+    static final int HEADER_SIZE = 4 + 2 + 8 + 3 * 2 + 4;
+    static final int KEYFRAME_TICKS = 200;       // 10 seconds at 20 ticks per second
+
+    static final byte INPUT = 'I';
+    static final byte RESTART = 'R';
+    static final byte KEYFRAME = 'K';
+    static final byte END = 'E';
+
+    // ===================== WRITER =====================
+    // Records one game as it is played. The game loop calls input()/restart() when it applies
+    // them and tick() after every move; records collect in a direct buffer that is written to
+    // the channel when full. Methods are synchronized so a shutdown hook can close() safely.
+    // An I/O error stops the recording (with a message) rather than the game.
+    static class Writer {
+        final GameEngine game;
+        final int keyframeTicks;
+        private final Path path;
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private long flushed = 0;         // Bytes already written to the channel
+        private long tick = 0;            // Ticks recorded so far
+        private long lastRecordTick = 0;  // Tick of the previous record (records store the difference)
+        private long lastRecordOffset;    // File offset of the record started last
+        private long[] keyframeAt = new long[64];      // Index: tick of each keyframe...
+        private long[] keyframeOffset = new long[64];  // ...and the file offset of its record
+        private int keyframes = 0;
+        private boolean closed = false;
+
+        Writer(Path path, GameEngine game) throws IOException {
+            this(path, game, KEYFRAME_TICKS);
+        }
+
+        // Start recording game from its current state (which becomes keyframe 0)
+        Writer(Path path, GameEngine game, int keyframeTicks) throws IOException {
+            this.path = path;
+            this.game = game;
+            this.keyframeTicks = keyframeTicks;
+            this.buffer = ByteBuffer.allocateDirect(Math.max(1 << 16, 4 * game.stateSize()));
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            buffer.putInt(MAGIC).putShort(VERSION).putLong(game.seed);
+            buffer.putShort((short) game.rowCount).putShort((short) game.columnCount).putShort((short) game.tileSize);
+            buffer.putInt(keyframeTicks);
+            keyframe();
+        }
+
+        // A direction was applied to pacman (game.input) before the next tick
+        synchronized void input(char direction) {
+            if (record(INPUT, 1)) {
+                buffer.put((byte) direction);
+            }
+        }
+
+        // The game was restarted (game.restart) before the next tick
+        synchronized void restart() {
+            record(RESTART, 0);
+        }
+
+        // The game moved one tick
+        synchronized void tick() {
+            tick++;
+            if (tick % keyframeTicks == 0) {
+                keyframe();
+            }
+        }
+
+        // Write the final score and the index; further calls are ignored
+        synchronized void close() {
+            if (closed) {
+                return;
+            }
+            if (record(END, 8)) {
+                buffer.putInt(game.score).putInt(game.lives);
+            }
+            try {
+                long indexStart = flushed + buffer.position();
+                for (int i = 0; i < keyframes; i++) {
+                    room(16);
+                    buffer.putLong(keyframeAt[i]).putLong(keyframeOffset[i]);
+                }
+                room(16);
+                buffer.putInt(keyframes).putLong(indexStart).putInt(INDEX_MAGIC);
+                flush();
+                channel.close();
+            }
+            catch (IOException e) {
+                System.err.println("Replay " + path + " not finished: " + e);
+            }
+            closed = true;
+        }
+
+        // Full engine state, added to the index
+        private void keyframe() {
+            int size = game.stateSize();
+            if (1 + 10 + 4 + size > buffer.capacity()) {  // Only with thousands of extra ghosts
+                System.err.println("Replay " + path + " stopped: game state too large for a keyframe");
+                closed = true;
+            }
+            if (!record(KEYFRAME, 4 + size)) {
+                return;
+            }
+            buffer.putInt(size);
+            game.saveState(buffer);
+            if (keyframes == keyframeAt.length) {
+                keyframeAt = Arrays.copyOf(keyframeAt, keyframes * 2);
+                keyframeOffset = Arrays.copyOf(keyframeOffset, keyframes * 2);
+            }
+            keyframeAt[keyframes] = tick;
+            keyframeOffset[keyframes] = lastRecordOffset;
+            keyframes++;
+        }
+
+        // Start a record: tag and tick delta, with room for payload bytes after them
+        // Returns false if the recording has stopped
+        private boolean record(byte tag, int payload) {
+            if (closed) {
+                return false;
+            }
+            try {
+                room(1 + 10 + payload);
+                lastRecordOffset = flushed + buffer.position();
+                buffer.put(tag);
+                putVarint(buffer, tick - lastRecordTick);
+                lastRecordTick = tick;
+                return true;
+            }
+            catch (IOException e) {
+                System.err.println("Replay " + path + " stopped: " + e);
+                closed = true;
+                return false;
+            }
+        }
+
+        // Flush if fewer than n bytes are free
+        private void room(int n) throws IOException {
+            if (buffer.remaining() < n) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                flushed += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    // ===================== READER =====================
+    final MappedByteBuffer data;  // The whole file, read only
+    final TileMap map;            // Map the game was played on
+    final long seed;
+    final int rowCount, columnCount, tileSize;
+    final int keyframeTicks;
+    long[] keyframeAt = new long[64];  // Tick of each keyframe, ascending
+    int[] keyframeOffset = new int[64];  // File offset of each keyframe record
+    int keyframes = 0;
+    long ticks;                   // Length of the replay in ticks
+    int recordsEnd;               // File offset just past the last complete record
+    boolean finished;             // The recording was closed (END record present)
+    int finalScore, finalLives;   // From the END record
+
+    private Replay(MappedByteBuffer data, TileMap map) {
+        this.data = data;
+        this.map = map;
+        if (data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a replay file");
+        }
+        if (data.getShort(4) != VERSION) {
+            throw new IllegalArgumentException("Unsupported replay version " + data.getShort(4));
+        }
+        seed = data.getLong(6);
+        rowCount = data.getShort(14);
+        columnCount = data.getShort(16);
+        tileSize = data.getShort(18);
+        keyframeTicks = data.getInt(20);
+        scan();
+    }
+
+    // Map a replay of a game on the built-in map into memory
+    static Replay open(Path path) throws IOException {
+        return open(path, TileMap.classic());
+    }
+
+    // Map a replay file into memory (the mapping stays valid after the channel is closed)
+    // The replay only records the map's size, so map must be the one the game was played on
+    static Replay open(Path path, TileMap map) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new Replay(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), map);
+        }
+    }
+
+    // Walk the records once for the length, the result and (if the index is missing) the keyframes
+    private void scan() {
+        int limit = data.limit();
+        boolean indexed = limit >= HEADER_SIZE + 16 && data.getInt(limit - 4) == INDEX_MAGIC;
+        if (indexed) {  // Read the index instead of collecting keyframes while scanning
+            int indexStart = (int) data.getLong(limit - 12);
+            keyframes = data.getInt(limit - 16);
+            keyframeAt = new long[keyframes];
+            keyframeOffset = new int[keyframes];
+            for (int i = 0; i < keyframes; i++) {
+                keyframeAt[i] = data.getLong(indexStart + 16 * i);
+                keyframeOffset[i] = (int) data.getLong(indexStart + 16 * i + 8);
+            }
+            limit = indexStart;
+        }
+
+        ByteBuffer in = data.duplicate();
+        in.position(HEADER_SIZE).limit(limit);
+        long tick = 0;
+        recordsEnd = HEADER_SIZE;
+        try {
+            while (in.hasRemaining()) {
+                int offset = in.position();
+                byte tag = in.get();
+                tick += getVarint(in);
+                if (tag == INPUT) {
+                    in.get();
+                }
+                else if (tag == RESTART) {
+                    // No payload
+                }
+                else if (tag == KEYFRAME) {
+                    int size = in.getInt();
+                    if (in.remaining() < size) {
+                        throw new BufferUnderflowException();  // Cut off mid-keyframe
+                    }
+                    in.position(in.position() + size);
+                    if (!indexed) {
+                        addKeyframe(tick, offset);
+                    }
+                }
+                else if (tag == END) {
+                    finalScore = in.getInt();
+                    finalLives = in.getInt();
+                    finished = true;
+                }
+                else {
+                    throw new IllegalArgumentException("Corrupt replay record at offset " + offset);
+                }
+                ticks = tick;
+                recordsEnd = in.position();
+                if (finished) {
+                    break;
+                }
+            }
+        }
+        catch (BufferUnderflowException e) {
+            if (indexed) {
+                throw e;
+            }
+            // Recording cut off mid-record: keep everything before it
+        }
+        if (keyframes == 0) {
+            throw new IllegalArgumentException("Replay has no keyframe");
+        }
+    }
+
+    private void addKeyframe(long tick, int offset) {
+        if (keyframes == keyframeAt.length) {
+            keyframeAt = Arrays.copyOf(keyframeAt, keyframes * 2);
+            keyframeOffset = Arrays.copyOf(keyframeOffset, keyframes * 2);
+        }
+        keyframeAt[keyframes] = tick;
+        keyframeOffset[keyframes] = offset;
+        keyframes++;
+    }
+
+    // ===================== SEEKING =====================
+    // A game positioned at the given tick (after that tick's move, before any later input)
+    // Costs one keyframe restore plus fewer than keyframeTicks simulated ticks
+    Player seek(long tick) {
+        tick = Math.max(0, Math.min(tick, ticks));
+        int low = 0, high = keyframes - 1;  // Binary search for the last keyframe at or before tick
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (keyframeAt[mid] <= tick) {
+                low = mid;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+
+        GameEngine game = new GameEngine(map, seed);
+        if (game.rowCount != rowCount || game.columnCount != columnCount || game.tileSize != tileSize) {
+            throw new IllegalStateException("Replay was recorded on a " + rowCount + "x" + columnCount + " map");
+        }
+        Player player = new Player(game, low);
+        player.advanceTo(tick);
+        return player;
+    }
+
+    // Plays the replay forward from a keyframe, one tick at a time
+    class Player {
+        final GameEngine game;
+        private final ByteBuffer in = data.duplicate();
+        long tick;                 // Ticks played (the game's position in the replay)
+        private long recordTick;   // Tick of the next unapplied record
+        private byte recordTag;    // Its tag (END once the records run out)
+
+        // Start at keyframe number keyframe
+        private Player(GameEngine game, int keyframe) {
+            this.game = game;
+            in.limit(recordsEnd).position(keyframeOffset[keyframe]);
+            in.get();                           // KEYFRAME tag
+            getVarint(in);                      // Its tick delta (the index has the absolute tick)
+            tick = keyframeAt[keyframe];
+            int size = in.getInt();
+            game.restoreState(in.slice(in.position(), size));
+            in.position(in.position() + size);
+            recordTick = tick;
+            readRecordHeader();
+        }
+
+        // Apply the inputs recorded before the next tick, then move it
+        // Returns false (and does nothing) at the end of the replay
+        boolean step() {
+            if (tick >= ticks) {
+                return false;
+            }
+            while (recordTick == tick) {
+                if (recordTag == INPUT) {
+                    game.input((char) in.get());
+                }
+                else if (recordTag == RESTART) {
+                    game.restart();
+                }
+                else if (recordTag == KEYFRAME) {
+                    int size = in.getInt();
+                    in.position(in.position() + size);  // Already at this state
+                }
+                else {
+                    break;  // END
+                }
+                readRecordHeader();
+            }
+            game.step(GameEngine.NO_INPUT);
+            tick++;
+            return true;
+        }
+
+        // Step until the game is at the given tick
+        // Ticks with no record before them are played in one GameEngine.advance() call
+        void advanceTo(long target) {
+            while (tick < target) {
+                long quiet = Math.min(Math.min(target, ticks), recordTick) - tick;
+                if (quiet > 0) {
+                    int n = (int) Math.min(quiet, Integer.MAX_VALUE);
+                    game.advance(n);
+                    tick += n;
+                }
+                else if (!step()) {
+                    break;
+                }
+            }
+        }
+
+        private void readRecordHeader() {
+            if (!in.hasRemaining()) {
+                recordTag = END;
+                recordTick = Long.MAX_VALUE;
+                return;
+            }
+            recordTag = in.get();
+            recordTick += getVarint(in);
+        }
+    }
+
+    // ===================== VARINTS =====================
+    // Unsigned LEB128: 7 bits per byte, high bit set on every byte but the last
+    static void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static long getVarint(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    // ===================== COMMAND LINE =====================
+    // Usage: java Replay <file> [tick]
+    // Re-simulates the whole replay and checks the final score, then times seeking
+    public static void main(String[] args) throws IOException {
+        Replay replay = open(Path.of(args[0]), TileMap.fromProperty());
+        System.out.printf("seed=%d ticks=%d (%.1f min at 20/s) keyframes=%d size=%d bytes%s%n",
+                replay.seed, replay.ticks, replay.ticks / 1200.0, replay.keyframes, replay.data.limit(),
+                replay.finished ? "" : " (not closed, index rebuilt)");
+
+        long start = System.nanoTime();
+        Player full = replay.seek(0);
+        full.advanceTo(replay.ticks);
+        double fullMillis = (System.nanoTime() - start) / 1e6;
+        if (replay.finished) {
+            boolean ok = full.game.score == replay.finalScore && full.game.lives == replay.finalLives;
+            System.out.printf("final score %d lives %d: %s%n", full.game.score, full.game.lives,
+                    ok ? "verified" : "MISMATCH (recorded score " + replay.finalScore + " lives " + replay.finalLives + ")");
+        }
+        System.out.printf("replay from tick 0: %.1f ms%n", fullMillis);
+
+        Histogram seekMicros = new Histogram();
+        for (int i = 0; i < 200; i++) {
+            long target = replay.ticks * i / 200;
+            long t0 = System.nanoTime();
+            replay.seek(target);
+            seekMicros.record((System.nanoTime() - t0) / 1000);
+        }
+        System.out.println("seek us: " + seekMicros.summary());
+
+        if (args.length > 1) {
+            Player at = replay.seek(Long.parseLong(args[1]));
+            GameEngine game = at.game;
+            System.out.printf("tick %d: score %d lives %d pellets left %d pacman (%d,%d) %s%n", at.tick,
+                    game.score, game.lives, game.pelletsRemaining, game.pacman.x, game.pacman.y,
+                    game.gameOver ? "game over" : "");
+        }
+    }
+}
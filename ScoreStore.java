@@ -0,0 +1,441 @@
+// Import NIO for the memory-mapped log
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;                // Log segments mapped into memory
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;                         // Growing the segment table
+import java.util.HashMap;                        // Per-player bests
+import java.util.List;
+import java.util.SplittableRandom;               // main(): random results
+import java.util.zip.CRC32;                      // Detects a record torn by a crash
+
+
+// Persistent results of finished games: an append-only log plus in-memory leaderboards
+// Every game that ends is one fixed-size record (time, player, seed, score, ticks played and
+// level) appended to a memory-mapped file. Two indexes are kept in memory and updated as each
+// record is added: the top TOP_K scores, and every player's best. Opening a log rebuilds them
+// by streaming it once. A record ends in a CRC, so a record torn by a crash is detected, and
+// the log continues from the last complete one.
+//
+// Appending only writes to mapped memory. The log is forced to disk in batches: after every
+// syncRecords records, and every syncMillis by a background thread, so a crash loses at most
+// that many results. Forcing happens outside the lock, so adds are never stalled by a disk flush.
+//
+// Record with:  java -Dpacman.scores=scores.log [-Dpacman.player=name] App    (or GameServer, per client address)
+// Benchmark:    java ScoreStore [results] [syncRecords,...]   (inserts/s per batch size, reopen time, query latency)
+//
+// File layout (big-endian): a RECORD_SIZE header (magic "PMSC", version, record size), then records
+//   time (epoch ms) long | seed long | score int | ticks int | level int | player 16 bytes UTF-8 | CRC32 int
+public class ScoreStore {
+    // ===================== FORMAT =====================
+    static final int MAGIC = 0x504D5343;              // "PMSC"
+    static final short VERSION = 1;
+    static final int PLAYER_BYTES = 16;               // Longer names are cut (on a character boundary)
+    static final int RECORD_SIZE = 8 + 8 + 3 * 4 + PLAYER_BYTES + 4;  // 48
+    static final int SEGMENT_RECORDS = 1 << 20;       // Records per mapped segment (48 MB)
+    static final long SEGMENT_BYTES = (long) SEGMENT_RECORDS * RECORD_SIZE;
+    static final int TOP_K = 1000;                    // Scores kept in the leaderboard index
+    static final int DEFAULT_SYNC_RECORDS = 1024;
+    static final long DEFAULT_SYNC_MILLIS = 200;
+
+    // One finished game
+    static final class Result {
+        long record;        // Position in the log
+        long time;          // When it ended, epoch milliseconds
+        String player;
+        long seed;          // The game's seed (its replay starts from it)
+        int score;
+        int ticks;          // Length of the game
+        int level;          // Level it ended on
+
+        @Override
+        public String toString() {
+            return String.format("#%d %s %d (seed %d, %d ticks, level %d)", record, player, score, seed, ticks, level);
+        }
+    }
+
+    // A player's best result and how many games they have finished
+    static final class PlayerBest {
+        int score;
+        long record;
+        long games;
+    }
+
+    // ===================== STATE =====================
+    final Path path;
+    private final FileChannel channel;
+    private MappedByteBuffer[] segments = new MappedByteBuffer[4];
+    private long records;                 // Records in the log (the next one goes at this position)
+    private long syncedRecords;           // Records known to be on disk
+    private final byte[] scratch = new byte[RECORD_SIZE];
+    private final ByteBuffer scratchBuffer = ByteBuffer.wrap(scratch);
+    private final CRC32 crc = new CRC32();
+    int syncRecords = DEFAULT_SYNC_RECORDS;
+    private final Thread syncThread;
+    private boolean closed = false;
+    long syncs;                           // Times sync() forced something (statistics)
+
+    // Leaderboard: the best TOP_K scores, highest first (equal scores in log order)
+    private final int[] topScores = new int[TOP_K];
+    private final long[] topRecords = new long[TOP_K];
+    private int topCount = 0;
+    private final HashMap<String, PlayerBest> bests = new HashMap<>();
+
+    // Open (or create) a log and rebuild the indexes from it
+    ScoreStore(Path path) throws IOException {
+        this(path, DEFAULT_SYNC_MILLIS);
+    }
+
+    ScoreStore(Path path, long syncMillis) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer first = segment(0);
+        if (first.getInt(0) == 0) {  // New file
+            first.putInt(0, MAGIC).putShort(4, VERSION).putShort(6, (short) RECORD_SIZE);
+            first.force(0, RECORD_SIZE);
+        }
+        else if (first.getInt(0) != MAGIC || first.getShort(4) != VERSION || first.getShort(6) != RECORD_SIZE) {
+            channel.close();
+            throw new IllegalArgumentException(path + " is not a results log");
+        }
+        rebuild();
+        syncThread = new Thread(() -> syncEvery(syncMillis), "pacman-score-sync");
+        syncThread.setDaemon(true);
+        syncThread.start();
+    }
+
+    // ===================== LOG =====================
+    // The mapped segment with this number, mapping it (and growing the file) the first time
+    private MappedByteBuffer segment(int number) throws IOException {
+        if (number >= segments.length) {
+            segments = Arrays.copyOf(segments, Math.max(number + 1, segments.length * 2));
+        }
+        if (segments[number] == null) {
+            segments[number] = channel.map(FileChannel.MapMode.READ_WRITE, number * SEGMENT_BYTES, SEGMENT_BYTES);
+        }
+        return segments[number];
+    }
+
+    // Record r sits one record (the header) further in, so it never straddles two segments
+    private static int segmentOf(long record) {
+        return (int) ((record + 1) / SEGMENT_RECORDS);
+    }
+
+    private static int offsetOf(long record) {
+        return (int) ((record + 1) % SEGMENT_RECORDS) * RECORD_SIZE;
+    }
+
+    // Stream the log once: index every complete record and stop at the first that is not
+    private void rebuild() throws IOException {
+        while (true) {
+            MappedByteBuffer segment = segment(segmentOf(records));
+            int offset = offsetOf(records);
+            segment.get(offset, scratch);
+            crc.reset();
+            crc.update(scratch, 0, RECORD_SIZE - 4);
+            if (scratchBuffer.getInt(RECORD_SIZE - 4) != (int) crc.getValue()) {
+                break;  // Never written (zeros), or torn
+            }
+            index(records, scratchBuffer.getInt(16), scratch);
+            records++;
+        }
+        syncedRecords = records;
+    }
+
+    // The log named by -Dpacman.scores (null = not recording results), closed when the JVM exits
+    static ScoreStore fromProperty() throws IOException {
+        String path = System.getProperty("pacman.scores");
+        if (path == null) {
+            return null;
+        }
+        ScoreStore store = new ScoreStore(Path.of(path));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                store.close();
+            }
+            catch (IOException e) {
+                System.err.println("Results log " + path + " not closed: " + e);
+            }
+        }));
+        return store;
+    }
+
+    // Name results are recorded under: -Dpacman.player, or the user's login
+    static String defaultPlayer() {
+        return System.getProperty("pacman.player", System.getProperty("user.name", "player"));
+    }
+
+    // Append a finished game from a game loop: an error is reported, not thrown (like a replay writer)
+    void record(String player, GameEngine game) {
+        try {
+            add(player, game);
+        }
+        catch (IOException e) {
+            System.err.println("Result not recorded in " + path + ": " + e);
+        }
+    }
+
+    // Append a finished game; returns its position in the log
+    long add(String player, GameEngine game) throws IOException {
+        return add(System.currentTimeMillis(), player, game.seed, game.score, game.ticksPlayed, game.level);
+    }
+
+    synchronized long add(long time, String player, long seed, int score, int ticks, int level) throws IOException {
+        if (closed) {
+            throw new IOException(path + " is closed");
+        }
+        scratchBuffer.putLong(0, time).putLong(8, seed).putInt(16, score).putInt(20, ticks).putInt(24, level);
+        byte[] name = player.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(name.length, PLAYER_BYTES);
+        while (length < name.length && (name[length] & 0xC0) == 0x80) {
+            length--;  // Do not cut a character in half
+        }
+        Arrays.fill(scratch, 28, 28 + PLAYER_BYTES, (byte) 0);
+        System.arraycopy(name, 0, scratch, 28, length);
+        crc.reset();
+        crc.update(scratch, 0, RECORD_SIZE - 4);
+        scratchBuffer.putInt(RECORD_SIZE - 4, (int) crc.getValue());
+
+        long record = records;
+        segment(segmentOf(record)).put(offsetOf(record), scratch);
+        records++;
+        index(record, score, scratch);
+        if (records - syncedRecords >= syncRecords) {
+            notifyAll();  // A full batch: the sync thread flushes it now
+        }
+        return record;
+    }
+
+    // ===================== DURABILITY =====================
+    // Force everything added so far to disk
+    void sync() throws IOException {
+        long from, to;
+        synchronized (this) {
+            from = syncedRecords;
+            to = records;
+        }
+        // Records in [from, to) are complete and no longer written to, so they can be forced
+        // while adds carry on (the mapped segments never change once mapped)
+        for (long r = from; r < to; ) {
+            int number = segmentOf(r);
+            long end = Math.min(to, (long) (number + 1) * SEGMENT_RECORDS - 1);
+            MappedByteBuffer segment;
+            synchronized (this) {
+                segment = segments[number];
+            }
+            segment.force(offsetOf(r), (int) (end - r) * RECORD_SIZE);
+            r = end;
+        }
+        synchronized (this) {
+            syncedRecords = Math.max(syncedRecords, to);
+            syncs += from < to ? 1 : 0;
+        }
+    }
+
+    // Sync thread: flush when a batch fills or syncMillis pass, whichever comes first
+    private void syncEvery(long millis) {
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (closed) {
+                        return;
+                    }
+                    if (records - syncedRecords < syncRecords) {
+                        wait(millis);
+                    }
+                }
+                sync();
+            }
+        }
+        catch (InterruptedException e) {
+            // Closing
+        }
+        catch (IOException e) {
+            System.err.println("Results log " + path + " could not be synced: " + e);
+        }
+    }
+
+    // Sync and close; later adds fail
+    // The sync thread is stopped first, so it is never forcing a segment when the channel closes
+    void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        syncThread.interrupt();
+        try {
+            syncThread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted closing " + path);
+        }
+        sync();
+        channel.close();
+    }
+
+    // ===================== INDEXES =====================
+    // Add one record to the leaderboard and its player's best
+    private void index(long record, int score, byte[] data) {
+        if (topCount < TOP_K || score > topScores[TOP_K - 1]) {
+            int low = 0, high = topCount;  // First rank with a lower score: equal scores keep log order
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (topScores[mid] >= score) {
+                    low = mid + 1;
+                }
+                else {
+                    high = mid;
+                }
+            }
+            int moved = Math.min(topCount, TOP_K - 1) - low;
+            System.arraycopy(topScores, low, topScores, low + 1, moved);
+            System.arraycopy(topRecords, low, topRecords, low + 1, moved);
+            topScores[low] = score;
+            topRecords[low] = record;
+            topCount = Math.min(topCount + 1, TOP_K);
+        }
+
+        String player = playerName(data);
+        PlayerBest best = bests.get(player);
+        if (best == null) {
+            best = new PlayerBest();
+            best.score = Integer.MIN_VALUE;
+            bests.put(player, best);
+        }
+        best.games++;
+        if (score > best.score) {
+            best.score = score;
+            best.record = record;
+        }
+    }
+
+    private static String playerName(byte[] data) {
+        int length = 0;
+        while (length < PLAYER_BYTES && data[28 + length] != 0) {
+            length++;
+        }
+        return new String(data, 28, length, StandardCharsets.UTF_8);
+    }
+
+    // ===================== QUERIES =====================
+    synchronized long size() {
+        return records;
+    }
+
+    // The n best results, highest first (at most TOP_K)
+    synchronized List<Result> top(int n) {
+        ArrayList<Result> results = new ArrayList<>();
+        for (int i = 0; i < Math.min(n, topCount); i++) {
+            results.add(read(topRecords[i]));
+        }
+        return results;
+    }
+
+    // Score at a leaderboard rank (0 = best), or -1 past the end
+    synchronized int topScore(int rank) {
+        return rank < topCount ? topScores[rank] : -1;
+    }
+
+    // A player's best, or null if they have no results
+    synchronized Result best(String player) {
+        PlayerBest best = bests.get(player);
+        return best == null ? null : read(best.record);
+    }
+
+    synchronized long games(String player) {
+        PlayerBest best = bests.get(player);
+        return best == null ? 0 : best.games;
+    }
+
+    synchronized int players() {
+        return bests.size();
+    }
+
+    // Read one record back from the log
+    synchronized Result read(long record) {
+        byte[] data = new byte[RECORD_SIZE];
+        segments[segmentOf(record)].get(offsetOf(record), data);
+        ByteBuffer in = ByteBuffer.wrap(data);
+        Result result = new Result();
+        result.record = record;
+        result.time = in.getLong(0);
+        result.seed = in.getLong(8);
+        result.score = in.getInt(16);
+        result.ticks = in.getInt(20);
+        result.level = in.getInt(24);
+        result.player = playerName(data);
+        return result;
+    }
+
+    // ===================== BENCHMARK =====================
+    // Usage: java ScoreStore [results] [syncRecords,...]
+    // Inserts results into a temporary log with each batch size, reopens it, and times queries
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        String[] batches = (args.length > 1 ? args[1] : "1,64,1024,65536").split(",");
+        int playerCount = 100_000;
+        String[] players = new String[playerCount];
+        for (int i = 0; i < playerCount; i++) {
+            players[i] = "player" + i;
+        }
+        SplittableRandom random = new SplittableRandom(42L);
+
+        for (String batch : batches) {
+            Path file = Files.createTempFile("pacman-scores", ".log");
+            int syncRecords = Integer.parseInt(batch.trim());
+            ScoreStore store = new ScoreStore(file);
+            store.syncRecords = syncRecords;
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                store.add(i, players[random.nextInt(playerCount)], random.nextLong(), random.nextInt(100_000),
+                        random.nextInt(20_000), 1 + random.nextInt(5));
+            }
+            store.close();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("sync every %6d records: %,d inserts in %.2f s = %,10.0f inserts/s, %,d syncs%n",
+                    syncRecords, count, seconds, count / seconds, store.syncs);
+            if (!batch.equals(batches[batches.length - 1])) {
+                Files.delete(file);
+                continue;
+            }
+
+            // Queries on the largest log
+            start = System.nanoTime();
+            store = new ScoreStore(file);
+            double rebuildMillis = (System.nanoTime() - start) / 1e6;
+            System.out.printf("reopen %,d records (%d MB), %,d players: %.0f ms%n",
+                    store.size(), Files.size(file) >> 20, store.players(), rebuildMillis);
+            Histogram top10 = new Histogram();
+            Histogram top100 = new Histogram();
+            Histogram playerBest = new Histogram();
+            for (int i = 0; i < 100_000; i++) {
+                long t0 = System.nanoTime();
+                store.top(10);
+                long t1 = System.nanoTime();
+                store.top(100);
+                long t2 = System.nanoTime();
+                store.best(players[random.nextInt(playerCount)]);
+                long t3 = System.nanoTime();
+                top10.record(t1 - t0);
+                top100.record(t2 - t1);
+                playerBest.record(t3 - t2);
+            }
+            System.out.println("top 10 ns      : " + top10.summary());
+            System.out.println("top 100 ns     : " + top100.summary());
+            System.out.println("player best ns : " + playerBest.summary());
+            System.out.println("best: " + store.top(1).get(0));
+            store.close();
+            Files.delete(file);
+        }
+    }
+}
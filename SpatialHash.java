@@ -0,0 +1,106 @@
+// Import only core Java libraries - collisions are part of the headless engine
+import java.util.Arrays;        // Clearing and growing the bucket arrays
+
+
+// Uniform-grid spatial hash for moving actors, so collision checks only look at nearby actors
+// The board is cut into CELL_SIZE x CELL_SIZE pixel cells, and each actor is filed under the
+// cell holding its top-left corner. Cells are hashed into a table of buckets sized for the
+// number of actors, not the board, so a 2001 x 2001 map costs no more than the built-in one.
+// Each bucket is a doubly linked list threaded through int arrays (actor ids are their index
+// in GameEngine.ghosts), so moving an actor to another bucket is constant time and nothing is
+// allocated once the table is big enough.
+//
+// A bucket may hold actors from several cells that hash alike; callers still check every
+// candidate with GameEngine.collision(), so that only costs time, never correctness.
+public class SpatialHash {
+    static final int CELL_SHIFT = 6;
+    static final int CELL_SIZE = 1 << CELL_SHIFT;   // 64 px: a 32 px actor touches at most 2 x 2 cells
+    static final int NONE = -1;
+
+    private int[] head = new int[0];    // First actor in each bucket, or NONE
+    private int[] next = new int[0];    // Next actor in the same bucket, or NONE
+    private int[] previous = new int[0]; // Previous actor in the same bucket, or NONE
+    private int[] bucketOf = new int[0]; // Bucket each actor is filed under, or NONE if not in the hash
+    private int mask;
+    int size;                           // Actors 0 .. size - 1 are in the hash
+
+    // ===================== UPDATES =====================
+    // Make room for ids 0 .. count - 1; if the table has to grow it starts out empty, and every
+    // actor must be filed again with update()
+    void reserve(int count) {
+        if (count <= bucketOf.length) {
+            return;
+        }
+        int capacity = Math.max(count, bucketOf.length * 2);
+        int buckets = Integer.highestOneBit(Math.max(capacity * 2 - 1, 8)) << 1;  // About two per actor
+        head = new int[buckets];
+        Arrays.fill(head, NONE);
+        mask = buckets - 1;
+        next = new int[capacity];
+        previous = new int[capacity];
+        bucketOf = new int[capacity];
+        Arrays.fill(bucketOf, NONE);
+        size = 0;
+    }
+
+    // File actor id (below the reserved count) at pixel (x, y); relinks it only if it moved to
+    // another bucket
+    void update(int id, int x, int y) {
+        int bucket = bucket(x >> CELL_SHIFT, y >> CELL_SHIFT);
+        int old = bucketOf[id];
+        if (old == bucket) {
+            return;  // Same bucket as last time: the usual case, actors move 8 px a tick
+        }
+        if (old != NONE) {
+            unlink(id, old);
+        }
+        next[id] = head[bucket];
+        previous[id] = NONE;
+        if (head[bucket] != NONE) {
+            previous[head[bucket]] = id;
+        }
+        head[bucket] = id;
+        bucketOf[id] = bucket;
+        size = Math.max(size, id + 1);
+    }
+
+    // Drop every actor with an id of count or more (ghosts removed from the end of the list)
+    void truncate(int count) {
+        for (int id = count; id < size; id++) {
+            if (bucketOf[id] != NONE) {
+                unlink(id, bucketOf[id]);
+                bucketOf[id] = NONE;
+            }
+        }
+        size = Math.min(size, count);
+    }
+
+    private void unlink(int id, int bucket) {
+        if (previous[id] != NONE) {
+            next[previous[id]] = next[id];
+        }
+        else {
+            head[bucket] = next[id];
+        }
+        if (next[id] != NONE) {
+            previous[next[id]] = previous[id];
+        }
+    }
+
+    // ===================== QUERIES =====================
+    // Bucket for a cell (cells may be negative for actors half way through a tunnel)
+    int bucket(int cellX, int cellY) {
+        int h = cellX * 0x9E3779B1 + cellY * 0x85EBCA77;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    // First actor filed under the same bucket as cell (cellX, cellY), or NONE
+    // Walk the rest with next(id); the hash must not change during the walk
+    int first(int cellX, int cellY) {
+        return head.length == 0 ? NONE : head[bucket(cellX, cellY)];
+    }
+
+    int next(int id) {
+        return next[id];
+    }
+}
@@ -0,0 +1,101 @@
+// Import image decoding and the display's preferred image format
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;  // Decoding runs while the window and engine are built
+import javax.imageio.ImageIO;
+
+
+// Every game sprite in one image, decoded once and scaled once
+// sprites.png holds the sprites side by side in CELL x CELL cells, in the order of the constants
+// below. The game decodes it on a background thread (preload(), called before the window and
+// engine are built). forTileSize() then scales it to the tile size into an image in the display's
+// own format, so draw() is an unscaled copy of one cell with no conversion.
+//
+// The separate sprite PNGs are the source art: after editing one, rebuild the atlas with
+//   java SpriteAtlas            (writes sprites.png next to them)
+public class SpriteAtlas {
+    // ===================== LAYOUT =====================
+    static final int WALL = 0;
+    static final int POWER_FOOD = 1;
+    static final int BLUE_GHOST = 2;
+    static final int ORANGE_GHOST = 3;
+    static final int PINK_GHOST = 4;
+    static final int RED_GHOST = 5;
+    static final int PACMAN_UP = 6;
+    static final int PACMAN_DOWN = 7;
+    static final int PACMAN_LEFT = 8;
+    static final int PACMAN_RIGHT = 9;
+    static final String[] SOURCES = {
+        "wall.png", "powerFood.png", "blueGhost.png", "orangeGhost.png", "pinkGhost.png", "redGhost.png",
+        "pacmanUp.png", "pacmanDown.png", "pacmanLeft.png", "pacmanRight.png"
+    };
+    static final int CELL = 16;               // Source sprites are 16 x 16 (power food 8 x 8, stored doubled)
+    static final String FILE = "sprites.png";
+
+    private static CompletableFuture<BufferedImage> decoded;  // Set by preload()
+
+    final int tileSize;
+    final BufferedImage image;                // SOURCES.length cells of tileSize x tileSize, in a row
+
+    private SpriteAtlas(BufferedImage source, int tileSize) {
+        this.tileSize = tileSize;
+        int width = SOURCES.length * tileSize;
+        image = GraphicsEnvironment.isHeadless()
+                ? new BufferedImage(width, tileSize, BufferedImage.TYPE_INT_ARGB_PRE)
+                : GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                        .getDefaultConfiguration().createCompatibleImage(width, tileSize, Transparency.TRANSLUCENT);
+        Graphics2D g = image.createGraphics();
+        g.drawImage(source, 0, 0, width, tileSize, null);  // The only scaling the sprites ever get
+        g.dispose();
+    }
+
+    // ===================== LOADING =====================
+    // Start decoding the atlas in the background (call as early as possible; calling again does nothing)
+    static synchronized void preload() {
+        if (decoded == null) {
+            decoded = CompletableFuture.supplyAsync(SpriteAtlas::decode);
+        }
+    }
+
+    // The atlas scaled for a tile size (waits for preload(), or decodes now if it was never called)
+    static SpriteAtlas forTileSize(int tileSize) {
+        preload();
+        return new SpriteAtlas(decoded.join(), tileSize);
+    }
+
+    private static BufferedImage decode() {
+        try {
+            return ImageIO.read(SpriteAtlas.class.getResource(FILE));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Cannot read " + FILE, e);
+        }
+    }
+
+    // ===================== DRAWING =====================
+    // Copy one sprite with its top-left corner at (x, y), unscaled
+    void draw(Graphics g, int sprite, int x, int y) {
+        int sx = sprite * tileSize;
+        g.drawImage(image, x, y, x + tileSize, y + tileSize, sx, 0, sx + tileSize, tileSize, null);
+    }
+
+    // ===================== PACKING =====================
+    // Rebuild sprites.png from the separate sprite files in the current directory
+    public static void main(String[] args) throws IOException {
+        BufferedImage atlas = new BufferedImage(SOURCES.length * CELL, CELL, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = atlas.createGraphics();
+        for (int i = 0; i < SOURCES.length; i++) {
+            BufferedImage sprite = ImageIO.read(new File(SOURCES[i]));
+            g.drawImage(sprite, i * CELL, 0, CELL, CELL, null);  // Nearest neighbour: 8 x 8 doubles exactly
+        }
+        g.dispose();
+        ImageIO.write(atlas, "png", new File(FILE));
+        System.out.println("Wrote " + FILE + " (" + atlas.getWidth() + " x " + atlas.getHeight() + ")");
+    }
+}
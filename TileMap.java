@@ -0,0 +1,257 @@
+// Import only core Java libraries - maps are part of the headless engine
+import java.io.BufferedReader;    // Map files are read one row at a time
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;          // Growing the chunk and spawn arrays
+
+
+// The board's tiles in chunked primitive storage
+// Tiles are one byte each (OPEN, WALL, FOOD or POWER), kept in CHUNK_SIZE x CHUNK_SIZE chunks.
+// A chunk that is all OPEN is not stored at all, and every chunk that is all WALL shares one
+// array, so solid rock and empty space cost nothing. Renderers visit only the chunks a viewport
+// touches. Actor start positions are kept as lists, not tiles. A TileMap never changes after
+// it is built, so games and snapshots share it by reference.
+//
+// Map text uses the same characters as DEFAULT, one line per row (every line the same length):
+// X = wall, O = empty space, ' ' = food, * = power food, P = pacman, b/o/p/r = ghosts
+// load() reads a file one line at a time straight into chunks, so huge maps never exist as text.
+public class TileMap {
+    // ===================== TILES =====================
+    public static final byte OPEN = 0;   // Walkable, nothing on it ('O' and actor starts)
+    public static final byte WALL = 1;
+    public static final byte FOOD = 2;
+    public static final byte POWER = 3;
+
+    static final int CHUNK_SHIFT = 5;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;   // 32 x 32 tiles per chunk
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final byte[] WALL_CHUNK = filledChunk(WALL);  // Shared by every solid chunk
+
+    // ===================== DEFAULT MAP =====================
+    // Abstraction: Game board defined using characters
+    // X = wall, O = empty space (outside play area), P = pac man starting position, ' ' = food, * = power food
+    // Ghosts: b = blue, o = orange, p = pink, r = red
+    static final String[] DEFAULT = {
+        "XXXXXXXXXXXXXXXXXXX",  // Row 0: Top border
+        "X        X        X",  // Row 1: Open space with center wall
+        "X XX XXX X XXX XX X",  // Row 2: Obstacle pattern
+        "X                 X",  // Row 3: Open corridor
+        "X XX X XXXXX X XX X",  // Row 4: More obstacles
+        "X    X       X    X",  // Row 5: Open space
+        "XXXX XXXX XXXX XXXX",  // Row 6: Wall before ghost house
+        "OOOX X       X XOOO",  // Row 7: Ghost house entrance
+        "XXXX X XXrXX X XXXX",  // Row 8: Ghost house with red ghost
+        "X      bpo        X",  // Row 9: Center row with 3 ghosts (blue, pink, orange)
+        "XXXX X XXXXX X XXXX",  // Row 10: Ghost house exit
+        "OOOX X       X XOOO",  // Row 11: Below ghost house
+        "XXXX X XXXXX X XXXX",  // Row 12: More walls
+        "X        X        X",  // Row 13: Open space
+        "X XX XXX X XXX XX X",  // Row 14: Obstacle pattern
+        "X  X     P     X  X",  // Row 15: Pacman starting position (P)
+        "XX X X XXXXX X X XX",  // Row 16: Complex obstacles
+        "X    X   X   X    X",  // Row 17: Open corridors
+        "X XXXXXX X XXXXXX X",  // Row 18: Large wall sections
+        "X                 X",  // Row 19: Bottom corridor
+        "XXXXXXXXXXXXXXXXXXX"   // Row 20: Bottom border
+    };
+    private static final TileMap DEFAULT_MAP = parse(DEFAULT);
+
+    // ===================== STORAGE =====================
+    int rowCount;
+    final int columnCount;
+    int chunkRows;                 // Chunks down (the last row of chunks may be partly used)
+    final int chunkColumns;        // Chunks across
+    private byte[][] chunks;       // chunks[chunkRow * chunkColumns + chunkColumn], null = all OPEN
+
+    // Actor starts, in map order (row by row, left to right)
+    int pacmanRow = -1, pacmanColumn = -1;
+    int ghostCount = 0;
+    char[] ghostTypes = new char[4];
+    int[] ghostRows = new int[4];
+    int[] ghostColumns = new int[4];
+
+    private TileMap(int columnCount) {
+        this.columnCount = columnCount;
+        this.chunkColumns = (columnCount + CHUNK_MASK) >>> CHUNK_SHIFT;
+        this.chunks = new byte[0][];
+    }
+
+    // ===================== LOADING =====================
+    // The built-in map
+    static TileMap classic() {
+        return DEFAULT_MAP;
+    }
+
+    // The map named by -Dpacman.map=<file>, or the built-in one
+    static TileMap fromProperty() throws IOException {
+        String path = System.getProperty("pacman.map");
+        return path != null ? load(Path.of(path)) : classic();
+    }
+
+    // Read a map file row by row into chunks
+    static TileMap load(Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            TileMap map = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() && map != null) {
+                    break;  // Trailing blank lines
+                }
+                if (map == null) {
+                    map = new TileMap(line.length());
+                }
+                map.addRow(line);
+            }
+            if (map == null) {
+                throw new IllegalArgumentException(path + " is empty");
+            }
+            return map.finish();
+        }
+    }
+
+    // Build a map from rows of map text
+    static TileMap parse(String... rows) {
+        TileMap map = new TileMap(rows[0].length());
+        for (String row : rows) {
+            map.addRow(row);
+        }
+        return map.finish();
+    }
+
+    // Append one row of map text
+    private void addRow(String row) {
+        if (row.length() != columnCount) {
+            throw new IllegalArgumentException("Map row " + rowCount + " has " + row.length()
+                    + " tiles, expected " + columnCount);
+        }
+        int r = rowCount++;
+        if ((r & CHUNK_MASK) == 0) {  // First row of a new row of chunks
+            if (r > 0) {
+                shareUniformChunks(chunkRows - 1);
+            }
+            chunkRows++;
+            chunks = Arrays.copyOf(chunks, chunkRows * chunkColumns);
+        }
+        for (int c = 0; c < columnCount; c++) {
+            char ch = row.charAt(c);
+            byte tile;
+            if (ch == 'X') {
+                tile = WALL;
+            }
+            else if (ch == ' ') {
+                tile = FOOD;
+            }
+            else if (ch == '*') {
+                tile = POWER;
+            }
+            else if (ch == 'O') {
+                tile = OPEN;
+            }
+            else if (ch == 'P') {
+                if (pacmanRow >= 0) {
+                    throw new IllegalArgumentException("Second pacman at row " + r + " column " + c);
+                }
+                pacmanRow = r;
+                pacmanColumn = c;
+                tile = OPEN;
+            }
+            else if (ch == 'b' || ch == 'o' || ch == 'p' || ch == 'r') {
+                addGhost(ch, r, c);
+                tile = OPEN;
+            }
+            else {
+                throw new IllegalArgumentException("Unknown map character '" + ch + "' at row " + r + " column " + c);
+            }
+            if (tile != OPEN) {
+                int index = (r >>> CHUNK_SHIFT) * chunkColumns + (c >>> CHUNK_SHIFT);
+                if (chunks[index] == null) {
+                    chunks[index] = new byte[CHUNK_SIZE * CHUNK_SIZE];
+                }
+                chunks[index][((r & CHUNK_MASK) << CHUNK_SHIFT) | (c & CHUNK_MASK)] = tile;
+            }
+        }
+    }
+
+    private void addGhost(char type, int row, int column) {
+        if (ghostCount == ghostTypes.length) {
+            ghostTypes = Arrays.copyOf(ghostTypes, ghostCount * 2);
+            ghostRows = Arrays.copyOf(ghostRows, ghostCount * 2);
+            ghostColumns = Arrays.copyOf(ghostColumns, ghostCount * 2);
+        }
+        ghostTypes[ghostCount] = type;
+        ghostRows[ghostCount] = row;
+        ghostColumns[ghostCount] = column;
+        ghostCount++;
+    }
+
+    // Last row read: check the map is playable and compact the final chunks
+    private TileMap finish() {
+        if (pacmanRow < 0) {
+            throw new IllegalArgumentException("Map has no pacman start (P)");
+        }
+        shareUniformChunks(chunkRows - 1);
+        return this;
+    }
+
+    // Replace the solid chunks in one row of chunks with the shared WALL_CHUNK
+    private void shareUniformChunks(int chunkRow) {
+        for (int cc = 0; cc < chunkColumns; cc++) {
+            byte[] chunk = chunks[chunkRow * chunkColumns + cc];
+            if (chunk != null && isSolid(chunk, chunkRow, cc)) {
+                chunks[chunkRow * chunkColumns + cc] = WALL_CHUNK;
+            }
+        }
+    }
+
+    private boolean isSolid(byte[] chunk, int chunkRow, int chunkColumn) {
+        if (rowCount - (chunkRow << CHUNK_SHIFT) < CHUNK_SIZE || columnCount - (chunkColumn << CHUNK_SHIFT) < CHUNK_SIZE) {
+            return false;  // Edge chunks keep their own array
+        }
+        for (byte tile : chunk) {
+            if (tile != WALL) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] filledChunk(byte tile) {
+        byte[] chunk = new byte[CHUNK_SIZE * CHUNK_SIZE];
+        Arrays.fill(chunk, tile);
+        return chunk;
+    }
+
+    // ===================== QUERIES =====================
+    // Tile at (row, column); tiles outside the board are OPEN, like before
+    public byte tile(int row, int column) {
+        if (row < 0 || row >= rowCount || column < 0 || column >= columnCount) {
+            return OPEN;
+        }
+        byte[] chunk = chunks[(row >>> CHUNK_SHIFT) * chunkColumns + (column >>> CHUNK_SHIFT)];
+        return chunk == null ? OPEN : chunk[((row & CHUNK_MASK) << CHUNK_SHIFT) | (column & CHUNK_MASK)];
+    }
+
+    public boolean isWall(int row, int column) {
+        return tile(row, column) == WALL;
+    }
+
+    // The tiles of one chunk (index (row & CHUNK_MASK) << CHUNK_SHIFT | (column & CHUNK_MASK)),
+    // or null if every tile in it is OPEN. Do not modify.
+    byte[] chunk(int chunkRow, int chunkColumn) {
+        return chunks[chunkRow * chunkColumns + chunkColumn];
+    }
+
+    public int tileCount() {
+        return rowCount * columnCount;
+    }
+
+    // Chunks that hold their own array (not empty, not the shared solid one)
+    int storedChunks() {
+        int stored = 0;
+        for (byte[] chunk : chunks) {
+            stored += chunk != null && chunk != WALL_CHUNK ? 1 : 0;
+        }
+        return stored;
+    }
+}
@@ -0,0 +1,662 @@
+// Import direct buffers: observations live outside the heap, where a trainer can read them in place
+import java.lang.management.ManagementFactory;  // Allocation check in main()
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;              // main(): random actions
+
+
+// Vectorized environment for reinforcement-learning training: many games stepped in lock-step
+// step(actions) advances every game one tick with its own action and fills rewards, done and
+// truncated, which are plain arrays indexed by game. Observations are one direct FloatBuffer
+// that is reused for the life of the environment, laid out [game][channel][row][column], with
+// 1.0 where a channel has something on a tile: walls, food, power food, ghosts and pacman
+// (the ghost channel counts the ghosts on a tile).
+// A game that ends (game over, or maxEpisodeTicks) is restarted in the same step, so the
+// observations always show a game in progress; finalScore[i] keeps the score it ended with.
+//
+// The games follow GameEngine's rules exactly (the default chasing ghosts): game i plays as
+// new GameEngine(map, BatchRunner.gameSeed(seed, i)) would with the same inputs, restarted
+// on game over. Their state is a struct of arrays: every actor field is an int[] with one
+// entry per game, pacman first and then each ghost slot, so each phase of a tick is a loop
+// over all games. The pure arithmetic ones (moving, overlap tests, rewards, the tile under each
+// actor) run on the Vector API in VectorEnvKernels when jdk.incubator.vector is added to the
+// JVM, and as plain loops when it is not (or simd is cleared). The lookups (walls, ghost
+// navigation, pellets) go game by game. Nothing is allocated per step, and observations are
+// updated in place: only tiles that changed.
+//
+// Maps must be small enough for NavGraph's distance table (the classic map and its like).
+//
+// Usage: java --add-modules jdk.incubator.vector VectorEnv [maxGames] [seconds]
+//        (measures steps per second for 1, 4, 16 ... maxGames)
+public class VectorEnv {
+    // ===================== SETTINGS =====================
+    // Actions are indices into GameEngine.directions (U, D, L, R), or NOOP for no key
+    static final int NOOP = 4;
+    static final int ACTIONS = 5;
+
+    // Observation channels
+    static final int WALL_CHANNEL = 0;
+    static final int FOOD_CHANNEL = 1;
+    static final int POWER_CHANNEL = 2;
+    static final int GHOST_CHANNEL = 3;
+    static final int PACMAN_CHANNEL = 4;
+    static final int CHANNELS = 5;
+
+    static final float DEATH_PENALTY = 500;      // Reward lost per life, in points (a power pellet is 50)
+    static final int TILE_SHIFT = 5;              // GameEngine's 32 px tiles
+    static final int TILE = 1 << TILE_SHIFT;
+    static final int SPEED = TILE / 4;            // Pixels per tick, as Block.updateVelocity()
+    static final int[] STEP_X = {0, 0, -SPEED, SPEED};
+    static final int[] STEP_Y = {-SPEED, SPEED, 0, 0};
+    static final int UP = 0;                      // Direction of a freshly spawned actor
+    static final int WALL_BORDER = 2;             // Tiles an actor can overshoot an edge by (a turn, then a move)
+    static final boolean VECTOR_API = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    // ===================== MAP =====================
+    final int games;
+    final int ghostCount;
+    final int actors;                 // Pacman plus ghosts
+    final int rowCount;
+    final int columnCount;
+    final int tiles;                  // rowCount * columnCount
+    final int boardWidth;
+    final int boardHeight;
+    final NavGraph nav;
+    final boolean[] walls;            // Walls with a border that repeats the far edge, (rowCount + 4) x (columnCount + 4)
+    final int wallStride;
+    final int words;                  // Longs per pellet bitset
+    final long[] pelletTemplate;
+    final long[] powerTemplate;
+    final int pelletTemplateCount;
+    final float[] pelletChannels;     // The food and power channels at the start of a level
+    final int[] startX;               // Per actor: pacman, then each ghost
+    final int[] startY;
+    final char[] ghostTypes;
+    final int[] cornerTargets;        // Each ghost's scatter tile
+    final int redSlot;                // First red ghost (blue's pivot), or -1
+
+    // ===================== GAMES =====================
+    // Actor a of game i is entry a * games + i: pacman is 0 .. games - 1, ghost g is (g + 1) * games + i
+    final int[] x;
+    final int[] y;
+    final int[] velocityX;
+    final int[] velocityY;
+    final int[] direction;            // Index into GameEngine.directions
+    final long[] randomState;         // Each game's GameRandom, as a state
+    final int[] score;
+    final int[] lives;
+    final int[] pelletsRemaining;
+    final int[] ghostModeTick;
+    final boolean[] scatter;
+    final long[] pellets;             // Game i's bitset is words i * words .. (i + 1) * words - 1
+    final long[] powerPellets;
+    final int[] episodeTicks;
+    int maxEpisodeTicks = 0;          // Truncate episodes after this many ticks (0 = never)
+    boolean simd = VECTOR_API;        // Run the arithmetic phases in VectorEnvKernels
+
+    // Scratch for one step
+    private final int[] startScore;
+    private final int[] startLives;
+    private final int[] touching;     // Lowest ghost slot touching pacman, or -1
+    private final int[] playing;      // -1 while the game plays on this step, 0 once it lost its last life
+
+    // ===================== RESULTS =====================
+    final float[] rewards;            // Points scored this step, less DEATH_PENALTY per life lost
+    final boolean[] done;             // The episode ended this step (the game has been restarted)
+    final boolean[] truncated;        // ... because of maxEpisodeTicks rather than game over
+    final int[] finalScore;           // Score of the episode that ended, where done
+    final ByteBuffer observationBytes;
+    final FloatBuffer observations;   // The same memory as floats
+    private final int[] markedTile;   // Tile each actor is marked on in the observations
+    private final int[] actorTile;    // Tile under each actor's centre, after this step
+
+    // Games on a map, game i seeded like BatchRunner's game i
+    VectorEnv(TileMap map, int games, long seed) {
+        GameEngine template = new GameEngine(map, seed);  // Compiled pellets, actor starts and navigation
+        if (!template.nav.hasDistanceTable()) {
+            throw new IllegalArgumentException("Map is too large for VectorEnv (more than "
+                    + NavGraph.MAX_TABLE_TILES + " walkable tiles)");
+        }
+        long observationFloats = (long) games * CHANNELS * map.rowCount * map.columnCount;
+        if (observationFloats > Integer.MAX_VALUE / Float.BYTES) {
+            throw new IllegalArgumentException(games + " games do not fit in one observation buffer");
+        }
+        this.games = games;
+        this.ghostCount = template.mapGhostCount;
+        this.actors = ghostCount + 1;
+        this.rowCount = map.rowCount;
+        this.columnCount = map.columnCount;
+        this.tiles = rowCount * columnCount;
+        this.boardWidth = template.boardWidth;
+        this.boardHeight = template.boardHeight;
+        this.nav = template.nav;
+        this.wallStride = columnCount + 2 * WALL_BORDER;
+        this.walls = new boolean[(rowCount + 2 * WALL_BORDER) * wallStride];
+        for (int r = -WALL_BORDER; r < rowCount + WALL_BORDER; r++) {  // The border repeats the far edge:
+            for (int c = -WALL_BORDER; c < columnCount + WALL_BORDER; c++) {  // tunnels as in GameEngine
+                walls[(r + WALL_BORDER) * wallStride + c + WALL_BORDER]
+                        = map.isWall(Math.floorMod(r, rowCount), Math.floorMod(c, columnCount));
+            }
+        }
+        this.words = template.pellets.length;
+        this.pelletTemplate = template.pelletTemplate;
+        this.powerTemplate = template.powerTemplate;
+        this.pelletTemplateCount = template.pelletTemplateCount;
+        this.pelletChannels = new float[2 * tiles];  // FOOD_CHANNEL, then POWER_CHANNEL
+        for (int tile = 0; tile < tiles; tile++) {
+            pelletChannels[tile] = template.hasPellet(tile) ? 1f : 0f;
+            pelletChannels[tiles + tile] = template.hasPowerPellet(tile) ? 1f : 0f;
+        }
+
+        startX = new int[actors];
+        startY = new int[actors];
+        ghostTypes = new char[ghostCount];
+        cornerTargets = new int[ghostCount];
+        startX[0] = template.pacman.startX;
+        startY[0] = template.pacman.startY;
+        int red = -1;
+        for (int g = 0; g < ghostCount; g++) {
+            GameEngine.Block ghost = template.ghosts.get(g);
+            startX[g + 1] = ghost.startX;
+            startY[g + 1] = ghost.startY;
+            ghostTypes[g] = ghost.type;
+            int cornerRow = ghost.type == 'r' || ghost.type == 'p' ? 0 : rowCount - 1;
+            int cornerColumn = ghost.type == 'r' || ghost.type == 'b' ? columnCount - 1 : 0;
+            cornerTargets[g] = nav.targetTile(cornerRow, cornerColumn);
+            if (red < 0 && ghost.type == 'r') {
+                red = g;
+            }
+        }
+        redSlot = red;
+
+        x = new int[actors * games];
+        y = new int[actors * games];
+        velocityX = new int[actors * games];
+        velocityY = new int[actors * games];
+        direction = new int[actors * games];
+        markedTile = new int[actors * games];
+        Arrays.fill(markedTile, -1);  // Nothing marked yet
+        actorTile = new int[actors * games];
+        randomState = new long[games];
+        score = new int[games];
+        lives = new int[games];
+        pelletsRemaining = new int[games];
+        ghostModeTick = new int[games];
+        scatter = new boolean[games];
+        pellets = new long[games * words];
+        powerPellets = new long[games * words];
+        episodeTicks = new int[games];
+        startScore = new int[games];
+        startLives = new int[games];
+        touching = new int[games];
+        playing = new int[games];
+        rewards = new float[games];
+        done = new boolean[games];
+        truncated = new boolean[games];
+        finalScore = new int[games];
+        observationBytes = ByteBuffer.allocateDirect((int) observationFloats * Float.BYTES).order(ByteOrder.nativeOrder());
+        observations = observationBytes.asFloatBuffer();
+
+        // Start every game as the GameEngine constructor does
+        for (int i = 0; i < games; i++) {
+            randomState[i] = BatchRunner.gameSeed(seed, i);
+            lives[i] = GameEngine.STARTING_LIVES;
+            loadLevel(i);
+            for (int a = 1; a < actors; a++) {
+                turn(a * games + i, randomDirection(i));
+            }
+            int base = i * CHANNELS * tiles + WALL_CHANNEL * tiles;
+            for (int tile = 0; tile < tiles; tile++) {
+                int wall = (tile / columnCount + WALL_BORDER) * wallStride + tile % columnCount + WALL_BORDER;
+                observations.put(base + tile, walls[wall] ? 1f : 0f);
+            }
+        }
+        markActors();
+    }
+
+    // ===================== STEPPING =====================
+    // Advance every game one tick; actions[i] is game i's action (0-3 = U/D/L/R, or NOOP)
+    // The phases run in the order GameEngine.step() does them, each across every game
+    void step(int[] actions) {
+        for (int i = 0; i < games; i++) {
+            startScore[i] = score[i];
+            startLives[i] = lives[i];
+            playing[i] = -1;
+            if (actions[i] != NOOP) {
+                turn(i, actions[i]);  // GameEngine.input()
+            }
+        }
+
+        // Pacman moves (every game is playing so far), and stops at walls
+        move(0);
+        for (int i = 0; i < games; i++) {
+            if (hitsWall(x[i], y[i])) {
+                x[i] -= velocityX[i];
+                y[i] -= velocityY[i];
+            }
+            wrapThroughTunnel(i);
+        }
+        for (int i = 0; i < games; i++) {
+            updateGhostMode(i);
+        }
+
+        // Which ghost pacman touches, from positions before any ghost moves (lowest slot wins)
+        for (int i = 0; i < games; i++) {
+            touching[i] = -1;
+        }
+        for (int g = ghostCount - 1; g >= 0; g--) {
+            touch(g);
+        }
+
+        // Ghosts slot by slot, so within a game they still move in order (blue reads red's new position)
+        // A game that ends at ghost g stops there: its playing mask keeps later ghosts still
+        for (int g = 0; g < ghostCount; g++) {
+            int ghost = (g + 1) * games;
+            for (int i = 0; i < games; i++) {
+                if (touching[i] == g && playing[i] != 0) {
+                    loseLife(i, g);
+                }
+                if (playing[i] != 0 && x[ghost + i] % TILE == 0 && y[ghost + i] % TILE == 0) {
+                    chooseDirection(i, g);
+                }
+            }
+            move(ghost);
+            for (int i = 0; i < games; i++) {
+                if (playing[i] != 0) {
+                    stopGhostAtWall(ghost + i, i);
+                }
+            }
+        }
+
+        for (int i = 0; i < games; i++) {
+            if (playing[i] != 0) {
+                eatPellets(i);
+                if (pelletsRemaining[i] == 0) {  // Level cleared
+                    loadLevel(i);
+                    resetPositions(i);
+                }
+            }
+        }
+        computeRewards();
+        for (int i = 0; i < games; i++) {
+            finishStep(i);
+        }
+        markActors();
+    }
+
+    // Episode ends for one game
+    private void finishStep(int i) {
+        episodeTicks[i]++;
+        boolean gameOver = playing[i] == 0;
+        truncated[i] = !gameOver && maxEpisodeTicks > 0 && episodeTicks[i] >= maxEpisodeTicks;
+        done[i] = gameOver || truncated[i];
+        if (done[i]) {
+            finalScore[i] = score[i];
+            restart(i);
+        }
+    }
+
+    // Restart one game (GameEngine.restart(): its random numbers carry on)
+    void restart(int i) {
+        loadLevel(i);
+        resetPositions(i);
+        lives[i] = GameEngine.STARTING_LIVES;
+        score[i] = 0;
+        episodeTicks[i] = 0;
+    }
+
+    // ===================== ARITHMETIC PHASES =====================
+    // Each runs across every game, on the Vector API when simd is set
+
+    // Move actor slot offset from of every game still playing (velocity & playing: -1 moves, 0 holds)
+    private void move(int from) {
+        if (simd) {
+            VectorEnvKernels.move(x, velocityX, from, playing, games);
+            VectorEnvKernels.move(y, velocityY, from, playing, games);
+            return;
+        }
+        for (int i = 0; i < games; i++) {
+            x[from + i] += velocityX[from + i] & playing[i];
+            y[from + i] += velocityY[from + i] & playing[i];
+        }
+    }
+
+    // Games where ghost slot g overlaps pacman record g as touching
+    private void touch(int g) {
+        int ghost = (g + 1) * games;
+        if (simd) {
+            VectorEnvKernels.touch(x, y, ghost, g, touching, games);
+            return;
+        }
+        for (int i = 0; i < games; i++) {
+            boolean hit = Math.abs(x[ghost + i] - x[i]) < TILE & Math.abs(y[ghost + i] - y[i]) < TILE;
+            touching[i] = hit ? g : touching[i];
+        }
+    }
+
+    // Points scored this step, less DEATH_PENALTY per life lost
+    private void computeRewards() {
+        if (simd) {
+            VectorEnvKernels.rewards(score, startScore, lives, startLives, rewards, games);
+            return;
+        }
+        for (int i = 0; i < games; i++) {
+            rewards[i] = score[i] - startScore[i] - DEATH_PENALTY * (startLives[i] - lives[i]);
+        }
+    }
+
+    // ===================== GAME RULES =====================
+    // Turn an actor if the new direction is open (Block.updateDirection())
+    private void turn(int k, int newDirection) {
+        int previous = direction[k];
+        direction[k] = newDirection;
+        velocityX[k] = STEP_X[newDirection];
+        velocityY[k] = STEP_Y[newDirection];
+        x[k] += velocityX[k];
+        y[k] += velocityY[k];
+        if (hitsWall(x[k], y[k])) {
+            x[k] -= velocityX[k];
+            y[k] -= velocityY[k];
+            direction[k] = previous;
+            velocityX[k] = STEP_X[previous];
+            velocityY[k] = STEP_Y[previous];
+        }
+    }
+
+    // Does a tile-sized block at (x, y) overlap a wall? It covers at most 2 x 2 tiles
+    private boolean hitsWall(int x, int y) {
+        int top = ((y >> TILE_SHIFT) + WALL_BORDER) * wallStride;
+        int bottom = (((y + TILE - 1) >> TILE_SHIFT) + WALL_BORDER) * wallStride;
+        int left = (x >> TILE_SHIFT) + WALL_BORDER;
+        int right = ((x + TILE - 1) >> TILE_SHIFT) + WALL_BORDER;
+        return walls[top + left] | walls[top + right] | walls[bottom + left] | walls[bottom + right];
+    }
+
+    private void wrapThroughTunnel(int k) {
+        if (x[k] <= -TILE) {
+            x[k] += boardWidth;
+        }
+        else if (x[k] >= boardWidth) {
+            x[k] -= boardWidth;
+        }
+        if (y[k] <= -TILE) {
+            y[k] += boardHeight;
+        }
+        else if (y[k] >= boardHeight) {
+            y[k] -= boardHeight;
+        }
+    }
+
+    // Scatter/chase schedule; ghosts turn around whenever the mode flips
+    private void updateGhostMode(int i) {
+        ghostModeTick[i]++;
+        int end = 0;
+        boolean nowScatter = false;
+        for (int m = 0; m < GameEngine.GHOST_MODE_TICKS.length; m++) {
+            end += GameEngine.GHOST_MODE_TICKS[m];
+            if (ghostModeTick[i] < end) {
+                nowScatter = m % 2 == 0;
+                break;
+            }
+        }
+        if (nowScatter != scatter[i]) {
+            scatter[i] = nowScatter;
+            for (int a = 1; a < actors; a++) {
+                int k = a * games + i;
+                direction[k] ^= 1;
+                velocityX[k] = STEP_X[direction[k]];
+                velocityY[k] = STEP_Y[direction[k]];
+            }
+        }
+    }
+
+    // Pacman was caught by ghost slot g: lose a life, and either end the game or start over
+    private void loseLife(int i, int g) {
+        lives[i]--;
+        if (lives[i] == 0) {
+            playing[i] = 0;
+            return;
+        }
+        resetPositions(i);
+        touching[i] = -1;
+        for (int later = g + 1; later < ghostCount && touching[i] < 0; later++) {
+            int k = (later + 1) * games + i;
+            if (Math.abs(x[k] - x[i]) < TILE && Math.abs(y[k] - y[i]) < TILE) {
+                touching[i] = later;
+            }
+        }
+    }
+
+    // GameEngine.chaseGhost(), on a tile centre: take the exit with the shortest path to the target
+    private void chooseDirection(int i, int g) {
+        int k = (g + 1) * games + i;
+        int tile = (y[k] / TILE) * columnCount + x[k] / TILE;
+        int reverse = direction[k] ^ 1;
+        int next = nav.isJunction(tile)
+                ? nav.bestDirection(tile, reverse, ghostTarget(i, g))
+                : nav.corridorDirection(tile, reverse);
+        direction[k] = next;
+        velocityX[k] = STEP_X[next];
+        velocityY[k] = STEP_Y[next];
+    }
+
+    // The rest of chaseGhost() after the move: back off a wall (only ghosts off the tile lattice
+    // can hit one) and come through tunnels
+    private void stopGhostAtWall(int k, int i) {
+        if (hitsWall(x[k], y[k])) {
+            x[k] -= velocityX[k];
+            y[k] -= velocityY[k];
+            turn(k, randomDirection(i));
+        }
+        wrapThroughTunnel(k);
+    }
+
+    // GameEngine.ghostTarget()
+    private int ghostTarget(int i, int g) {
+        if (scatter[i]) {
+            return cornerTargets[g];
+        }
+        int pacmanRow = (y[i] + TILE / 2) / TILE;
+        int pacmanColumn = (x[i] + TILE / 2) / TILE;
+        int aheadRow = NavGraph.ROW_STEP[direction[i]];
+        int aheadColumn = NavGraph.COLUMN_STEP[direction[i]];
+        char type = ghostTypes[g];
+        if (type == 'p') {
+            return nav.targetTile(pacmanRow + 4 * aheadRow, pacmanColumn + 4 * aheadColumn);
+        }
+        else if (type == 'b') {
+            int pivotRow = pacmanRow + 2 * aheadRow;
+            int pivotColumn = pacmanColumn + 2 * aheadColumn;
+            int red = (redSlot + 1) * games + i;
+            int redRow = redSlot >= 0 ? (y[red] + TILE / 2) / TILE : pivotRow;
+            int redColumn = redSlot >= 0 ? (x[red] + TILE / 2) / TILE : pivotColumn;
+            return nav.targetTile(2 * pivotRow - redRow, 2 * pivotColumn - redColumn);
+        }
+        else if (type == 'o') {
+            int k = (g + 1) * games + i;
+            int here = nav.targetTile((y[k] + TILE / 2) / TILE, (x[k] + TILE / 2) / TILE);
+            int target = nav.targetTile(pacmanRow, pacmanColumn);
+            return nav.distance(here, target) > 8 ? target : cornerTargets[g];
+        }
+        return nav.targetTile(pacmanRow, pacmanColumn);
+    }
+
+    // Eat every pellet pacman touches (GameEngine.eatPellets()), clearing it from the observations
+    private void eatPellets(int i) {
+        int firstCol = Math.max(x[i] >> TILE_SHIFT, 0);
+        int lastCol = Math.min((x[i] + TILE - 1) >> TILE_SHIFT, columnCount - 1);
+        int firstRow = Math.max(y[i] >> TILE_SHIFT, 0);
+        int lastRow = Math.min((y[i] + TILE - 1) >> TILE_SHIFT, rowCount - 1);
+        int base = i * CHANNELS * tiles;
+        for (int r = firstRow; r <= lastRow; r++) {
+            for (int c = firstCol; c <= lastCol; c++) {
+                int tile = r * columnCount + c;
+                int word = i * words + (tile >>> 6);
+                long bit = 1L << tile;
+                if ((pellets[word] & bit) != 0 && touches(i, r, c, GameEngine.FOOD_OFFSET, GameEngine.FOOD_SIZE)) {
+                    pellets[word] &= ~bit;
+                    score[i] += GameEngine.FOOD_SCORE;
+                    pelletsRemaining[i]--;
+                    observations.put(base + FOOD_CHANNEL * tiles + tile, 0f);
+                }
+                if ((powerPellets[word] & bit) != 0 && touches(i, r, c, GameEngine.POWER_OFFSET, GameEngine.POWER_SIZE)) {
+                    powerPellets[word] &= ~bit;
+                    score[i] += GameEngine.POWER_SCORE;
+                    pelletsRemaining[i]--;
+                    observations.put(base + POWER_CHANNEL * tiles + tile, 0f);
+                }
+            }
+        }
+    }
+
+    // Does pacman overlap the square of the given size centred in tile (r, c)?
+    private boolean touches(int i, int r, int c, int offset, int size) {
+        int left = c * TILE + offset;
+        int top = r * TILE + offset;
+        return x[i] < left + size && x[i] + TILE > left && y[i] < top + size && y[i] + TILE > top;
+    }
+
+    // GameEngine.loadMap(): refill the pellets (and their channels) and respawn every actor
+    private void loadLevel(int i) {
+        ghostModeTick[i] = 0;
+        scatter[i] = true;
+        System.arraycopy(pelletTemplate, 0, pellets, i * words, words);
+        System.arraycopy(powerTemplate, 0, powerPellets, i * words, words);
+        pelletsRemaining[i] = pelletTemplateCount;
+        for (int a = 0; a < actors; a++) {
+            int k = a * games + i;
+            x[k] = startX[a];
+            y[k] = startY[a];
+            direction[k] = UP;
+            velocityX[k] = 0;
+            velocityY[k] = 0;
+        }
+        observations.put(i * CHANNELS * tiles + FOOD_CHANNEL * tiles, pelletChannels, 0, pelletChannels.length);
+    }
+
+    // GameEngine.resetPositions(): pacman stops at its start, ghosts restart in random directions
+    private void resetPositions(int i) {
+        x[i] = startX[0];
+        y[i] = startY[0];
+        velocityX[i] = 0;
+        velocityY[i] = 0;
+        for (int a = 1; a < actors; a++) {
+            int k = a * games + i;
+            x[k] = startX[a];
+            y[k] = startY[a];
+            turn(k, randomDirection(i));
+        }
+    }
+
+    // GameRandom.nextInt(4) on game i's generator
+    private int randomDirection(int i) {
+        return GameRandom.mix32(randomState[i] += GameRandom.GOLDEN_GAMMA) & 3;
+    }
+
+    // ===================== OBSERVATIONS =====================
+    // Move each actor's mark to the tile under its centre, touching memory only for actors that
+    // changed tiles (about one tick in four). Marks are counts, so ghosts sharing a tile add up.
+    private void markActors() {
+        if (simd) {
+            VectorEnvKernels.actorTiles(x, y, actorTile, actorTile.length, rowCount, columnCount);
+        }
+        else {
+            for (int k = 0; k < actorTile.length; k++) {
+                actorTile[k] = actorTile(x[k], y[k], rowCount, columnCount);
+            }
+        }
+        for (int a = 0; a < actors; a++) {
+            int channel = (a == 0 ? PACMAN_CHANNEL : GHOST_CHANNEL) * tiles;
+            for (int i = 0, k = a * games; i < games; i++, k++) {
+                int tile = actorTile[k];
+                if (tile != markedTile[k]) {
+                    int at = i * CHANNELS * tiles + channel;
+                    if (markedTile[k] >= 0) {
+                        observations.put(at + markedTile[k], observations.get(at + markedTile[k]) - 1f);
+                    }
+                    observations.put(at + tile, observations.get(at + tile) + 1f);
+                    markedTile[k] = tile;
+                }
+            }
+        }
+    }
+
+    // Tile under the centre of an actor at (x, y)
+    static int actorTile(int x, int y, int rowCount, int columnCount) {
+        int row = (y + TILE / 2) >> TILE_SHIFT;  // -1 .. rowCount: in a tunnel, off the edge
+        int column = (x + TILE / 2) >> TILE_SHIFT;
+        row += row < 0 ? rowCount : row >= rowCount ? -rowCount : 0;
+        column += column < 0 ? columnCount : column >= columnCount ? -columnCount : 0;
+        return row * columnCount + column;
+    }
+
+    // ===================== ENTRY POINT =====================
+    public static void main(String[] args) {
+        int maxGames = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+        TileMap map = TileMap.classic();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        System.out.printf("Steps of every game at once; game ticks/s = steps/s x games."
+                + " GameEngine: the same games as objects, stepped one after another%n");
+        System.out.printf("Vector API: %s%n", VECTOR_API ? "on" : "off (run with --add-modules jdk.incubator.vector)");
+        for (int games = 1; games <= maxGames; games *= 4) {
+            // Actions like BatchRunner's random policy: a random key about one tick in eight
+            SplittableRandom random = new SplittableRandom(games);
+            int[][] actions = new int[64][games];
+            for (int[] row : actions) {
+                for (int i = 0; i < games; i++) {
+                    row[i] = random.nextInt(8) == 0 ? random.nextInt(4) : NOOP;
+                }
+            }
+
+            VectorEnv env = new VectorEnv(map, games, 42L);
+            measure(Math.max(seconds / 2, 1), t -> env.step(actions[t & 63]));  // Warm up: the Vector API needs C2
+            long bytes = threads.getCurrentThreadAllocatedBytes();
+            double[] envResult = measure(seconds, t -> env.step(actions[t & 63]));
+            bytes = threads.getCurrentThreadAllocatedBytes() - bytes;
+
+            GameEngine[] engines = new GameEngine[games];
+            for (int i = 0; i < games; i++) {
+                engines[i] = new GameEngine(map, BatchRunner.gameSeed(42L, i));
+            }
+            Step engineStep = t -> {
+                int[] row = actions[t & 63];
+                for (int i = 0; i < engines.length; i++) {
+                    GameEngine game = engines[i];
+                    game.step(row[i] == NOOP ? GameEngine.NO_INPUT : game.directions[row[i]]);
+                    if (game.gameOver) {
+                        game.restart();
+                    }
+                }
+            };
+            measure(seconds / 2, engineStep);
+            double[] engineResult = measure(seconds, engineStep);
+
+            System.out.printf("games %5d | %,10.0f steps/s, %,12.0f game ticks/s, %.1f bytes/step"
+                            + " | GameEngine %,12.0f game ticks/s%n",
+                    games, envResult[0], envResult[0] * games, bytes / envResult[1],
+                    engineResult[0] * games);
+        }
+    }
+
+    interface Step {
+        void run(int t);
+    }
+
+    // Run steps for about the given time: {steps per second, steps}
+    private static double[] measure(double seconds, Step step) {
+        long start = System.nanoTime();
+        long end = start + (long) (seconds * 1e9);
+        int t = 0;
+        long now;
+        do {
+            for (int i = 0; i < 16; i++) {
+                step.run(t++);
+            }
+            now = System.nanoTime();
+        } while (now < end);
+        return new double[] {t / ((now - start) / 1e9), t};
+    }
+}
@@ -0,0 +1,81 @@
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+
+// VectorEnv's arithmetic phases written with the Vector API: one lane per game
+// The module is incubating in Java 17, so it has to be added when compiling and running
+// (--add-modules jdk.incubator.vector; the pom does both for its builds and tests).
+// VectorEnv only calls into this class when the module is there, so without it the class is
+// never loaded and VectorEnv runs the same phases as plain loops. Each kernel does whole
+// vectors of games and finishes the last few with the scalar version of the same loop.
+final class VectorEnvKernels {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;  // Same lane count as INTS
+
+    private VectorEnvKernels() {}
+
+    // ===================== STEP =====================
+    // Move one actor slot of every game: x[from + i] += velocityX[from + i] & playing[i]
+    static void move(int[] x, int[] velocity, int from, int[] playing, int games) {
+        int i = 0;
+        for (int bound = INTS.loopBound(games); i < bound; i += INTS.length()) {
+            IntVector step = IntVector.fromArray(INTS, velocity, from + i).and(IntVector.fromArray(INTS, playing, i));
+            IntVector.fromArray(INTS, x, from + i).add(step).intoArray(x, from + i);
+        }
+        for (; i < games; i++) {
+            x[from + i] += velocity[from + i] & playing[i];
+        }
+    }
+
+    // Games where the ghost at slot offset ghost overlaps pacman take slot g as touching
+    static void touch(int[] x, int[] y, int ghost, int g, int[] touching, int games) {
+        int tile = VectorEnv.TILE;
+        int i = 0;
+        for (int bound = INTS.loopBound(games); i < bound; i += INTS.length()) {
+            IntVector dx = IntVector.fromArray(INTS, x, ghost + i).sub(IntVector.fromArray(INTS, x, i)).abs();
+            IntVector dy = IntVector.fromArray(INTS, y, ghost + i).sub(IntVector.fromArray(INTS, y, i)).abs();
+            VectorMask<Integer> hit = dx.compare(VectorOperators.LT, tile).and(dy.compare(VectorOperators.LT, tile));
+            IntVector.fromArray(INTS, touching, i).blend(g, hit).intoArray(touching, i);
+        }
+        for (; i < games; i++) {
+            boolean hit = Math.abs(x[ghost + i] - x[i]) < tile & Math.abs(y[ghost + i] - y[i]) < tile;
+            touching[i] = hit ? g : touching[i];
+        }
+    }
+
+    // rewards = points scored - DEATH_PENALTY per life lost
+    static void rewards(int[] score, int[] startScore, int[] lives, int[] startLives, float[] rewards, int games) {
+        int i = 0;
+        for (int bound = INTS.loopBound(games); i < bound; i += INTS.length()) {
+            IntVector points = IntVector.fromArray(INTS, score, i).sub(IntVector.fromArray(INTS, startScore, i));
+            IntVector lost = IntVector.fromArray(INTS, startLives, i).sub(IntVector.fromArray(INTS, lives, i));
+            FloatVector penalty = ((FloatVector) lost.convertShape(VectorOperators.I2F, FLOATS, 0)).mul(VectorEnv.DEATH_PENALTY);
+            ((FloatVector) points.convertShape(VectorOperators.I2F, FLOATS, 0)).sub(penalty).intoArray(rewards, i);
+        }
+        for (; i < games; i++) {
+            rewards[i] = score[i] - startScore[i] - VectorEnv.DEATH_PENALTY * (startLives[i] - lives[i]);
+        }
+    }
+
+    // ===================== OBSERVATIONS =====================
+    // The tile under each actor's centre, wrapped onto the board when it is in a tunnel
+    static void actorTiles(int[] x, int[] y, int[] tiles, int count, int rowCount, int columnCount) {
+        int half = VectorEnv.TILE / 2;
+        int i = 0;
+        for (int bound = INTS.loopBound(count); i < bound; i += INTS.length()) {
+            IntVector row = IntVector.fromArray(INTS, y, i).add(half).lanewise(VectorOperators.ASHR, VectorEnv.TILE_SHIFT);
+            IntVector column = IntVector.fromArray(INTS, x, i).add(half).lanewise(VectorOperators.ASHR, VectorEnv.TILE_SHIFT);
+            row = row.add(rowCount, row.compare(VectorOperators.LT, 0))
+                    .sub(rowCount, row.compare(VectorOperators.GE, rowCount));
+            column = column.add(columnCount, column.compare(VectorOperators.LT, 0))
+                    .sub(columnCount, column.compare(VectorOperators.GE, columnCount));
+            row.mul(columnCount).add(column).intoArray(tiles, i);
+        }
+        for (; i < count; i++) {
+            tiles[i] = VectorEnv.actorTile(x[i], y[i], rowCount, columnCount);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+// Micro-benchmark comparing the old linear wall scan with the compiled tile-grid lookup
+// Run with: java WallCollisionBenchmark   (WallCheckBenchmark in benchmarks/ times the same probes under JMH)
+public class WallCollisionBenchmark {
+    public static void main(String[] args) {
+        GameEngine game = new GameEngine();  // Builds the map and the wall index (no display needed)
+        ArrayList<GameEngine.Block> walls = wallBlocks(game);  // What the engine used to keep: one Block per wall
+        int samples = 4096;          // Number of probe positions per pass
+        int passes = 200;            // Timed passes per method
+
+        GameEngine.Block[] probes = probes(game, samples, 42L);
+        checkAgreement(game, walls, probes);  // Before we time anything
+
+        // Warm up both paths so the JIT has compiled them
+        int sink = 0;
+        for (int i = 0; i < 50; i++) {
+            sink += runLinear(game, walls, probes) + runGrid(game, probes);
+        }
+
+        long linearStart = System.nanoTime();
+        for (int i = 0; i < passes; i++) {
+            sink += runLinear(game, walls, probes);
+        }
+        long linearNanos = System.nanoTime() - linearStart;
+
+        long gridStart = System.nanoTime();
+        for (int i = 0; i < passes; i++) {
+            sink += runGrid(game, probes);
+        }
+        long gridNanos = System.nanoTime() - gridStart;
+
+        double checks = (double) samples * passes;
+        System.out.printf("walls: %d, probes: %d, passes: %d (sink %d)%n", walls.size(), samples, passes, sink);
+        System.out.printf("linear scan : %8.1f ns/check%n", linearNanos / checks);
+        System.out.printf("grid lookup : %8.1f ns/check%n", gridNanos / checks);
+        System.out.printf("speedup     : %8.1fx%n", (double) linearNanos / gridNanos);
+    }
+
+    // Probe positions on the quarter-tile lattice that actors move on
+    static GameEngine.Block[] probes(GameEngine game, int samples, long seed) {
+        int step = game.tileSize / 4;
+        Random random = new Random(seed);
+        GameEngine.Block[] probes = new GameEngine.Block[samples];
+        for (int i = 0; i < samples; i++) {
+            int x = random.nextInt(game.columnCount * game.tileSize / step) * step;
+            int y = random.nextInt(game.rowCount * game.tileSize / step) * step;
+            probes[i] = game.new Block('P', x, y, game.tileSize, game.tileSize);
+        }
+        return probes;
+    }
+
+    // Both methods must agree on every probe
+    static void checkAgreement(GameEngine game, ArrayList<GameEngine.Block> walls, GameEngine.Block[] probes) {
+        for (GameEngine.Block probe : probes) {
+            if (linearScan(game, walls, probe) != game.collidesWithWall(probe)) {
+                throw new IllegalStateException("Grid index disagrees with linear scan at " + probe.x + "," + probe.y);
+            }
+        }
+    }
+
+    // A Block for every wall tile, as the engine built them before walls became a tile grid
+    static ArrayList<GameEngine.Block> wallBlocks(GameEngine game) {
+        ArrayList<GameEngine.Block> walls = new ArrayList<>();
+        for (int r = 0; r < game.rowCount; r++) {
+            for (int c = 0; c < game.columnCount; c++) {
+                if (game.isWallTile(r, c)) {
+                    walls.add(game.new Block('X', c * game.tileSize, r * game.tileSize, game.tileSize, game.tileSize));
+                }
+            }
+        }
+        return walls;
+    }
+
+    // The pre-index approach: test the block against every wall in the set
+    static boolean linearScan(GameEngine game, ArrayList<GameEngine.Block> walls, GameEngine.Block b) {
+        for (GameEngine.Block wall : walls) {
+            if (game.collision(b, wall)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static int runLinear(GameEngine game, ArrayList<GameEngine.Block> walls, GameEngine.Block[] probes) {
+        int hits = 0;
+        for (GameEngine.Block probe : probes) {
+            if (linearScan(game, walls, probe)) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    static int runGrid(GameEngine game, GameEngine.Block[] probes) {
+        int hits = 0;
+        for (GameEngine.Block probe : probes) {
+            if (game.collidesWithWall(probe)) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,55 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Fast-forward: a run of ticks with no input, as GameEngine.advance() (swept spans) against
+// the same number of step() calls. A scripted turn starts every run; scores are per tick.
+@State(Scope.Thread)
+public class AdvanceBenchmark {
+    private static final char[] SCRIPT = {'L', 'U', 'R', 'D', 'R', 'U', 'L', 'D'};
+    private static final int RUN = 64;   // Ticks per operation (keep in step with @OperationsPerInvocation)
+
+    @Param({"8", "64"})
+    public int ticks;                    // Length of each run without input
+
+    private Object engine;
+    private int turn;
+
+    @Setup
+    public void setUp() {
+        engine = Game.newEngine(42L);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RUN)
+    public void step() {
+        for (int done = 0; done < RUN; done += ticks) {
+            Game.input(engine, SCRIPT[turn++ & 7]);
+            for (int t = 0; t < ticks; t++) {
+                Game.step(engine, (char) 0);
+            }
+            restartIfOver();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RUN)
+    public void advance() {
+        for (int done = 0; done < RUN; done += ticks) {
+            Game.input(engine, SCRIPT[turn++ & 7]);
+            Game.advance(engine, ticks);
+            restartIfOver();
+        }
+    }
+
+    private void restartIfOver() {
+        if (Game.gameOver(engine)) {  // Keep measuring live games, not a frozen one
+            Game.restart(engine);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package bench;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// PacMan.draw() of an in-play frame into an offscreen image (runs headless).
+@State(Scope.Thread)
+public class DrawBenchmark {
+    private Object panel;
+    private BufferedImage image;
+    private Graphics2D graphics;
+
+    @Setup
+    public void setUp() {
+        Object engine = Game.newEngine(42L);
+        panel = Game.newPanel(engine);
+        Game.setStarted(panel, true);  // Draw the score line, not the start screen
+        image = new BufferedImage(Game.boardWidth(engine), Game.boardHeight(engine), BufferedImage.TYPE_INT_RGB);
+        graphics = image.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage draw() {
+        graphics.clearRect(0, 0, image.getWidth(), image.getHeight());
+        Game.draw(panel, graphics);
+        return image;
+    }
+}
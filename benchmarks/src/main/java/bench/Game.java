@@ -0,0 +1,259 @@
+package bench;
+
+import java.awt.Graphics;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+
+// Bridge from the benchmarks to the game classes.
+// The game lives in the unnamed package, which code in a named package cannot import,
+// and JMH refuses benchmark classes in the unnamed package. Both sides share the unnamed
+// module, so a private lookup can reach them; the handles are static final constants,
+// so the JIT inlines them like direct calls.
+final class Game {
+    private static final MethodHandle NEW_ENGINE;     // new GameEngine(long seed)
+    private static final MethodHandle STEP;           // engine.step(char input)
+    private static final MethodHandle ADVANCE;        // engine.advance(int ticks)
+    private static final MethodHandle INPUT;          // engine.input(char direction)
+    private static final MethodHandle LOAD_MAP;       // engine.loadMap()
+    private static final MethodHandle RESTART;        // engine.restart()
+    private static final MethodHandle ADD_GHOST;      // engine.addGhost(char type, int row, int column)
+    private static final MethodHandle GAME_OVER;      // engine.gameOver
+    private static final MethodHandle SET_SOLID;      // engine.solidGhosts = value
+    private static final MethodHandle BOARD_WIDTH;    // engine.boardWidth
+    private static final MethodHandle BOARD_HEIGHT;   // engine.boardHeight
+    private static final MethodHandle NEW_PANEL;      // new PacMan(GameEngine game)
+    private static final MethodHandle SET_STARTED;    // panel.gameStarted = value
+    private static final MethodHandle DRAW;           // panel.draw(Graphics g)
+    private static final MethodHandle WALL_BLOCKS;    // WallCollisionBenchmark.wallBlocks(engine)
+    private static final MethodHandle PROBES;         // WallCollisionBenchmark.probes(engine, samples, seed)
+    private static final MethodHandle CHECK_WALLS;    // WallCollisionBenchmark.checkAgreement(engine, walls, probes)
+    private static final MethodHandle RUN_LINEAR;     // WallCollisionBenchmark.runLinear(engine, walls, probes)
+    private static final MethodHandle RUN_GRID;       // WallCollisionBenchmark.runGrid(engine, probes)
+
+    static {
+        try {
+            Class<?> engine = Class.forName("GameEngine");
+            Class<?> panel = Class.forName("PacMan");
+            Class<?> walls = Class.forName("WallCollisionBenchmark");
+            Class<?> probes = Class.forName("[LGameEngine$Block;");
+            MethodHandles.Lookup engineLookup = MethodHandles.privateLookupIn(engine, MethodHandles.lookup());
+            MethodHandles.Lookup panelLookup = MethodHandles.privateLookupIn(panel, MethodHandles.lookup());
+            MethodHandles.Lookup wallsLookup = MethodHandles.privateLookupIn(walls, MethodHandles.lookup());
+
+            NEW_ENGINE = engineLookup.findConstructor(engine, MethodType.methodType(void.class, long.class))
+                    .asType(MethodType.methodType(Object.class, long.class));
+            STEP = virtual(engineLookup, engine, "step", char.class);
+            ADVANCE = virtual(engineLookup, engine, "advance", int.class);
+            INPUT = virtual(engineLookup, engine, "input", char.class);
+            LOAD_MAP = virtual(engineLookup, engine, "loadMap");
+            RESTART = virtual(engineLookup, engine, "restart");
+            ADD_GHOST = virtual(engineLookup, engine, "addGhost", char.class, int.class, int.class);
+            GAME_OVER = engineLookup.findGetter(engine, "gameOver", boolean.class)
+                    .asType(MethodType.methodType(boolean.class, Object.class));
+            SET_SOLID = engineLookup.findSetter(engine, "solidGhosts", boolean.class)
+                    .asType(MethodType.methodType(void.class, Object.class, boolean.class));
+            BOARD_WIDTH = engineLookup.findGetter(engine, "boardWidth", int.class)
+                    .asType(MethodType.methodType(int.class, Object.class));
+            BOARD_HEIGHT = engineLookup.findGetter(engine, "boardHeight", int.class)
+                    .asType(MethodType.methodType(int.class, Object.class));
+
+            NEW_PANEL = panelLookup.findConstructor(panel, MethodType.methodType(void.class, engine))
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            SET_STARTED = panelLookup.findSetter(panel, "gameStarted", boolean.class)
+                    .asType(MethodType.methodType(void.class, Object.class, boolean.class));
+            DRAW = virtual(panelLookup, panel, "draw", Graphics.class);
+
+            WALL_BLOCKS = wallsLookup.findStatic(walls, "wallBlocks", MethodType.methodType(ArrayList.class, engine))
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            PROBES = wallsLookup.findStatic(walls, "probes", MethodType.methodType(probes, engine, int.class, long.class))
+                    .asType(MethodType.methodType(Object.class, Object.class, int.class, long.class));
+            CHECK_WALLS = wallsLookup.findStatic(walls, "checkAgreement",
+                            MethodType.methodType(void.class, engine, ArrayList.class, probes))
+                    .asType(MethodType.methodType(void.class, Object.class, Object.class, Object.class));
+            RUN_LINEAR = wallsLookup.findStatic(walls, "runLinear",
+                            MethodType.methodType(int.class, engine, ArrayList.class, probes))
+                    .asType(MethodType.methodType(int.class, Object.class, Object.class, Object.class));
+            RUN_GRID = wallsLookup.findStatic(walls, "runGrid", MethodType.methodType(int.class, engine, probes))
+                    .asType(MethodType.methodType(int.class, Object.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Game() {}
+
+    // Find an instance method returning void and widen its receiver to Object
+    private static MethodHandle virtual(MethodHandles.Lookup lookup, Class<?> owner, String name, Class<?>... parameters)
+            throws ReflectiveOperationException {
+        MethodHandle handle = lookup.findVirtual(owner, name, MethodType.methodType(void.class, parameters));
+        return handle.asType(handle.type().changeParameterType(0, Object.class));
+    }
+
+    // ===================== ENGINE =====================
+    static Object newEngine(long seed) {
+        try {
+            return (Object) NEW_ENGINE.invokeExact(seed);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static void step(Object engine, char input) {
+        try {
+            STEP.invokeExact(engine, input);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static void advance(Object engine, int ticks) {
+        try {
+            ADVANCE.invokeExact(engine, ticks);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static void input(Object engine, char direction) {
+        try {
+            INPUT.invokeExact(engine, direction);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static void loadMap(Object engine) {
+        try {
+            LOAD_MAP.invokeExact(engine);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static void restart(Object engine) {
+        try {
+            RESTART.invokeExact(engine);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static void addGhost(Object engine, char type, int row, int column) {
+        try {
+            ADD_GHOST.invokeExact(engine, type, row, column);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static boolean gameOver(Object engine) {
+        try {
+            return (boolean) GAME_OVER.invokeExact(engine);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static void setSolidGhosts(Object engine, boolean solid) {
+        try {
+            SET_SOLID.invokeExact(engine, solid);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static int boardWidth(Object engine) {
+        try {
+            return (int) BOARD_WIDTH.invokeExact(engine);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static int boardHeight(Object engine) {
+        try {
+            return (int) BOARD_HEIGHT.invokeExact(engine);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    // ===================== RENDERER =====================
+    static Object newPanel(Object engine) {
+        try {
+            return (Object) NEW_PANEL.invokeExact(engine);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static void setStarted(Object panel, boolean started) {
+        try {
+            SET_STARTED.invokeExact(panel, started);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static void draw(Object panel, Graphics g) {
+        try {
+            DRAW.invokeExact(panel, g);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    // ===================== WALL CHECKS =====================
+    // The old linear scan against the tile grid, on WallCollisionBenchmark's probe blocks
+    static Object wallBlocks(Object engine) {
+        try {
+            return (Object) WALL_BLOCKS.invokeExact(engine);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static Object probes(Object engine, int samples, long seed) {
+        try {
+            return (Object) PROBES.invokeExact(engine, samples, seed);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static void checkAgreement(Object engine, Object walls, Object probes) {
+        try {
+            CHECK_WALLS.invokeExact(engine, walls, probes);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static int runLinear(Object engine, Object walls, Object probes) {
+        try {
+            return (int) RUN_LINEAR.invokeExact(engine, walls, probes);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static int runGrid(Object engine, Object probes) {
+        try {
+            return (int) RUN_GRID.invokeExact(engine, probes);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    private static RuntimeException propagate(Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IllegalStateException(t);
+    }
+}
@@ -0,0 +1,22 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// GameEngine.loadMap(): the level reset (pellet template copy + actor respawn) that runs on every level clear and restart.
+@State(Scope.Thread)
+public class LoadMapBenchmark {
+    private Object engine;
+
+    @Setup
+    public void setUp() {
+        engine = Game.newEngine(42L);
+    }
+
+    @Benchmark
+    public void loadMap() {
+        Game.loadMap(engine);
+    }
+}
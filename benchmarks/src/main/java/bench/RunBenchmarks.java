@@ -0,0 +1,42 @@
+package bench;
+
+import java.io.IOException;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Entry point of benchmarks.jar: the normal JMH command line, with defaults for this project.
+// Unless overridden, every run measures throughput, adds the GC profiler (allocation rate),
+// runs forks headless with the Vector API module (VectorEnv), and writes JSON results to
+// jmh-result.json for comparison across commits.
+public final class RunBenchmarks {
+    private RunBenchmarks() {}
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListProfilers() || cmd.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent(cmd);
+        if (cmd.getProfilers().isEmpty()) {
+            options.addProfiler(GCProfiler.class);
+        }
+        if (!cmd.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!cmd.getResult().hasValue()) {
+            options.result("jmh-result.json");
+        }
+        if (!cmd.getJvmArgsAppend().hasValue()) {
+            options.jvmArgsAppend("-Djava.awt.headless=true", "--add-modules=jdk.incubator.vector");
+        }
+        new Runner(options.build()).run();
+    }
+}
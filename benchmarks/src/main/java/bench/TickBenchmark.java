@@ -0,0 +1,52 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// One full GameEngine.step(): pac-man and every ghost move, collide and eat.
+// Extra ghosts start on the ghost-house tiles; a scripted input turns pac-man every 8 ticks.
+// solid = swarm mode, where ghosts also block each other (found through the spatial hash).
+@State(Scope.Thread)
+public class TickBenchmark {
+    private static final char[] SCRIPT = {'L', 'U', 'R', 'D', 'R', 'U', 'L', 'D'};
+    private static final int[][] HOUSE_TILES = {{8, 9}, {9, 7}, {9, 8}, {9, 9}};  // {row, column}
+    private static final char[] COLOURS = {'r', 'b', 'p', 'o'};
+
+    @Param({"4", "16", "64", "256", "1024"})
+    public int ghosts;
+
+    @Param({"false", "true"})
+    public boolean solid;
+
+    private Object engine;
+    private int tick;
+
+    @Setup
+    public void setUp() {
+        engine = Game.newEngine(42L);
+        Game.setSolidGhosts(engine, solid);
+        addExtraGhosts();
+    }
+
+    // The map already has 4 ghosts; top up to the requested count
+    private void addExtraGhosts() {
+        for (int i = 4; i < ghosts; i++) {
+            int[] tile = HOUSE_TILES[i % HOUSE_TILES.length];
+            Game.addGhost(engine, COLOURS[i % COLOURS.length], tile[0], tile[1]);
+        }
+    }
+
+    @Benchmark
+    public void tick() {
+        char input = (tick & 7) == 0 ? SCRIPT[(tick >>> 3) & 7] : 0;
+        Game.step(engine, input);
+        tick++;
+        if (Game.gameOver(engine)) {  // Keep measuring live games, not a frozen one
+            Game.restart(engine);
+            addExtraGhosts();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Block.updateDirection() through the keyboard path: try a turn, check walls, undo if blocked.
+// linearScan and gridLookup test the same probe blocks (WallCollisionBenchmark's) against the
+// walls: the old scan over one Block per wall tile, and the tile-grid lookup that replaced it.
+// Both report one operation per probe, so their scores compare directly.
+@State(Scope.Thread)
+public class WallCheckBenchmark {
+    private static final char[] TURNS = {'U', 'L', 'D', 'R'};
+    private static final int PROBES = 4096;
+
+    private Object engine;
+    private Object walls;
+    private Object probes;
+    private int turn;
+
+    @Setup
+    public void setUp() {
+        engine = Game.newEngine(42L);
+        walls = Game.wallBlocks(engine);
+        probes = Game.probes(engine, PROBES, 42L);
+        Game.checkAgreement(engine, walls, probes);  // Fails the run if the two ever disagree
+    }
+
+    @Benchmark
+    public void updateDirection() {
+        Game.input(engine, TURNS[turn++ & 3]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROBES)
+    public int linearScan() {
+        return Game.runLinear(engine, walls, probes);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROBES)
+    public int gridLookup() {
+        return Game.runGrid(engine, probes);
+    }
+}
@@ -0,0 +1,161 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+
+// advance(k) must leave a game in exactly the state k calls of step(NO_INPUT) do, compared
+// through saveState after every span, across seeds, maps and ghost counts
+class AdvanceTest {
+    private static final int GAMES = 24;
+    private static final int SPANS = 1500;  // Per game: about 60,000 ticks
+
+    // Tunnels through all four edges
+    private static final TileMap TUNNELS = TileMap.parse(
+            "XXXX XXXXXXXXXXXXXX",
+            "X*       X       *X",
+            "X XX XXX X XXX XX X",
+            "X                 X",
+            "X XX X XXXXX X XX X",
+            "X    X       X    X",
+            "XXXX XXXX XXXX XXXX",
+            "OOOX X       X XOOO",
+            "XXXX X XXbXX X XXXX",
+            "       rpo         ",
+            "XXXX X XXXXX X XXXX",
+            "OOOX X       X XOOO",
+            "XXXX X XXXXX X XXXX",
+            "X        X        X",
+            "X XX XXX X XXX XX X",
+            "X  X     P     X  X",
+            "XX X X XXXXX X X XX",
+            "X    X   X   X    X",
+            "X XXXXXX X XXXXXX X",
+            "X*               *X",
+            "XXXX XXXXXXXXXXXXXX");
+
+    // Edges open on one side only: the far side is a wall, so nothing may wrap through them
+    private static final TileMap ONE_SIDED = TileMap.parse(
+            "XXXX XXXXXXXXXXXXXX",
+            "X*       X       *X",
+            "X XX XXX X XXX XX X",
+            "                  X",
+            "X XX X XXXXX X XX X",
+            "X    X       X    X",
+            "XXXX XXXX XXXX XXXX",
+            "OOOX X       X XOOO",
+            "XXXX X XXbXX X XXXX",
+            "X      rpo         ",
+            "XXXX X XXXXX X XXXX",
+            "OOOX X       X XOOO",
+            "XXXX X XXXXX X XXXX",
+            "X        X         ",
+            "X XX XXX X XXX XX X",
+            "X  X     P     X  X",
+            "XX X X XXXXX X X XX",
+            "X    X   X   X    X",
+            "X XXXXXX X XXXXXX X",
+            "X*               *X",
+            "XXXXXXXXXXXXXXXXXXX");
+
+    @Test
+    void classicMap() {
+        playBothWays(TileMap.classic(), true, 0, false);
+    }
+
+    @Test
+    void classicMapWithExtraGhosts() {
+        playBothWays(TileMap.classic(), true, 12, false);
+    }
+
+    @Test
+    void tunnelsThroughEveryEdge() {
+        playBothWays(TUNNELS, true, 0, false);
+    }
+
+    // Ghosts keep catching pacman near his start; alone, he reaches the tunnels hundreds of times
+    @Test
+    void pacmanAloneThroughTunnels() {
+        playBothWays(TUNNELS, false, 0, false);
+    }
+
+    @Test
+    void edgesOpenOnOneSide() {
+        playBothWays(ONE_SIDED, true, 0, false);
+    }
+
+    // With only a few pellets, levels are cleared and reloaded in the middle of spans
+    @Test
+    void shortLevelsOnEveryMap() {
+        for (TileMap map : new TileMap[] {TileMap.classic(), TUNNELS, ONE_SIDED}) {
+            int levels = playBothWays(map, true, 0, true);
+            assertTrue(levels > GAMES, "levels should be cleared, got " + levels);
+        }
+    }
+
+    // Games on a map, each played with advance and with step, with the same keys in between;
+    // returns the levels cleared
+    private static int playBothWays(TileMap map, boolean ghosts, int extraGhosts, boolean shortLevels) {
+        int levels = 0;
+        for (int seed = 0; seed < GAMES; seed++) {
+            GameEngine advanced = game(map, seed, ghosts, extraGhosts, shortLevels);
+            GameEngine stepped = game(map, seed, ghosts, extraGhosts, shortLevels);
+            SplittableRandom random = new SplittableRandom(seed);
+            for (int span = 0; span < SPANS && !advanced.gameOver; span++) {
+                if (random.nextInt(3) == 0) {
+                    char key = advanced.directions[random.nextInt(4)];
+                    advanced.input(key);
+                    stepped.input(key);
+                }
+                int ticks = 1 + random.nextInt(random.nextBoolean() ? 8 : 200);
+                advanced.advance(ticks);
+                for (int t = 0; t < ticks; t++) {
+                    stepped.step(GameEngine.NO_INPUT);
+                }
+                assertArrayEquals(state(stepped), state(advanced),
+                        "seed " + seed + ", span " + span + " of " + ticks + " ticks, tick " + stepped.ticksPlayed);
+            }
+            levels += advanced.level - 1;
+        }
+        return levels;
+    }
+
+    // A game that lasts (many lives), with or without the map's ghosts; short levels keep only
+    // the pellets in pacman's starting corridor, within 4 tiles of him
+    private static GameEngine game(TileMap map, long seed, boolean ghosts, int extraGhosts, boolean shortLevels) {
+        GameEngine game = new GameEngine(map, seed);
+        game.lives = 100_000;
+        if (!ghosts) {
+            game.mapGhostCount = 0;
+        }
+        if (shortLevels) {
+            int row = game.pacman.startY / game.tileSize;
+            int column = game.pacman.startX / game.tileSize;
+            int pellets = 0;
+            for (int tile = 0; tile < map.rowCount * map.columnCount; tile++) {
+                long bit = 1L << tile;
+                if (tile / map.columnCount != row || Math.abs(tile % map.columnCount - column) > 4) {
+                    game.pelletTemplate[tile >>> 6] &= ~bit;
+                    game.powerTemplate[tile >>> 6] &= ~bit;
+                }
+                else {
+                    pellets += Long.bitCount((game.pelletTemplate[tile >>> 6] | game.powerTemplate[tile >>> 6]) & bit);
+                }
+            }
+            game.pelletTemplateCount = pellets;
+        }
+        game.loadMap();  // Ghosts and pellets as set above
+        game.resetPositions();
+        for (int g = 0; g < extraGhosts; g++) {
+            game.addGhost("rbpo".charAt(g % 4), 9, 7 + g % 3);
+        }
+        return game;
+    }
+
+    private static byte[] state(GameEngine game) {
+        ByteBuffer buffer = ByteBuffer.allocate(game.stateSize());
+        game.saveState(buffer);
+        return buffer.array();
+    }
+}
@@ -0,0 +1,78 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+
+// A delta snapshot applied to the base the client acknowledged must decode to exactly the
+// snapshot the server captured, checked with the checksum that travels with it
+class GameServerTest {
+    private static final int TICKS = 3000;
+
+    @Test
+    void deltaOnAckedBaseReproducesTheFullSnapshot() {
+        GameEngine game = new GameEngine(BatchRunner.gameSeed(42L, 0));
+        GameServer.Snapshot[] history = new GameServer.Snapshot[GameServer.HISTORY];
+        for (int i = 0; i < history.length; i++) {
+            history[i] = new GameServer.Snapshot();
+        }
+        history[0].capture(game, 0, 0);
+        GameServer.Snapshot acked = new GameServer.Snapshot();
+        GameServer.Snapshot client = new GameServer.Snapshot();
+        ByteBuffer buffer = ByteBuffer.allocate(history[0].maxSize());
+        SplittableRandom random = new SplittableRandom(5);
+        int deltas = 0;
+
+        for (int tick = 1; tick <= TICKS; tick++) {
+            if (game.gameOver) {
+                game.restart();
+            }
+            if (random.nextInt(6) == 0) {
+                game.input(game.directions[random.nextInt(4)]);
+            }
+            game.step(GameEngine.NO_INPUT);
+            GameServer.Snapshot now = history[tick & (GameServer.HISTORY - 1)];
+            now.capture(game, tick, tick / 6);
+
+            // Any snapshot still in the history can be the one the client acknowledged
+            int ackTick = Math.max(0, tick - 1 - random.nextInt(GameServer.HISTORY - 1));
+            GameServer.Snapshot base = history[ackTick & (GameServer.HISTORY - 1)];
+            assertEquals(ackTick, base.tick);
+            buffer.clear();
+            now.write(base, buffer);
+            buffer.flip();
+            deltas += buffer.get(0) == GameServer.Snapshot.DELTA ? 1 : 0;
+
+            if (buffer.get(0) == GameServer.Snapshot.DELTA) {
+                assertEquals(ackTick, GameServer.Snapshot.baseTick(buffer));
+            }
+            acked.copyFrom(base);  // What the client decoded for the acknowledged tick
+            int sent = client.read(buffer, acked);
+            assertEquals(now.checksum(), sent, "tick " + tick);
+            assertEquals(sent, client.checksum(), "tick " + tick + " from " + ackTick);
+            assertEquals(0, buffer.remaining());
+        }
+        assertTrue(deltas > TICKS / 2, "most snapshots should be deltas, got " + deltas);
+    }
+
+    @Test
+    void fullSnapshotDecodesWithoutABase() {
+        GameEngine game = new GameEngine(7L);
+        for (int t = 0; t < 200; t++) {
+            game.step(t % 40 == 0 ? game.directions[(t / 40) & 3] : GameEngine.NO_INPUT);
+        }
+        GameServer.Snapshot server = new GameServer.Snapshot();
+        server.capture(game, 200, 3);
+        ByteBuffer buffer = ByteBuffer.allocate(server.maxSize());
+        server.write(null, buffer);
+        buffer.flip();
+        assertEquals(GameServer.Snapshot.FULL, buffer.get(0));
+        assertEquals(-1, GameServer.Snapshot.baseTick(buffer));
+
+        GameServer.Snapshot client = new GameServer.Snapshot();
+        int sent = client.read(buffer, null);
+        assertEquals(server.checksum(), sent);
+        assertEquals(sent, client.checksum());
+    }
+}
@@ -0,0 +1,72 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+
+// The distance table is built from the junction graph; a BFS from every tile must agree with it
+class NavGraphTest {
+    @Test
+    void classicMapTableMatchesBfs() {
+        assertTableMatchesBfs(TileMap.classic());
+    }
+
+    // A tunnel through the sides, an opening at the top whose far side is a wall, a loop with no
+    // junction on it, and a walled-off pair of dead ends
+    @Test
+    void tunnelsAndLoopsMatchBfs() {
+        assertTableMatchesBfs(TileMap.parse(
+                "XXXX XXXXXXX",
+                "X    X     X",
+                "X XX X XXX X",
+                "     P      ",
+                "X XXXXXXXX X",
+                "X XXXXXXXX X",
+                "X          X",
+                "XXXXXXXXXXXX",
+                "X     XXXX X",
+                "X XXX XXXX X",
+                "X     XXXXXX",
+                "XXXXXXXXXXXX"));
+    }
+
+    // Random walls on small boards, down to one row or column, where tunnels wrap onto themselves
+    @Test
+    void randomMapsMatchBfs() {
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < 500; i++) {
+            int rows = 1 + random.nextInt(i < 250 ? 4 : 24);
+            int columns = 1 + random.nextInt(i < 250 ? 4 : 24);
+            double walls = random.nextDouble();
+            String[] lines = new String[rows];
+            for (int r = 0; r < rows; r++) {
+                StringBuilder line = new StringBuilder();
+                for (int c = 0; c < columns; c++) {
+                    line.append(random.nextDouble() < walls ? 'X' : ' ');
+                }
+                lines[r] = line.toString();
+            }
+            int row = random.nextInt(rows);
+            int column = random.nextInt(columns);
+            lines[row] = lines[row].substring(0, column) + 'P' + lines[row].substring(column + 1);
+            assertTableMatchesBfs(TileMap.parse(lines));
+        }
+    }
+
+    private static void assertTableMatchesBfs(TileMap map) {
+        NavGraph nav = new NavGraph(map);
+        int[] distance = new int[nav.tileCount];
+        int[] queue = new int[nav.tileCount];
+        for (int from = 0; from < nav.tileCount; from++) {
+            if (!nav.isWalkable(from)) {
+                continue;
+            }
+            nav.bfs(from, distance, queue);
+            for (int to = 0; to < nav.tileCount; to++) {
+                if (nav.isWalkable(to)) {
+                    assertEquals(distance[to], nav.distance(from, to),
+                            map.rowCount + "x" + map.columnCount + " map, " + from + " to " + to);
+                }
+            }
+        }
+    }
+}
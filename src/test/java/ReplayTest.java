@@ -0,0 +1,104 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Seeking (keyframe restore, then advance() over quiet ticks) must land on exactly the state
+// the recorded game was in, and so must a straight replay from tick 0
+class ReplayTest {
+    private static final int KEYFRAMES = 5;
+    private static final int TICKS = KEYFRAMES * Replay.KEYFRAME_TICKS + 37;
+
+    @TempDir
+    Path dir;
+
+    private final List<byte[]> recorded = new ArrayList<>();  // The live game's state after each tick
+    private Replay replay;
+
+    // Record a game with random keys, restarting whenever it ends
+    @BeforeEach
+    void record() throws IOException {
+        Path path = dir.resolve("game.replay");
+        GameEngine game = new GameEngine(7L);
+        Replay.Writer writer = new Replay.Writer(path, game);
+        SplittableRandom random = new SplittableRandom(3);
+        recorded.add(state(game));
+        for (int t = 0; t < TICKS; t++) {
+            if (game.gameOver) {
+                game.restart();
+                writer.restart();
+            }
+            if (random.nextInt(6) == 0) {
+                char direction = game.directions[random.nextInt(4)];
+                game.input(direction);
+                writer.input(direction);
+            }
+            game.step(GameEngine.NO_INPUT);
+            writer.tick();
+            recorded.add(state(game));
+        }
+        writer.close();
+        replay = Replay.open(path, TileMap.classic());
+    }
+
+    @Test
+    void straightReplayMatchesTheRecording() {
+        assertEquals(TICKS, replay.ticks);
+        Replay.Player player = replay.seek(0);
+        for (int t = 1; t <= TICKS; t++) {
+            player.step();
+            assertArrayEquals(recorded.get(t), state(player.game), "tick " + t);
+        }
+    }
+
+    @Test
+    void seekMatchesTheRecordingAroundEveryKeyframe() {
+        for (int k = 0; k <= KEYFRAMES; k++) {
+            long keyframe = (long) k * Replay.KEYFRAME_TICKS;
+            for (long t = keyframe - 1; t <= keyframe + 1; t++) {
+                if (t >= 0) {
+                    assertSeek(t);
+                }
+            }
+        }
+        assertSeek(TICKS);
+    }
+
+    @Test
+    void seekMatchesTheRecordingAnywhere() {
+        SplittableRandom random = new SplittableRandom(11);
+        for (int i = 0; i < 50; i++) {
+            assertSeek(random.nextInt(TICKS + 1));
+        }
+    }
+
+    @Test
+    void advanceToCrossesKeyframes() {
+        Replay.Player player = replay.seek(150);
+        for (long t = 150; t <= TICKS; t += 113) {
+            player.advanceTo(t);
+            assertEquals(t, player.tick);
+            assertArrayEquals(recorded.get((int) t), state(player.game), "tick " + t);
+        }
+    }
+
+    private void assertSeek(long tick) {
+        Replay.Player player = replay.seek(tick);
+        assertEquals(tick, player.tick);
+        assertArrayEquals(recorded.get((int) tick), state(player.game), "tick " + tick);
+    }
+
+    private static byte[] state(GameEngine game) {
+        ByteBuffer buffer = ByteBuffer.allocate(game.stateSize());
+        game.saveState(buffer);
+        return buffer.array();
+    }
+}
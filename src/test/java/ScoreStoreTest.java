@@ -0,0 +1,136 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Reopening a results log must rebuild its indexes from every complete record, and stop
+// cleanly at a last record that a crash cut short
+class ScoreStoreTest {
+    private static final int RESULTS = 1500;  // More than TOP_K, so the leaderboard drops scores
+    private static final int PLAYERS = 40;
+
+    @TempDir
+    Path directory;
+    private Path log;
+    private final List<int[]> written = new ArrayList<>();  // {player, score} of each record, in log order
+
+    @BeforeEach
+    void writeLog() throws IOException {
+        log = directory.resolve("scores.log");
+        ScoreStore store = new ScoreStore(log);
+        SplittableRandom random = new SplittableRandom(11);
+        for (int i = 0; i < RESULTS; i++) {
+            int player = random.nextInt(PLAYERS);
+            int score = random.nextInt(3000);  // Plenty of equal scores
+            store.add(i, "player" + player, random.nextLong(), score, random.nextInt(5000), 1 + random.nextInt(4));
+            written.add(new int[] {player, score});
+        }
+        store.close();
+    }
+
+    @Test
+    void reopenRebuildsTheIndexes() throws IOException {
+        ScoreStore store = new ScoreStore(log);
+        assertIndexes(store, RESULTS);
+        store.close();
+    }
+
+    @Test
+    void reopenDropsARecordTornInHalf() throws IOException {
+        try (FileChannel file = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            long last = recordOffset(RESULTS - 1);
+            file.write(ByteBuffer.allocate(ScoreStore.RECORD_SIZE / 2), last + ScoreStore.RECORD_SIZE / 2);
+        }
+        ScoreStore store = new ScoreStore(log);
+        assertIndexes(store, RESULTS - 1);
+
+        // The next result takes the torn record's place
+        store.add(RESULTS, "player0", 1L, 2999, 100, 1);
+        written.set(RESULTS - 1, new int[] {0, 2999});
+        store.close();
+        store = new ScoreStore(log);
+        assertIndexes(store, RESULTS);
+        store.close();
+    }
+
+    @Test
+    void reopenDropsARecordCutOffByTheEndOfTheFile() throws IOException {
+        try (FileChannel file = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            file.truncate(recordOffset(RESULTS - 1) + 20);  // Through the score, before the player
+        }
+        ScoreStore store = new ScoreStore(log);
+        assertIndexes(store, RESULTS - 1);
+        store.close();
+    }
+
+    @Test
+    void closeStopsTheSyncThread() throws IOException {
+        for (int i = 0; i < 20; i++) {
+            ScoreStore store = new ScoreStore(log, 1);
+            store.add(i, "closer", i, i, i, 1);
+            store.close();
+            assertFalse(syncThreadRunning(), "open " + i);
+        }
+    }
+
+    // size(), top() and best() as the first records written say they should be
+    private void assertIndexes(ScoreStore store, int records) {
+        assertEquals(records, store.size());
+        List<Integer> ranked = new ArrayList<>();
+        for (int r = 0; r < records; r++) {
+            ranked.add(r);
+        }
+        ranked.sort(Comparator.comparingInt((Integer r) -> -written.get(r)[1]));  // Stable: equal scores keep log order
+        List<ScoreStore.Result> top = store.top(ScoreStore.TOP_K);
+        assertEquals(Math.min(records, ScoreStore.TOP_K), top.size());
+        for (int rank = 0; rank < top.size(); rank++) {
+            int record = ranked.get(rank);
+            assertEquals(record, top.get(rank).record, "rank " + rank);
+            assertEquals(written.get(record)[1], top.get(rank).score, "rank " + rank);
+            assertEquals("player" + written.get(record)[0], top.get(rank).player, "rank " + rank);
+        }
+
+        for (int player = 0; player < PLAYERS; player++) {
+            int bestRecord = -1;
+            int games = 0;
+            for (int r = 0; r < records; r++) {
+                if (written.get(r)[0] == player) {
+                    games++;
+                    if (bestRecord < 0 || written.get(r)[1] > written.get(bestRecord)[1]) {
+                        bestRecord = r;
+                    }
+                }
+            }
+            ScoreStore.Result best = store.best("player" + player);
+            if (bestRecord < 0) {
+                assertNull(best);
+                continue;
+            }
+            assertEquals(bestRecord, best.record, "player" + player);
+            assertEquals(written.get(bestRecord)[1], best.score, "player" + player);
+            assertEquals(games, store.games("player" + player), "player" + player);
+        }
+    }
+
+    // Byte offset of a record: the header takes the first record's place
+    private static long recordOffset(int record) {
+        return (long) (record + 1) * ScoreStore.RECORD_SIZE;
+    }
+
+    private static boolean syncThreadRunning() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .anyMatch(t -> t.getName().equals("pacman-score-sync") && t.isAlive());
+    }
+}
@@ -0,0 +1,140 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+
+// VectorEnv's games must play exactly as GameEngine objects with the same seeds and inputs,
+// on the Vector API kernels and on the plain loops alike, with observations that show them
+class VectorEnvTest {
+    private static final int GAMES = 37;  // Not a multiple of any vector length: the scalar tails run too
+    private static final int TICKS = 8000;
+
+    // The classic map with tunnels through all four edges, and power pellets in the corners
+    private static final TileMap TUNNELS = TileMap.parse(
+            "XXXX XXXXXXXXXXXXXX",
+            "X*       X       *X",
+            "X XX XXX X XXX XX X",
+            "X                 X",
+            "X XX X XXXXX X XX X",
+            "X    X       X    X",
+            "XXXX XXXX XXXX XXXX",
+            "OOOX X       X XOOO",
+            "XXXX X XXbXX X XXXX",
+            "       rpo         ",
+            "XXXX X XXXXX X XXXX",
+            "OOOX X       X XOOO",
+            "XXXX X XXXXX X XXXX",
+            "X        X        X",
+            "X XX XXX X XXX XX X",
+            "X  X     P     X  X",
+            "XX X X XXXXX X X XX",
+            "X    X   X   X    X",
+            "X XXXXXX X XXXXXX X",
+            "X*               *X",
+            "XXXX XXXXXXXXXXXXXX");
+
+    @Test
+    void vectorKernelsAreAvailableToTheTests() {
+        assertTrue(VectorEnv.VECTOR_API, "surefire should run with --add-modules jdk.incubator.vector");
+    }
+
+    @Test
+    void vectorKernelsMatchGameEngineOnTheClassicMap() {
+        playAlongside(TileMap.classic(), true);
+    }
+
+    @Test
+    void plainLoopsMatchGameEngineOnTheClassicMap() {
+        playAlongside(TileMap.classic(), false);
+    }
+
+    @Test
+    void vectorKernelsMatchGameEngineThroughTunnels() {
+        playAlongside(TUNNELS, true);
+    }
+
+    @Test
+    void plainLoopsMatchGameEngineThroughTunnels() {
+        playAlongside(TUNNELS, false);
+    }
+
+    private static void playAlongside(TileMap map, boolean simd) {
+        VectorEnv env = new VectorEnv(map, GAMES, 7L);
+        env.simd = simd && VectorEnv.VECTOR_API;
+        GameEngine[] games = new GameEngine[GAMES];
+        for (int i = 0; i < GAMES; i++) {
+            games[i] = new GameEngine(map, BatchRunner.gameSeed(7L, i));
+        }
+        assertObservations(env, games, 0);
+
+        SplittableRandom random = new SplittableRandom(1);
+        int[] actions = new int[GAMES];
+        int gameOvers = 0;
+        for (int tick = 1; tick <= TICKS; tick++) {
+            for (int i = 0; i < GAMES; i++) {
+                actions[i] = random.nextInt(6) == 0 ? random.nextInt(4) : VectorEnv.NOOP;
+            }
+            env.step(actions);
+            for (int i = 0; i < GAMES; i++) {
+                GameEngine game = games[i];
+                int score = game.score;
+                int lives = game.lives;
+                game.step(actions[i] == VectorEnv.NOOP ? GameEngine.NO_INPUT : game.directions[actions[i]]);
+                String at = "game " + i + ", tick " + tick;
+                assertEquals(game.score - score - VectorEnv.DEATH_PENALTY * (lives - game.lives), env.rewards[i], at);
+                assertEquals(game.gameOver, env.done[i], at);
+                if (game.gameOver) {
+                    gameOvers++;
+                    assertEquals(game.score, env.finalScore[i], at);
+                    game.restart();
+                }
+                assertEquals(game.score, env.score[i], at);
+                assertEquals(game.lives, env.lives[i], at);
+                assertEquals(game.pacman.x, env.x[i], at);
+                assertEquals(game.pacman.y, env.y[i], at);
+                for (int g = 0; g < game.ghosts.size(); g++) {
+                    GameEngine.Block ghost = game.ghosts.get(g);
+                    int k = (g + 1) * GAMES + i;
+                    assertEquals(ghost.x, env.x[k], at + ", ghost " + g);
+                    assertEquals(ghost.y, env.y[k], at + ", ghost " + g);
+                    assertEquals(ghost.direction, game.directions[env.direction[k]], at + ", ghost " + g);
+                }
+            }
+            if (tick % 97 == 0) {
+                assertObservations(env, games, tick);
+            }
+        }
+        assertTrue(gameOvers > GAMES, "games should end and restart, got " + gameOvers);
+    }
+
+    // Every channel of every game, rebuilt from the GameEngine objects
+    private static void assertObservations(VectorEnv env, GameEngine[] games, int tick) {
+        int tiles = env.tiles;
+        float[] expected = new float[VectorEnv.CHANNELS * tiles];
+        for (int i = 0; i < games.length; i++) {
+            GameEngine game = games[i];
+            Arrays.fill(expected, 0f);
+            for (int tile = 0; tile < tiles; tile++) {
+                boolean wall = game.map.isWall(tile / env.columnCount, tile % env.columnCount);
+                expected[VectorEnv.WALL_CHANNEL * tiles + tile] = wall ? 1f : 0f;
+                expected[VectorEnv.FOOD_CHANNEL * tiles + tile] = game.hasPellet(tile) ? 1f : 0f;
+                expected[VectorEnv.POWER_CHANNEL * tiles + tile] = game.hasPowerPellet(tile) ? 1f : 0f;
+            }
+            expected[VectorEnv.PACMAN_CHANNEL * tiles + tileUnder(env, game.pacman)] += 1f;
+            for (GameEngine.Block ghost : game.ghosts) {
+                expected[VectorEnv.GHOST_CHANNEL * tiles + tileUnder(env, ghost)] += 1f;
+            }
+            int base = i * VectorEnv.CHANNELS * tiles;
+            for (int j = 0; j < expected.length; j++) {
+                assertEquals(expected[j], env.observations.get(base + j),
+                        "game " + i + ", tick " + tick + ", channel " + j / tiles + ", tile " + j % tiles);
+            }
+        }
+    }
+
+    private static int tileUnder(VectorEnv env, GameEngine.Block actor) {
+        return VectorEnv.actorTile(actor.x, actor.y, env.rowCount, env.columnCount);
+    }
+}